@@ -45,6 +45,8 @@ import com.walmartlabs.concord.dependencymanager.DependencyManager;
 import com.walmartlabs.concord.project.InternalConstants;
 import com.walmartlabs.concord.server.queueclient.QueueClient;
 import com.walmartlabs.concord.server.queueclient.QueueClientConfiguration;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchRequest;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import org.slf4j.Logger;
@@ -53,6 +55,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +77,7 @@ public class Agent {
     private final ProcessLogFactory processLogFactory;
     private final ExecutorService executor;
     private final WorkerFactory workerFactory;
+    private final ProcessStateCache stateCache;
 
     private final Map<UUID, Worker> activeWorkers = new ConcurrentHashMap<>();
     private final AtomicBoolean maintenanceMode = new AtomicBoolean(false);
@@ -95,11 +99,13 @@ public class Agent {
         Map<JobRequest.Type, JobExecutor> executors = Collections.singletonMap(JobRequest.Type.RUNNER, runnerExec);
 
         this.workerFactory = new WorkerFactory(repositoryManager, executors);
+        this.stateCache = new ProcessStateCache(cfg.getStateCacheDir(), cfg.getStateCacheMaxSize());
     }
 
     public void run() throws Exception {
         int workersCount = cfg.getWorkersCount();
-        log.info("run -> using {} worker(s)", workersCount);
+        int maxAcquireBatch = cfg.getMaxAcquireBatch();
+        log.info("run -> using {} worker(s), acquiring up to {} job(s) at once", workersCount, maxAcquireBatch);
         Semaphore workersAvailable = new Semaphore(workersCount);
 
         // connect to the server's websocket
@@ -121,19 +127,24 @@ public class Agent {
             // check if the maintenance mode is enabled. If so, hang there indefinitely
             validateMaintenanceMode();
 
-            // TODO parallel acquire?
-            // wait for a free "slot"
+            // wait for a free "slot" and grab any other free slots, up to the batch limit
             workersAvailable.acquire();
-            log.info("run -> acquired a slot, {}/{} remains", workersAvailable.availablePermits(), workersCount);
+            int slots = 1;
+            // older servers don't support batch requests
+            int maxSlots = queueClient.isBatchSupported() ? maxAcquireBatch : 1;
+            while (slots < maxSlots && workersAvailable.tryAcquire()) {
+                slots++;
+            }
+            log.info("run -> acquired {} slot(s), {}/{} remains", slots, workersAvailable.availablePermits(), workersCount);
 
-            // fetch the next job
-            JobRequest jobRequest;
+            // fetch the next jobs
+            List<JobRequest> jobRequests;
             try {
-                jobRequest = take(queueClient);
+                jobRequests = take(queueClient, slots);
             } catch (Exception e) {
                 log.warn("run -> error while fetching a job: {}", e.getMessage());
 
-                workersAvailable.release();
+                workersAvailable.release(slots);
 
                 // wait before retrying
                 // the server is not reachable or unhealthy, no point retrying immediately
@@ -141,22 +152,24 @@ public class Agent {
                 continue;
             }
 
-            if (jobRequest == null) {
-                // can happen on switching to maintenance mode or reconnecting, etc
-                workersAvailable.release();
-                continue;
+            // the server can return fewer jobs than requested or none at all
+            // (e.g. on switching to maintenance mode or reconnecting, etc)
+            if (jobRequests.size() < slots) {
+                workersAvailable.release(slots - jobRequests.size());
             }
 
-            UUID instanceId = jobRequest.getInstanceId();
+            for (JobRequest jobRequest : jobRequests) {
+                UUID instanceId = jobRequest.getInstanceId();
 
-            // worker will handle the process' lifecycle
-            Worker w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable), createStateFetcher());
+                // worker will handle the process' lifecycle
+                Worker w = workerFactory.create(jobRequest, createStatusCallback(instanceId, workersAvailable), createStateFetcher());
 
-            // register the worker so we can cancel it later
-            activeWorkers.put(instanceId, w);
+                // register the worker so we can cancel it later
+                activeWorkers.put(instanceId, w);
 
-            // start a new thread to process the job
-            executor.submit(w);
+                // start a new thread to process the job
+                executor.submit(w);
+            }
         }
     }
 
@@ -233,20 +246,28 @@ public class Agent {
     }
 
     private StateFetcher createStateFetcher() {
-        return new RemoteStateFetcher(processApi, API_CALL_MAX_RETRIES, API_CALL_RETRY_DELAY);
+        return new RemoteStateFetcher(processApi, stateCache, API_CALL_MAX_RETRIES, API_CALL_RETRY_DELAY);
     }
 
-    private JobRequest take(QueueClient queueClient) throws Exception {
-        Future<ProcessResponse> req = queueClient.request(new ProcessRequest(cfg.getCapabilities()));
-
-        ProcessResponse resp = req.get();
-        if (resp == null) {
-            return null;
+    private List<JobRequest> take(QueueClient queueClient, int slots) throws Exception {
+        List<ProcessResponse> responses;
+        if (slots == 1) {
+            // use a plain request whenever possible
+            Future<ProcessResponse> req = queueClient.request(new ProcessRequest(cfg.getCapabilities()));
+            ProcessResponse resp = req.get();
+            responses = resp != null ? Collections.singletonList(resp) : Collections.emptyList();
+        } else {
+            Future<ProcessBatchResponse> req = queueClient.request(new ProcessBatchRequest(cfg.getCapabilities(), slots));
+            ProcessBatchResponse resp = req.get();
+            responses = resp != null && resp.getProcesses() != null ? resp.getProcesses() : Collections.emptyList();
         }
 
-        Path workDir = IOUtils.createTempDir(cfg.getPayloadDir(), "workDir");
-
-        return JobRequest.from(resp, workDir, processLogFactory);
+        List<JobRequest> result = new ArrayList<>(responses.size());
+        for (ProcessResponse r : responses) {
+            Path workDir = IOUtils.createTempDir(cfg.getPayloadDir(), "workDir");
+            result.add(JobRequest.from(r, workDir, processLogFactory));
+        }
+        return result;
     }
 
     private void updateStatus(UUID instanceId, StatusEnum s) {
@@ -311,7 +332,13 @@ public class Agent {
                 cfg.getRunnerPath(),
                 cfg.isRunnerSecurityManagerEnabled(),
                 cfg.getMaxPreforkAge(),
-                cfg.getMaxPreforkCount());
+                cfg.getMaxPreforkCount(),
+                cfg.getMinPreforkCount(),
+                cfg.getPreforkDemandWindow(),
+                cfg.getPreforkHotSetFile(),
+                cfg.getMaxJobsPerPrefork(),
+                cfg.getDependencyResolutionCacheDir(),
+                cfg.getDependencyResolutionTtl());
 
         DependencyManager dependencyManager = new DependencyManager(cfg.getDependencyCacheDir());
 
@@ -322,6 +349,8 @@ public class Agent {
         DockerRunnerJobExecutorConfiguration dockerRunnerCfg = new DockerRunnerJobExecutorConfiguration(cfg.getDockerHost(), cfg.getDependencyCacheDir(), cfg.getJavaPath());
 
         RunnerJobExecutor runnerJobExecutor = new RunnerJobExecutor(runnerExecutorCfg, dependencyManager, defaultDependencies, postProcessors, executor);
+        runnerJobExecutor.restorePreforks();
+
         DockerRunnerJobExecutor dockerRunnerJobExecutor = new DockerRunnerJobExecutor(runnerExecutorCfg, dockerRunnerCfg, dependencyManager, defaultDependencies, postProcessors, executor);
         return req -> {
             RunnerJob job = RunnerJob.from(req, processLogFactory);
@@ -44,6 +44,8 @@ public class Configuration {
     private final String agentId;
     private final Map<String, Object> capabilities;
     private final Path dependencyCacheDir;
+    private final Path dependencyResolutionCacheDir;
+    private final long dependencyResolutionTtl;
     private final Path dependencyListsDir;
     private final Path payloadDir;
 
@@ -51,11 +53,16 @@ public class Configuration {
     private final long logMaxDelay;
 
     private final int workersCount;
+    private final int maxAcquireBatch;
     private final Path javaPath;
     private final long pollInterval;
 
     private final long maxPreforkAge;
     private final int maxPreforkCount;
+    private final int minPreforkCount;
+    private final long preforkDemandWindow;
+    private final Path preforkHotSetFile;
+    private final int maxJobsPerPrefork;
 
     private final String serverApiBaseUrl;
     private final String serverWebsocketUrl;
@@ -73,6 +80,12 @@ public class Configuration {
 
     private final Path repositoryCacheDir;
     private final long repositoryLockTimeout;
+    private final Path repositorySnapshotDir;
+    private final int repositoryMaxSnapshots;
+    private final boolean repositorySnapshotHardlinks;
+
+    private final Path stateCacheDir;
+    private final long stateCacheMaxSize;
 
     private final String repositoryOauthToken;
     private final boolean shallowClone;
@@ -98,6 +111,8 @@ public class Configuration {
         log.info("Using the capabilities: {}", this.capabilities);
 
         this.dependencyCacheDir = getDir(cfg, "dependencyCacheDir");
+        this.dependencyResolutionCacheDir = getDir(cfg, "dependencyResolutionCache.dir");
+        this.dependencyResolutionTtl = cfg.getDuration("dependencyResolutionCache.ttl", TimeUnit.MILLISECONDS);
         this.dependencyListsDir = getDir(cfg, "dependencyListsDir");
         this.payloadDir = getDir(cfg, "payloadDir");
 
@@ -105,6 +120,7 @@ public class Configuration {
         this.logMaxDelay = cfg.getDuration("logMaxDelay", TimeUnit.MILLISECONDS);
 
         this.workersCount = cfg.getInt("workersCount");
+        this.maxAcquireBatch = Math.max(cfg.getInt("maxAcquireBatch"), 1);
 
         String java = getStringOrDefault(cfg, "javaPath", () -> System.getProperty("java.home"));
         if (java != null) {
@@ -119,6 +135,10 @@ public class Configuration {
 
         this.maxPreforkAge = cfg.getDuration("prefork.maxAge", TimeUnit.MILLISECONDS);
         this.maxPreforkCount = cfg.getInt("prefork.maxCount");
+        this.minPreforkCount = cfg.getInt("prefork.minCount");
+        this.preforkDemandWindow = cfg.getDuration("prefork.demandWindow", TimeUnit.MILLISECONDS);
+        this.preforkHotSetFile = cfg.hasPath("prefork.hotSetFile") ? Paths.get(cfg.getString("prefork.hotSetFile")) : null;
+        this.maxJobsPerPrefork = cfg.getInt("prefork.maxJobs");
 
         this.serverApiBaseUrl = cfg.getString("server.apiBaseUrl");
         this.serverWebsocketUrl = cfg.getString("server.websockerUrl");
@@ -139,6 +159,12 @@ public class Configuration {
 
         this.repositoryCacheDir = getDir(cfg, "repositoryCache.cacheDir");
         this.repositoryLockTimeout = cfg.getDuration("repositoryCache.lockTimeout", TimeUnit.MILLISECONDS);
+        this.repositorySnapshotDir = getDir(cfg, "repositoryCache.snapshotDir");
+        this.repositoryMaxSnapshots = cfg.getInt("repositoryCache.maxSnapshots");
+        this.repositorySnapshotHardlinks = cfg.getBoolean("repositoryCache.hardlinkSnapshots");
+
+        this.stateCacheDir = getDir(cfg, "stateCache.dir");
+        this.stateCacheMaxSize = cfg.getBytes("stateCache.maxSize");
 
         this.repositoryOauthToken = getStringOrDefault(cfg, "git.oauth", () -> null);
         this.shallowClone = cfg.getBoolean("git.shallowClone");
@@ -193,6 +219,14 @@ public class Configuration {
         return dependencyCacheDir;
     }
 
+    public Path getDependencyResolutionCacheDir() {
+        return dependencyResolutionCacheDir;
+    }
+
+    public long getDependencyResolutionTtl() {
+        return dependencyResolutionTtl;
+    }
+
     public Path getRunnerPath() {
         return runnerPath;
     }
@@ -201,6 +235,10 @@ public class Configuration {
         return workersCount;
     }
 
+    public int getMaxAcquireBatch() {
+        return maxAcquireBatch;
+    }
+
     public long getMaxPreforkAge() {
         return maxPreforkAge;
     }
@@ -209,6 +247,22 @@ public class Configuration {
         return maxPreforkCount;
     }
 
+    public int getMinPreforkCount() {
+        return minPreforkCount;
+    }
+
+    public long getPreforkDemandWindow() {
+        return preforkDemandWindow;
+    }
+
+    public Path getPreforkHotSetFile() {
+        return preforkHotSetFile;
+    }
+
+    public int getMaxJobsPerPrefork() {
+        return maxJobsPerPrefork;
+    }
+
     public String getDockerHost() {
         return dockerHost;
     }
@@ -285,6 +339,26 @@ public class Configuration {
         return repositoryCacheDir;
     }
 
+    public Path getRepositorySnapshotDir() {
+        return repositorySnapshotDir;
+    }
+
+    public int getRepositoryMaxSnapshots() {
+        return repositoryMaxSnapshots;
+    }
+
+    public boolean isRepositorySnapshotHardlinks() {
+        return repositorySnapshotHardlinks;
+    }
+
+    public Path getStateCacheDir() {
+        return stateCacheDir;
+    }
+
+    public long getStateCacheMaxSize() {
+        return stateCacheMaxSize;
+    }
+
     public int getRepositorySshTimeout() {
         return repositorySshTimeout;
     }
@@ -311,15 +385,22 @@ public class Configuration {
                 "agentId='" + agentId + '\'' +
                 ", capabilities=" + capabilities +
                 ", dependencyCacheDir=" + dependencyCacheDir +
+                ", dependencyResolutionCacheDir=" + dependencyResolutionCacheDir +
+                ", dependencyResolutionTtl=" + dependencyResolutionTtl +
                 ", dependencyListsDir=" + dependencyListsDir +
                 ", payloadDir=" + payloadDir +
                 ", logDir=" + logDir +
                 ", logMaxDelay=" + logMaxDelay +
                 ", workersCount=" + workersCount +
+                ", maxAcquireBatch=" + maxAcquireBatch +
                 ", javaPath=" + javaPath +
                 ", pollInterval=" + pollInterval +
                 ", maxPreforkAge=" + maxPreforkAge +
                 ", maxPreforkCount=" + maxPreforkCount +
+                ", minPreforkCount=" + minPreforkCount +
+                ", preforkDemandWindow=" + preforkDemandWindow +
+                ", preforkHotSetFile=" + preforkHotSetFile +
+                ", maxJobsPerPrefork=" + maxJobsPerPrefork +
                 ", serverApiBaseUrl='" + serverApiBaseUrl + '\'' +
                 ", serverWebsocketUrl='" + serverWebsocketUrl + '\'' +
                 ", apiVerifySsl=" + apiVerifySsl +
@@ -334,6 +415,11 @@ public class Configuration {
                 ", dockerOrphanSweeperPeriod=" + dockerOrphanSweeperPeriod +
                 ", repositoryCacheDir=" + repositoryCacheDir +
                 ", repositoryLockTimeout=" + repositoryLockTimeout +
+                ", repositorySnapshotDir=" + repositorySnapshotDir +
+                ", repositoryMaxSnapshots=" + repositoryMaxSnapshots +
+                ", repositorySnapshotHardlinks=" + repositorySnapshotHardlinks +
+                ", stateCacheDir=" + stateCacheDir +
+                ", stateCacheMaxSize=" + stateCacheMaxSize +
                 ", repositoryOauthToken='" + repositoryOauthToken + '\'' +
                 ", shallowClone=" + shallowClone +
                 ", repositoryHttpLowSpeedLimit=" + repositoryHttpLowSpeedLimit +
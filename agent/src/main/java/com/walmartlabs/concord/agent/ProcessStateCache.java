@@ -0,0 +1,151 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.Posix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed cache of process state items. Items are stored using
+ * the hashes provided by the server, so resumed processes can reuse
+ * the data downloaded by the previous runs.
+ */
+public class ProcessStateCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessStateCache.class);
+
+    private static final String TMP_PREFIX = "tmp_";
+
+    private final Path baseDir;
+    private final long maxSize;
+
+    public ProcessStateCache(Path baseDir, long maxSize) {
+        this.baseDir = baseDir;
+        this.maxSize = maxSize;
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Copies a cached item into the specified file.
+     *
+     * @return {@code true} if the item was found in the cache
+     */
+    public boolean copyTo(String hash, Path dst, int unixMode) {
+        if (hash == null) {
+            return false;
+        }
+
+        Path src = baseDir.resolve(hash);
+        try {
+            Path parent = dst.getParent();
+            if (parent != null && !Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+
+            Files.copy(src, dst, StandardCopyOption.REPLACE_EXISTING);
+            Files.setPosixFilePermissions(dst, Posix.posix(unixMode > 0 ? unixMode : Posix.DEFAULT_UNIX_MODE));
+            Files.setLastModifiedTime(src, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e) {
+            // not cached or evicted in the meantime
+            return false;
+        } catch (IOException e) {
+            log.warn("copyTo ['{}', '{}'] -> error: {}", hash, dst, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Adds the specified file into the cache.
+     */
+    public void put(String hash, Path src) {
+        Path dst = baseDir.resolve(hash);
+        if (Files.exists(dst)) {
+            return;
+        }
+
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(baseDir, TMP_PREFIX, null);
+            Files.copy(src, tmp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("put ['{}', '{}'] -> error: {}", hash, src, e.getMessage());
+        } finally {
+            if (tmp != null) {
+                IOUtils.delete(tmp.toFile());
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used items until the total size of the cache
+     * is under the limit.
+     */
+    public synchronized void evict() {
+        List<Path> items;
+        try (Stream<Path> s = Files.list(baseDir)) {
+            items = s.filter(p -> !p.getFileName().toString().startsWith(TMP_PREFIX))
+                    .sorted(Comparator.comparing(ProcessStateCache::lastModified).reversed())
+                    .collect(Collectors.toList());
+        } catch (IOException e) {
+            log.warn("evict -> error: {}", e.getMessage());
+            return;
+        }
+
+        long total = 0;
+        for (Path p : items) {
+            total += size(p);
+            if (total > maxSize) {
+                IOUtils.delete(p.toFile());
+            }
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long size(Path p) {
+        try {
+            return Files.size(p);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
@@ -20,52 +20,119 @@ package com.walmartlabs.concord.agent;
  * =====
  */
 
+import com.squareup.okhttp.Call;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.walmartlabs.concord.ApiException;
 import com.walmartlabs.concord.client.ClientUtils;
 import com.walmartlabs.concord.client.ProcessApi;
+import com.walmartlabs.concord.client.ProcessStateItem;
 import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.project.InternalConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 public class RemoteStateFetcher implements Worker.StateFetcher {
 
     private static final Logger log = LoggerFactory.getLogger(RemoteStateFetcher.class);
 
     private final ProcessApi processApi;
+    private final ProcessStateCache stateCache;
     private final int maxRetries;
     private final long retryDelay;
 
-    public RemoteStateFetcher(ProcessApi processApi, int maxRetries, long retryDelay) {
+    public RemoteStateFetcher(ProcessApi processApi, ProcessStateCache stateCache, int maxRetries, long retryDelay) {
         this.processApi = processApi;
+        this.stateCache = stateCache;
         this.maxRetries = maxRetries;
         this.retryDelay = retryDelay;
     }
 
     @Override
     public void downloadState(JobRequest job) throws Exception {
-        File payload = null;
-        try {
-            payload = ClientUtils.withRetry(maxRetries, retryDelay, () -> processApi.downloadState(job.getInstanceId()));
-            IOUtils.unzip(payload.toPath(), job.getPayloadDir(), StandardCopyOption.REPLACE_EXISTING);
-        } finally {
-            if (payload != null) {
-                delete(payload.toPath());
+        UUID instanceId = job.getInstanceId();
+        Path dst = job.getPayloadDir();
+
+        if (!stateCache.isEnabled()) {
+            download(() -> processApi.downloadStateCall(instanceId, null, null), dst);
+            return;
+        }
+
+        // the manifest is returned only for resuming processes, new processes are downloaded entirely
+        List<ProcessStateItem> manifest = ClientUtils.withRetry(maxRetries, retryDelay, () -> processApi.getStateManifest(instanceId));
+        if (manifest == null || manifest.isEmpty()) {
+            download(() -> processApi.downloadStateCall(instanceId, null, null), dst);
+            return;
+        }
+
+        // reuse the items downloaded previously
+        List<ProcessStateItem> missing = new ArrayList<>();
+        for (ProcessStateItem i : manifest) {
+            if (!stateCache.copyTo(i.getHash(), dst.resolve(i.getPath()), i.getUnixMode())) {
+                missing.add(i);
             }
         }
-    }
 
-    private static void delete(Path dir) {
-        if (dir == null) {
+        if (missing.isEmpty()) {
+            log.info("downloadState ['{}'] -> all {} item(s) found in the cache", instanceId, manifest.size());
             return;
         }
 
-        try {
-            IOUtils.deleteRecursively(dir);
-        } catch (Exception e) {
-            log.warn("delete ['{}'] -> error", dir, e);
+        if (missing.size() == manifest.size()) {
+            download(() -> processApi.downloadStateCall(instanceId, null, null), dst);
+        } else {
+            List<String> paths = missing.stream()
+                    .map(ProcessStateItem::getPath)
+                    .collect(Collectors.toList());
+
+            download(() -> processApi.downloadStateItemsCall(instanceId, paths, null, null), dst);
         }
+
+        log.info("downloadState ['{}'] -> {} item(s) found in the cache, {} item(s) downloaded",
+                instanceId, manifest.size() - missing.size(), missing.size());
+
+        for (ProcessStateItem i : missing) {
+            if (i.getHash() != null) {
+                stateCache.put(i.getHash(), dst.resolve(i.getPath()));
+            }
+        }
+
+        stateCache.evict();
+    }
+
+    /**
+     * Unpacks the response directly into the target directory,
+     * without saving the archive first. Archives of older servers
+     * don't have the unix modes in the entries' local headers, those
+     * are saved and unpacked using the central directory.
+     */
+    private void download(Callable<Call> f, Path dst) throws Exception {
+        ClientUtils.withRetry(maxRetries, retryDelay, () -> {
+            Response resp = f.call().execute();
+            try (ResponseBody body = resp.body()) {
+                if (!resp.isSuccessful()) {
+                    throw new ApiException(resp.code(), resp.message(), resp.headers().toMultimap(), body.string());
+                }
+
+                try (InputStream in = body.byteStream()) {
+                    if ("asi".equals(resp.header(InternalConstants.Headers.STATE_UNIX_MODE))) {
+                        IOUtils.unzipStreaming(in, dst, StandardCopyOption.REPLACE_EXISTING);
+                    } else {
+                        IOUtils.unzip(in, dst, StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+
+            return null;
+        });
     }
 }
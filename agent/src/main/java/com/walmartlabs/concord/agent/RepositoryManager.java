@@ -23,16 +23,22 @@ package com.walmartlabs.concord.agent;
 import com.walmartlabs.concord.client.SecretClient;
 import com.walmartlabs.concord.repository.*;
 import com.walmartlabs.concord.sdk.Secret;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 
 public class RepositoryManager {
 
+    private static final Logger log = LoggerFactory.getLogger(RepositoryManager.class);
+
     private final RepositoryProviders providers;
     private final SecretClient secretClient;
     private final Path cacheDir;
+    private final RepositorySnapshotCache snapshotCache;
 
     public RepositoryManager(Configuration cfg, SecretClient secretClient) {
         GitClientConfiguration gitCfg = GitClientConfiguration.builder()
@@ -49,16 +55,34 @@ public class RepositoryManager {
 
         this.secretClient = secretClient;
         this.cacheDir = cfg.getRepositoryCacheDir();
+        this.snapshotCache = new RepositorySnapshotCache(cfg.getRepositorySnapshotDir(), cfg.getRepositoryMaxSnapshots(), cfg.isRepositorySnapshotHardlinks());
     }
 
     public void export(String orgName, String secretName, String repoUrl, String commitId, String repoPath, Path workDir) throws ExecutionException {
+        if (!snapshotCache.isEnabled()) {
+            Secret secret = getSecret(orgName, secretName);
+
+            providers.export(repoUrl, commitId, repoPath, secret, cacheDir, workDir);
+            return;
+        }
+
+        try {
+            if (snapshotCache.copyTo(repoUrl, commitId, repoPath, workDir)) {
+                log.info("export ['{}', '{}', '{}'] -> using the cached snapshot", repoUrl, commitId, repoPath);
+                return;
+            }
+        } catch (IOException e) {
+            throw new ExecutionException("Error while copying a repository snapshot: " + e.getMessage(), e);
+        }
+
         Secret secret = getSecret(orgName, secretName);
 
-        providers.withLock(repoUrl, () -> {
-            Repository repo = providers.fetch(repoUrl, null, commitId, repoPath, secret, cacheDir);
-            repo.export(workDir);
-            return null;
-        });
+        try {
+            snapshotCache.createAndCopyTo(repoUrl, commitId, repoPath,
+                    dst -> providers.export(repoUrl, commitId, repoPath, secret, cacheDir, dst), workDir);
+        } catch (IOException e) {
+            throw new ExecutionException("Error while creating a repository snapshot: " + e.getMessage(), e);
+        }
     }
 
     private Secret getSecret(String orgName, String secretName) throws ExecutionException {
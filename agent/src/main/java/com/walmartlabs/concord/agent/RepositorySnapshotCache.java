@@ -0,0 +1,223 @@
+package com.walmartlabs.concord.agent;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.common.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps exported repository trees keyed by (repository URL, commit ID, path).
+ * Processes started from the same commit reuse the cached tree instead of
+ * fetching and exporting the repository again.
+ */
+public class RepositorySnapshotCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RepositorySnapshotCache.class);
+
+    private static final String TMP_PREFIX = "tmp_";
+
+    private final Path baseDir;
+    private final int maxSnapshots;
+    private final boolean hardlinks;
+
+    /**
+     * Guards the snapshot directories: copying from a snapshot holds
+     * the read lock, adding and evicting snapshots hold the write lock.
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public RepositorySnapshotCache(Path baseDir, int maxSnapshots, boolean hardlinks) {
+        this.baseDir = baseDir;
+        this.maxSnapshots = maxSnapshots;
+        this.hardlinks = hardlinks;
+
+        cleanup();
+    }
+
+    public boolean isEnabled() {
+        return maxSnapshots > 0;
+    }
+
+    /**
+     * Copies the cached snapshot into the specified directory.
+     *
+     * @return {@code true} if the snapshot was found in the cache
+     */
+    public boolean copyTo(String repoUrl, String commitId, String repoPath, Path dst) throws IOException {
+        Path snapshot = snapshotDir(repoUrl, commitId, repoPath);
+
+        lock.readLock().lock();
+        try {
+            if (!Files.exists(snapshot)) {
+                return false;
+            }
+
+            Files.setLastModifiedTime(snapshot, FileTime.fromMillis(System.currentTimeMillis()));
+            copySnapshot(snapshot, dst);
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a new snapshot using the provided export function and copies it
+     * into the specified directory.
+     */
+    public void createAndCopyTo(String repoUrl, String commitId, String repoPath, Exporter exporter, Path dst) throws IOException {
+        Path snapshot = snapshotDir(repoUrl, commitId, repoPath);
+
+        Path tmpDir = IOUtils.createTempDir(baseDir, TMP_PREFIX);
+        try {
+            exporter.export(tmpDir);
+
+            lock.writeLock().lock();
+            try {
+                if (!Files.exists(snapshot)) {
+                    Files.move(tmpDir, snapshot, StandardCopyOption.ATOMIC_MOVE);
+                    evict();
+                }
+
+                // downgrade to the read lock, the snapshot can't be evicted while we're copying it
+                lock.readLock().lock();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            try {
+                copySnapshot(snapshot, dst);
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            if (Files.exists(tmpDir)) {
+                IOUtils.deleteRecursively(tmpDir);
+            }
+        }
+    }
+
+    private void copySnapshot(Path snapshot, Path dst) throws IOException {
+        if (hardlinks) {
+            linkTree(snapshot, dst);
+        } else {
+            IOUtils.copy(snapshot, dst, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Recreates the directory structure of {@code src} in {@code dst} and hardlinks the files.
+     * Falls back to copying if the directories are on different file systems.
+     */
+    private static void linkTree(Path src, Path dst) throws IOException {
+        Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                Files.createDirectories(dst.resolve(src.relativize(dir).toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Path target = dst.resolve(src.relativize(file).toString());
+                Files.deleteIfExists(target);
+
+                if (attrs.isSymbolicLink()) {
+                    Files.copy(file, target, LinkOption.NOFOLLOW_LINKS);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                try {
+                    Files.createLink(target, file);
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    Files.copy(file, target, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Path snapshotDir(String repoUrl, String commitId, String repoPath) {
+        Hasher h = Hashing.sha256().newHasher();
+        h.putString(repoUrl, StandardCharsets.UTF_8);
+        h.putString(commitId, StandardCharsets.UTF_8);
+        if (repoPath != null) {
+            h.putString(repoPath, StandardCharsets.UTF_8);
+        }
+        return baseDir.resolve(h.hash().toString());
+    }
+
+    private void evict() throws IOException {
+        List<Path> snapshots;
+        try (Stream<Path> s = Files.list(baseDir)) {
+            snapshots = s.filter(p -> !p.getFileName().toString().startsWith(TMP_PREFIX))
+                    .sorted(Comparator.comparing(RepositorySnapshotCache::lastModified).reversed())
+                    .collect(Collectors.toList());
+        }
+
+        for (int i = maxSnapshots; i < snapshots.size(); i++) {
+            Path p = snapshots.get(i);
+            log.info("evict -> removing {}", p);
+            IOUtils.deleteRecursively(p);
+        }
+    }
+
+    private void cleanup() {
+        try (Stream<Path> s = Files.list(baseDir)) {
+            for (Path p : s.collect(Collectors.toList())) {
+                // remove incomplete snapshots and, if the cache is disabled, everything else
+                if (!isEnabled() || p.getFileName().toString().startsWith(TMP_PREFIX)) {
+                    IOUtils.deleteRecursively(p);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("cleanup -> error while removing old snapshots: {}", e.getMessage());
+        }
+    }
+
+    private static long lastModified(Path p) {
+        try {
+            return Files.getLastModifiedTime(p).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    public interface Exporter {
+
+        void export(Path dst) throws IOException;
+    }
+}
@@ -0,0 +1,217 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.dependencymanager.DependencyEntity;
+import com.walmartlabs.concord.dependencymanager.DependencyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent cache of resolved dependency lists. Keyed by the hash of the
+ * sorted list of dependency URIs. Lists with "floating" versions (SNAPSHOT,
+ * LATEST, RELEASE, version ranges) or local files are never cached, including
+ * the lists where such versions are used by transitive dependencies.
+ */
+public class DependencyResolutionCache {
+
+    private static final Logger log = LoggerFactory.getLogger(DependencyResolutionCache.class);
+
+    private static final Pattern SNAPSHOT_TIMESTAMP = Pattern.compile("-\\d{8}\\.\\d{6}-\\d+$");
+
+    private final Path baseDir;
+    private final long ttl;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public DependencyResolutionCache(Path baseDir, long ttl) {
+        this.baseDir = baseDir;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the cached result for the specified dependencies or {@code null}
+     * if there is no valid cache entry.
+     */
+    public Collection<DependencyEntity> get(Collection<URI> uris) {
+        if (ttl <= 0 || !isCacheable(uris)) {
+            return null;
+        }
+
+        Path p = entryPath(uris);
+        if (!Files.exists(p)) {
+            return null;
+        }
+
+        try {
+            if (System.currentTimeMillis() - Files.getLastModifiedTime(p).toMillis() >= ttl) {
+                Files.deleteIfExists(p);
+                return null;
+            }
+
+            Entry[] entries = objectMapper.readValue(p.toFile(), Entry[].class);
+
+            List<DependencyEntity> result = new ArrayList<>(entries.length);
+            for (Entry e : entries) {
+                Path path = Paths.get(e.path);
+                if (!Files.exists(path)) {
+                    // removed from the dependency cache, resolve again
+                    return null;
+                }
+                result.add(e.toEntity(path));
+            }
+            return result;
+        } catch (IOException e) {
+            log.warn("get -> can't read {}: {}", p, e.getMessage());
+            return null;
+        }
+    }
+
+    public void put(Collection<URI> uris, Collection<DependencyEntity> deps) {
+        if (ttl <= 0 || !isCacheable(uris)) {
+            return;
+        }
+
+        if (!deps.stream().allMatch(DependencyResolutionCache::isCacheable)) {
+            log.debug("put -> some of the resolved dependencies have floating versions, skipping");
+            return;
+        }
+
+        List<Entry> entries = deps.stream()
+                .map(Entry::new)
+                .collect(Collectors.toList());
+
+        Path p = entryPath(uris);
+        try {
+            Path tmp = Files.createTempFile(baseDir, "tmp_", ".json");
+            objectMapper.writeValue(tmp.toFile(), entries);
+            Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("put -> can't save {}: {}", p, e.getMessage());
+        }
+    }
+
+    Path entryPath(Collection<URI> uris) {
+        Hasher h = Hashing.sha256().newHasher();
+        uris.stream()
+                .map(URI::toString)
+                .sorted()
+                .forEach(s -> h.putString(s, Charsets.UTF_8).putChar('\n'));
+
+        return baseDir.resolve(h.hash().toString() + ".json");
+    }
+
+    static boolean isCacheable(Collection<URI> uris) {
+        return uris.stream().allMatch(DependencyResolutionCache::isCacheable);
+    }
+
+    /**
+     * Checks a resolved dependency, e.g. a transitive dependency with
+     * a version range or a SNAPSHOT version.
+     */
+    static boolean isCacheable(DependencyEntity e) {
+        if (e.isDynamic()) {
+            return false;
+        }
+
+        DependencyEntity.Artifact a = e.getArtifact();
+        return a == null || !isSnapshot(a.getVersion());
+    }
+
+    private static boolean isCacheable(URI uri) {
+        String scheme = uri.getScheme();
+        if ("file".equalsIgnoreCase(scheme)) {
+            return false;
+        }
+
+        if (!DependencyManager.MAVEN_SCHEME.equalsIgnoreCase(scheme)) {
+            // direct links to SNAPSHOT files are downloaded every time
+            return !uri.getPath().contains("SNAPSHOT");
+        }
+
+        // groupId:artifactId[:extension[:classifier]]:version
+        String id = uri.getAuthority();
+        String version = id.substring(id.lastIndexOf(':') + 1).toUpperCase(Locale.ENGLISH);
+
+        return !isSnapshot(version)
+                && !version.equals("LATEST")
+                && !version.equals("RELEASE")
+                && !version.startsWith("[")
+                && !version.startsWith("(");
+    }
+
+    private static boolean isSnapshot(String version) {
+        // resolved SNAPSHOTs have timestamped versions, e.g. 1.0-20190101.123456-1
+        return version != null && (version.toUpperCase(Locale.ENGLISH).endsWith("SNAPSHOT") || SNAPSHOT_TIMESTAMP.matcher(version).find());
+    }
+
+    private static final class Entry {
+
+        public String path;
+        public String groupId;
+        public String artifactId;
+        public String version;
+        public String directLink;
+
+        @SuppressWarnings("unused")
+        public Entry() {
+        }
+
+        private Entry(DependencyEntity e) {
+            this.path = e.getPath().toAbsolutePath().toString();
+
+            DependencyEntity.Artifact a = e.getArtifact();
+            if (a != null) {
+                this.groupId = a.getGroupId();
+                this.artifactId = a.getArtifactId();
+                this.version = a.getVersion();
+            }
+
+            URI link = e.getDirectLink();
+            if (link != null) {
+                this.directLink = link.toString();
+            }
+        }
+
+        private DependencyEntity toEntity(Path p) {
+            if (directLink != null) {
+                return new DependencyEntity(p, URI.create(directLink));
+            }
+            return new DependencyEntity(p, groupId, artifactId, version);
+        }
+    }
+}
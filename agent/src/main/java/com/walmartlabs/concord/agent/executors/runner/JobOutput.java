@@ -0,0 +1,192 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.project.InternalConstants;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads the output of a runner JVM that executes multiple jobs up to the end
+ * of the current job, i.e. up to the {@link InternalConstants.Agent#JOB_DONE_MARKER} line.
+ * Only a line that starts with the marker followed by the job's nonce ends the job,
+ * so the job can't end itself by printing the marker.
+ * The underlying stream is not closed and can be used to read the next job's output.
+ */
+public class JobOutput extends InputStream {
+
+    private static final String FINAL_SUFFIX = InternalConstants.Agent.JOB_DONE_FINAL_SUFFIX;
+
+    private final InputStream in;
+    private final byte[] marker;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private byte[] buf = new byte[0];
+    private int pos;
+    private boolean eof;
+    private Integer exitCode;
+    private boolean isFinal;
+
+    public JobOutput(InputStream in, String jobNonce) {
+        this.in = in;
+        this.marker = (InternalConstants.Agent.JOB_DONE_MARKER + jobNonce + ":").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the job's exit code or {@code null} if the process exited
+     * before finishing the job.
+     */
+    public Integer getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * Returns {@code true} if the process can't execute any more jobs
+     * and exits after the current one.
+     */
+    public boolean isFinal() {
+        return isFinal;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos >= buf.length && !fill()) {
+            return -1;
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (pos >= buf.length && !fill()) {
+            return -1;
+        }
+
+        int n = Math.min(len, buf.length - pos);
+        System.arraycopy(buf, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        // the underlying stream is shared between jobs
+    }
+
+    /**
+     * Reads the next line of the output. The line is buffered as a whole
+     * to avoid passing the marker to the reader.
+     */
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+
+        byte[] ab = readLine();
+        if (ab.length == 0) {
+            eof = true;
+            return false;
+        }
+
+        if (isMarker(ab)) {
+            done(ab);
+            return false;
+        }
+
+        if (ab.length == 1 && ab[0] == '\n') {
+            // the runner prints a line separator before the marker, skip it
+            byte[] next = readLine();
+            if (isMarker(next)) {
+                done(next);
+                return false;
+            }
+
+            ab = concat(ab, next);
+        }
+
+        buf = ab;
+        pos = 0;
+        return true;
+    }
+
+    private byte[] readLine() throws IOException {
+        line.reset();
+
+        int c;
+        while ((c = in.read()) >= 0) {
+            line.write(c);
+            if (c == '\n') {
+                break;
+            }
+        }
+
+        return line.toByteArray();
+    }
+
+    private boolean isMarker(byte[] ab) {
+        if (ab.length < marker.length) {
+            return false;
+        }
+
+        for (int i = 0; i < marker.length; i++) {
+            if (ab[i] != marker[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void done(byte[] ab) {
+        eof = true;
+        buf = new byte[0];
+        pos = 0;
+
+        String s = new String(ab, marker.length, ab.length - marker.length, StandardCharsets.UTF_8).trim();
+        if (s.endsWith(FINAL_SUFFIX)) {
+            isFinal = true;
+            s = s.substring(0, s.length() - FINAL_SUFFIX.length());
+        }
+        exitCode = parseExitCode(s);
+    }
+
+    private static int parseExitCode(String s) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -26,12 +26,40 @@ import com.walmartlabs.concord.agent.Utils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Path;
-import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of pre-forked JVMs grouped by the hash of their command line.
+ * <p>
+ * The pool doesn't use any global locks: each entry can be claimed only once,
+ * either by {@link #take(HashCode, String, ProcessLauncher)} or by the eviction/maintenance
+ * code. New JVMs are always started outside of the pool's data structures.
+ * <p>
+ * The number of instances kept for each hash is proportional to the number of
+ * requests for that hash seen during the last {@code demandWindow} milliseconds:
+ * the pool tries to have enough instances to serve the expected number of
+ * requests during the lifetime ({@code maxEntryAge}) of a pre-forked instance.
+ * The total number of available and starting instances never exceeds
+ * {@code maxEntryCount}, when the demand is higher new instances are not started.
+ * <p>
+ * Processes capable of running multiple jobs can be returned into the pool with
+ * {@link #release(ProcessEntry, String)} after each job. Such processes are bound
+ * to the owner (e.g. the project) of their previous jobs and are given only to
+ * requests of the same owner.
+ */
 public class ProcessPool {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessPool.class);
@@ -39,18 +67,45 @@ public class ProcessPool {
 
     private final long maxEntryAge;
     private final int maxEntryCount;
-    private final Map<HashCode, Queue<ProcessEntry>> pool = new HashMap<>();
+    private final int minEntryCount;
+    private final long demandWindow;
+
+    private final ConcurrentMap<HashCode, Bucket> pool = new ConcurrentHashMap<>();
+
+    /**
+     * All available entries in the order they were added to the pool. Released
+     * processes keep their creation time, so the queue is not strictly ordered by age.
+     * May contain entries that are already claimed, those are skipped.
+     */
+    private final Queue<ProcessEntry> byAge = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The total number of available (not claimed) entries.
+     */
+    private final AtomicInteger available = new AtomicInteger();
+
+    /**
+     * The total number of processes being started in background.
+     */
+    private final AtomicInteger starting = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
     private final ExecutorService executor = Executors.newCachedThreadPool();
 
-    public ProcessPool(long maxEntryAge, int maxEntryCount) {
+    public ProcessPool(long maxEntryAge, int maxEntryCount, int minEntryCount, long demandWindow) {
         this.maxEntryAge = maxEntryAge;
         this.maxEntryCount = maxEntryCount;
+        this.minEntryCount = minEntryCount;
+        this.demandWindow = demandWindow;
         init();
     }
 
     public void init() {
         Thread t = new Thread(() -> {
-            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}", maxEntryAge, maxEntryCount);
+            log.info("run -> starting cleanup thread, max entry age {}ms, max entry count {}, min entry count {}, demand window {}ms",
+                    maxEntryAge, maxEntryCount, minEntryCount, demandWindow);
 
             while (!Thread.currentThread().isInterrupted()) {
                 try {
@@ -66,96 +121,250 @@ public class ProcessPool {
         t.start();
     }
 
-    public ProcessEntry take(HashCode hc, ProcessLauncher launcher) throws ExecutionException {
-        synchronized (pool) {
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+    /**
+     * Takes a process for the specified hash. Returns a new process or
+     * a process that executed jobs of the same {@code owner} only.
+     */
+    public ProcessEntry take(HashCode hc, String owner, ProcessLauncher launcher) throws ExecutionException {
+        Bucket b = pool.computeIfAbsent(hc, k -> new Bucket());
+        b.launcher = launcher;
+        b.demand.add(System.currentTimeMillis());
 
-            ProcessEntry entry = q.poll();
-            if (entry == null) {
-                try {
-                    entry = launcher.start();
-                } catch (IOException e) {
-                    throw new ExecutionException("Error while starting a new process", e);
-                }
+        ProcessEntry entry = b.poll(owner);
 
-                log.info("take -> started a new process: {}", entry.procDir);
-            } else {
-                log.info("take -> using a pre-forked instance: {}", entry.procDir);
+        if (entry == null) {
+            try {
+                entry = launcher.start();
+            } catch (IOException e) {
+                throw new ExecutionException("Error while starting a new process", e);
             }
 
-            executor.submit(() -> populate(hc, launcher));
+            entry.hash = hc;
 
-            return entry;
+            misses.incrementAndGet();
+            log.info("take -> started a new process: {}", entry.procDir);
+        } else {
+            hits.incrementAndGet();
+            available.decrementAndGet();
+            log.info("take -> using a pre-forked instance: {}", entry.procDir);
         }
+
+        populate(hc, b, launcher);
+
+        return entry;
     }
 
-    private void populate(HashCode hc, ProcessLauncher launcher) {
-        synchronized (pool) {
-            // calculate the total number of processes in the pool
-            int total = 0;
-            for (Map.Entry<HashCode, Queue<ProcessEntry>> e : pool.entrySet()) {
-                total += e.getValue().size();
+    /**
+     * Returns a process that finished its job back into the pool.
+     * The process must be ready to accept a new job. Only the requests
+     * of the same {@code owner} can take the process after that.
+     */
+    public void release(ProcessEntry prev, String owner) {
+        if (System.currentTimeMillis() - prev.timestamp >= maxEntryAge) {
+            log.info("release -> {} is too old, jobs executed: {}", prev.procDir, prev.jobCount + 1);
+            Utils.kill(prev.process);
+            return;
+        }
+
+        ProcessEntry entry = new ProcessEntry(prev, owner);
+        offer(entry.hash, entry, true);
+        log.info("release -> {} is available again for '{}', jobs executed: {}", entry.procDir, owner, entry.jobCount);
+    }
+
+    /**
+     * Pre-starts instances for the specified hash as if it was requested
+     * {@code demand} times recently. Used to restore the pool after a restart.
+     */
+    public void warmUp(HashCode hc, ProcessLauncher launcher, int demand) {
+        Bucket b = pool.computeIfAbsent(hc, k -> new Bucket());
+        b.launcher = launcher;
+
+        long t = System.currentTimeMillis();
+        for (int i = 0; i < demand; i++) {
+            b.demand.add(t);
+        }
+
+        populate(hc, b, launcher);
+    }
+
+    /**
+     * Returns the number of requests seen during the demand window for each hash.
+     */
+    public Map<HashCode, Integer> getDemand() {
+        Map<HashCode, Integer> result = new HashMap<>();
+        pool.forEach((hc, b) -> {
+            int n = b.demand.size();
+            if (n > 0) {
+                result.put(hc, n);
             }
+        });
+        return result;
+    }
 
-            if (total >= maxEntryCount) {
-                // mark the oldest entry for removal
-                ProcessEntry oldest = null;
-                for (Map.Entry<HashCode, Queue<ProcessEntry>> q : pool.entrySet()) {
-                    for (ProcessEntry e : q.getValue()) {
-                        if (oldest == null || oldest.timestamp > e.timestamp) {
-                            oldest = e;
-                        }
-                    }
-                }
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
 
-                // it's never null
-                assert oldest != null;
+    /**
+     * Starts enough new processes in background to have the target number
+     * of instances available for the specified hash. Stops when the pool is full:
+     * starting more would only make {@link #evictOldest()} kill other instances.
+     */
+    private void populate(HashCode hc, Bucket b, ProcessLauncher launcher) {
+        int target = target(b);
+
+        while (true) {
+            int n = b.starting.get();
+            if (b.size.get() + n >= target) {
+                return;
+            }
 
-                oldest.remove = true;
+            if (available.get() + starting.get() >= maxEntryCount) {
+                return;
             }
 
-            // add a new pool entry
-            Queue<ProcessEntry> q = pool.computeIfAbsent(hc, k -> new LinkedList<>());
+            if (b.starting.compareAndSet(n, n + 1)) {
+                starting.incrementAndGet();
+                executor.submit(() -> start(hc, b, launcher));
+            }
+        }
+    }
+
+    /**
+     * Calculates the number of instances to keep for the specified bucket:
+     * the expected number of requests during the lifetime of an instance,
+     * but no less than {@code minEntryCount} for recently used hashes.
+     */
+    private int target(Bucket b) {
+        int demand = b.demand.size();
+        if (demand == 0) {
+            return 0;
+        }
+
+        long expected = (long) Math.ceil((double) demand * maxEntryAge / Math.max(demandWindow, 1));
+        return (int) Math.min(Math.max(expected, minEntryCount), maxEntryCount);
+    }
+
+    private void start(HashCode hc, Bucket origin, ProcessLauncher launcher) {
+        try {
+            ProcessEntry entry;
             try {
-                q.add(launcher.start());
+                entry = launcher.start();
             } catch (IOException e) {
-                log.error("populate -> error while starting a new process", e);
+                log.error("start -> error while starting a new process", e);
+                return;
+            }
+
+            entry.hash = hc;
+            offer(hc, entry, false);
+        } finally {
+            origin.starting.decrementAndGet();
+            starting.decrementAndGet();
+        }
+    }
+
+    private void offer(HashCode hc, ProcessEntry entry, boolean first) {
+        // the origin bucket is not removed while it has processes starting,
+        // compute() is used to make the addition atomic with the maintenance
+        pool.compute(hc, (k, b) -> {
+            if (b == null) {
+                b = new Bucket();
+            }
+
+            b.add(entry, first);
+            return b;
+        });
+
+        byAge.add(entry);
+
+        if (available.incrementAndGet() > maxEntryCount) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        while (true) {
+            ProcessEntry oldest = null;
+            for (ProcessEntry e : byAge) {
+                if (!e.isClaimed() && (oldest == null || e.timestamp < oldest.timestamp)) {
+                    oldest = e;
+                }
+            }
+
+            if (oldest == null) {
+                return;
+            }
+
+            if (byAge.remove(oldest) && oldest.claim()) {
+                remove(oldest);
+                log.info("evictOldest -> removed {}", oldest.procDir);
+                Utils.kill(oldest.process);
+                return;
             }
         }
     }
 
     private void maintenance() {
-        List<HashCode> queuesToRemove = new ArrayList<>();
-        List<Process> processesToKill = new ArrayList<>();
+        int killed = 0;
 
         long t = System.currentTimeMillis();
 
-        synchronized (pool) {
-            pool.forEach((hc, q) -> {
-                q.removeIf(e -> {
-                    if (e.remove || t - e.timestamp >= maxEntryAge) {
-                        processesToKill.add(e.process);
-                        return true;
-                    }
-                    return false;
-                });
-
-                if (q.isEmpty()) {
-                    queuesToRemove.add(hc);
-                }
-            });
+        // released entries can be anywhere in the queue, check all of them
+        for (ProcessEntry e : byAge) {
+            if (e.isClaimed()) {
+                byAge.remove(e);
+                continue;
+            }
+
+            if (t - e.timestamp < maxEntryAge) {
+                continue;
+            }
+
+            if (byAge.remove(e) && e.claim()) {
+                remove(e);
+                Utils.kill(e.process);
+                killed++;
+            }
+        }
+
+        // forget the old requests, refill the buckets that are still in demand
+        // and remove the rest
+        int removed = 0;
+        for (Map.Entry<HashCode, Bucket> entry : pool.entrySet()) {
+            HashCode hc = entry.getKey();
+            Bucket b = entry.getValue();
+
+            Long oldest;
+            while ((oldest = b.demand.peek()) != null && t - oldest >= demandWindow) {
+                b.demand.poll();
+            }
 
-            for (HashCode hc : queuesToRemove) {
-                pool.remove(hc);
+            ProcessLauncher launcher = b.launcher;
+            if (launcher != null && !b.demand.isEmpty()) {
+                populate(hc, b, launcher);
+            }
+
+            if (pool.computeIfPresent(hc, (k, v) -> v.isEmpty() ? null : v) == null) {
+                removed++;
             }
         }
 
-        log.debug("maintenance -> removed {} queues", queuesToRemove.size());
+        log.debug("maintenance -> removed {} queues", removed);
+        log.debug("maintenance -> killed {} processes", killed);
+        log.info("maintenance -> available: {}, hits: {}, misses: {}", available.get(), hits.get(), misses.get());
+    }
+
+    private void remove(ProcessEntry e) {
+        available.decrementAndGet();
 
-        for (Process p : processesToKill) {
-            Utils.kill(p);
+        Bucket b = pool.get(e.hash);
+        if (b != null) {
+            b.remove(e);
         }
-        log.debug("maintenance -> killed {} processes", processesToKill.size());
     }
 
     public interface ProcessLauncher {
@@ -163,18 +372,127 @@ public class ProcessPool {
         ProcessEntry start() throws IOException;
     }
 
+    private static final class Bucket {
+
+        private final Deque<ProcessEntry> entries = new ConcurrentLinkedDeque<>();
+
+        /**
+         * The number of available (not claimed) entries in the bucket.
+         */
+        private final AtomicInteger size = new AtomicInteger();
+
+        /**
+         * The number of processes being started for the bucket.
+         */
+        private final AtomicInteger starting = new AtomicInteger();
+
+        /**
+         * Timestamps of the recent requests, the oldest first.
+         */
+        private final Queue<Long> demand = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The launcher used by the last request, used to refill the bucket.
+         */
+        private volatile ProcessLauncher launcher;
+
+        /**
+         * Adds an entry. Processes that already executed some jobs are added
+         * to the head of the queue to be reused first.
+         */
+        private void add(ProcessEntry e, boolean first) {
+            if (first) {
+                entries.addFirst(e);
+            } else {
+                entries.addLast(e);
+            }
+            size.incrementAndGet();
+        }
+
+        /**
+         * Claims the first available entry that is either new or owned by
+         * the specified owner. Skips the entries of other owners.
+         */
+        private ProcessEntry poll(String owner) {
+            Iterator<ProcessEntry> it = entries.iterator();
+            while (it.hasNext()) {
+                ProcessEntry e = it.next();
+                if (e.isClaimed()) {
+                    it.remove();
+                    continue;
+                }
+
+                if (e.owner != null && !e.owner.equals(owner)) {
+                    continue;
+                }
+
+                if (e.claim()) {
+                    it.remove();
+                    size.decrementAndGet();
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Removes an entry claimed outside of the bucket.
+         */
+        private void remove(ProcessEntry e) {
+            entries.remove(e);
+            size.decrementAndGet();
+        }
+
+        private boolean isEmpty() {
+            return entries.isEmpty() && starting.get() == 0 && demand.isEmpty();
+        }
+    }
+
     public static final class ProcessEntry {
 
         private final long timestamp;
         private final Process process;
         private final Path procDir;
+        private final InputStream output;
+
+        /**
+         * The number of jobs the process executed before it was taken from the pool.
+         */
+        private final int jobCount;
+
+        /**
+         * The owner of the jobs executed by the process, {@code null} for new processes.
+         */
+        private final String owner;
 
-        private boolean remove = false;
+        /**
+         * A random value which identifies the end of the job in the process' output.
+         * Each entry represents a single job.
+         */
+        private final String jobNonce = UUID.randomUUID().toString();
+
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        private HashCode hash;
 
         public ProcessEntry(Process process, Path procDir) {
             this.timestamp = System.currentTimeMillis();
             this.process = process;
             this.procDir = procDir;
+            this.output = new BufferedInputStream(process.getInputStream());
+            this.jobCount = 0;
+            this.owner = null;
+        }
+
+        private ProcessEntry(ProcessEntry prev, String owner) {
+            // keep the creation time, the age limit applies to the process, not to the entry
+            this.timestamp = prev.timestamp;
+            this.process = prev.process;
+            this.procDir = prev.procDir;
+            this.output = prev.output;
+            this.jobCount = prev.jobCount + 1;
+            this.owner = owner;
+            this.hash = prev.hash;
         }
 
         public Process getProcess() {
@@ -184,5 +502,39 @@ public class ProcessPool {
         public Path getProcDir() {
             return procDir;
         }
+
+        public String getJobNonce() {
+            return jobNonce;
+        }
+
+        /**
+         * The process' output. Shared between all jobs executed by the process.
+         */
+        public InputStream getOutput() {
+            return output;
+        }
+
+        /**
+         * Returns {@code true} if the process was taken from the pool.
+         */
+        public boolean isPooled() {
+            return hash != null;
+        }
+
+        /**
+         * Returns {@code true} if the process is pooled and can execute
+         * more jobs after the current one.
+         */
+        public boolean canReuse(int maxJobsPerProcess) {
+            return isPooled() && jobCount + 1 < maxJobsPerProcess;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private boolean isClaimed() {
+            return claimed.get();
+        }
     }
 }
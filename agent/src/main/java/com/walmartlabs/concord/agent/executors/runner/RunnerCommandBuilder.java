@@ -44,6 +44,7 @@ public class RunnerCommandBuilder {
     private Path dependencies;
     private Path runnerPath;
     private boolean debug;
+    private int maxJobsPerProcess = 1;
 
     public RunnerCommandBuilder() {
         this.objectMapper = new ObjectMapper();
@@ -94,6 +95,11 @@ public class RunnerCommandBuilder {
         return this;
     }
 
+    public RunnerCommandBuilder maxJobsPerProcess(int maxJobsPerProcess) {
+        this.maxJobsPerProcess = maxJobsPerProcess;
+        return this;
+    }
+
     public String[] build() {
         List<String> l = new ArrayList<>();
 
@@ -128,6 +134,10 @@ public class RunnerCommandBuilder {
             l.add("-Ddebug=true");
         }
 
+        if (maxJobsPerProcess > 1) {
+            l.add("-D" + InternalConstants.Agent.MAX_JOBS_PER_PROCESS_KEY + "=" + maxJobsPerProcess);
+        }
+
         // Runner's security manager
         l.add("-Dconcord.securityManager.enabled=" + securityManagerEnabled);
 
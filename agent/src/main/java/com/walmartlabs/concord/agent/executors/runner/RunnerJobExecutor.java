@@ -41,19 +41,26 @@ import com.walmartlabs.concord.policyengine.CheckResult;
 import com.walmartlabs.concord.policyengine.DependencyRule;
 import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.project.InternalConstants;
+import com.walmartlabs.concord.sdk.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -66,6 +73,8 @@ public class RunnerJobExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(RunnerJobExecutor.class);
 
+    private static final long HOT_SET_SAVE_PERIOD = 60000;
+
     private final RunnerJobExecutorConfiguration cfg;
     protected final DependencyManager dependencyManager;
     private final DefaultDependencies defaultDependencies;
@@ -73,6 +82,13 @@ public class RunnerJobExecutor {
     private final ExecutorService executor;
 
     private final ProcessPool pool;
+    private final DependencyResolutionCache dependencyResolutionCache;
+
+    /**
+     * Command lines of the pre-forked processes, used to persist the pool's "hot set".
+     */
+    private final Map<HashCode, String[]> preforkCmds = new ConcurrentHashMap<>();
+    private final AtomicLong hotSetSavedAt = new AtomicLong();
 
     public RunnerJobExecutor(RunnerJobExecutorConfiguration cfg,
                              DependencyManager dependencyManager,
@@ -86,7 +102,8 @@ public class RunnerJobExecutor {
         this.postProcessors = postProcessors;
         this.executor = executor;
 
-        this.pool = new ProcessPool(cfg.maxPreforkAge, cfg.maxPreforkCount);
+        this.pool = new ProcessPool(cfg.maxPreforkAge, cfg.maxPreforkCount, cfg.minPreforkCount, cfg.preforkDemandWindow);
+        this.dependencyResolutionCache = new DependencyResolutionCache(cfg.dependencyResolutionCacheDir, cfg.dependencyResolutionTtl);
     }
 
     public JobInstance exec(JobRequest req, RunnerJob job) throws Exception {
@@ -106,17 +123,20 @@ public class RunnerJobExecutor {
             throw e;
         }
 
+        // cleared when the process is returned into the pool, after that the job can't kill it
+        AtomicBoolean owned = new AtomicBoolean(true);
+
         // continue the execution in a separate thread to make the process cancellable
         Future<?> f = executor.submit(() -> {
             try {
-                exec(job, pe);
+                exec(job, pe, owned);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
         });
 
         // return a handle that can be used to cancel the process or wait for its completion
-        return new JobInstanceImpl(f, pe.getProcess());
+        return new JobInstanceImpl(f, pe.getProcess(), owned);
     }
 
     protected ProcessEntry buildProcessEntry(RunnerJob job, Collection<Path> resolvedDeps) throws Exception {
@@ -133,7 +153,7 @@ public class RunnerJobExecutor {
         return pe;
     }
 
-    private void exec(RunnerJob job, ProcessEntry pe) throws Exception {
+    private void exec(RunnerJob job, ProcessEntry pe, AtomicBoolean owned) throws Exception {
         // the actual OS process
         Process proc = pe.getProcess();
         Path procDir = pe.getProcDir();
@@ -145,14 +165,35 @@ public class RunnerJobExecutor {
         LogStream logStream = new LogStream(job, proc);
         logStream.start();
 
+        // pooled processes can execute multiple jobs and mark the end of each job in the output
+        boolean multiJob = pe.isPooled() && cfg.maxJobsPerProcess > 1;
+
+        // processes are reused only for the jobs of the same project
+        String owner = owner(job);
+        boolean reuse = owner != null && pe.canReuse(cfg.maxJobsPerProcess);
+        boolean succeeded = false;
+
         try {
             // save the process' log
-            processLog.log(proc.getInputStream());
+            Integer jobCode = null;
+            if (multiJob) {
+                // the process may stay alive after the job, read its output up to the end of the job
+                JobOutput out = new JobOutput(pe.getOutput(), pe.getJobNonce());
+                processLog.log(out);
+                jobCode = out.getExitCode();
+
+                // e.g. the job left some threads running or changed the system properties
+                if (out.isFinal()) {
+                    reuse = false;
+                }
+            } else {
+                processLog.log(pe.getOutput());
+            }
 
             // wait for the process to finish
             int code;
             try {
-                code = proc.waitFor();
+                code = jobCode != null ? jobCode : proc.waitFor();
             } catch (Exception e) {
                 handleError(job, proc, e.getMessage());
                 throw new ExecutionException("Error while executing a job: " + e.getMessage());
@@ -166,6 +207,8 @@ public class RunnerJobExecutor {
 
             log.info("exec ['{}'] -> finished with {}", instanceId, code);
             processLog.info("Process finished with: {}", code);
+
+            succeeded = true;
         } finally {
             // wait for the log to finish
             logStream.waitForCompletion();
@@ -180,17 +223,47 @@ public class RunnerJobExecutor {
             } catch (ExecutionException e) {
                 log.warn("exec ['{}'] -> postprocessing error: {}", instanceId, e.getMessage());
                 handleError(job, proc, e.getMessage());
+                succeeded = false;
             }
 
-            try {
-                log.info("exec ['{}'] -> removing the working directory: {}", instanceId, procDir);
-                IOUtils.deleteRecursively(procDir);
-            } catch (IOException e) {
-                log.warn("exec ['{}'] -> can't remove the working directory: {}", instanceId, e.getMessage());
+            // successful processes are returned into the pool, the rest are removed
+            if (!reuse || !succeeded || !recycle(instanceId, pe, owner, owned)) {
+                try {
+                    log.info("exec ['{}'] -> removing the working directory: {}", instanceId, procDir);
+                    IOUtils.deleteRecursively(procDir);
+                } catch (IOException e) {
+                    log.warn("exec ['{}'] -> can't remove the working directory: {}", instanceId, e.getMessage());
+                }
             }
         }
     }
 
+    /**
+     * Cleans up the process' working directory and returns the process into the pool.
+     * Any leftovers from the previous job make the process unusable.
+     */
+    private boolean recycle(UUID instanceId, ProcessEntry pe, String owner, AtomicBoolean owned) {
+        Process proc = pe.getProcess();
+
+        if (!proc.isAlive() || !owned.compareAndSet(true, false)) {
+            return false;
+        }
+
+        Path payloadDir = pe.getProcDir().resolve(InternalConstants.Files.PAYLOAD_DIR_NAME);
+        try (Stream<Path> s = Files.list(payloadDir)) {
+            for (Path p : s.collect(Collectors.toList())) {
+                IOUtils.deleteRecursively(p);
+            }
+        } catch (IOException e) {
+            log.warn("recycle ['{}'] -> can't clean up the working directory, the process won't be reused: {}", instanceId, e.getMessage());
+            Utils.kill(proc);
+            return false;
+        }
+
+        pool.release(pe, owner);
+        return true;
+    }
+
     private void handleError(RunnerJob job, Process proc, String error) {
         job.getLog().error(error);
 
@@ -206,7 +279,13 @@ public class RunnerJobExecutor {
         Collection<URI> uris = Stream.concat(defaultDependencies.getDependencies().stream(), JobDependencies.get(job).stream())
                 .collect(Collectors.toList());
 
-        Collection<DependencyEntity> deps = dependencyManager.resolve(uris);
+        // repeated jobs with the same list of dependencies can skip the resolution
+        Collection<DependencyEntity> deps = dependencyResolutionCache.get(uris);
+        boolean cached = deps != null;
+        if (!cached) {
+            deps = dependencyManager.resolve(uris);
+            dependencyResolutionCache.put(uris, deps);
+        }
 
         // check the resolved dependencies against the current policy
         validateDependencies(job, deps);
@@ -219,7 +298,7 @@ public class RunnerJobExecutor {
         long t2 = System.currentTimeMillis();
 
         if (job.isDebugMode()) {
-            job.getLog().info("Dependency resolution took %dms", (t2 - t1));
+            job.getLog().info("Dependency resolution took %dms%s", (t2 - t1), cached ? " (cached)" : "");
             logDependencies(job, paths);
         } else {
             logDependencies(job, uris);
@@ -278,6 +357,7 @@ public class RunnerJobExecutor {
                 .securityManagerEnabled(cfg.runnerSecurityManagerEnabled)
                 .dependencies(depsFile)
                 .debug(job.isDebugMode())
+                .maxJobsPerProcess(canUsePrefork(job) ? cfg.maxJobsPerProcess : 1)
                 .runnerPath(cfg.runnerPath.toAbsolutePath());
 
         return runner.build();
@@ -289,18 +369,19 @@ public class RunnerJobExecutor {
         HashCode hc = hash(cmd);
 
         // take a "pre-forked" JVM from the pool or start a new one
-        ProcessEntry entry = pool.take(hc, () -> {
-            Path forkDir = IOUtils.createTempDir("prefork");
-            return start(forkDir, cmd);
-        });
+        ProcessEntry entry = pool.take(hc, owner(job), preforkLauncher(cmd));
+
+        preforkCmds.putIfAbsent(hc, cmd);
+        saveHotSet();
 
         // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
         Path src = job.getPayloadDir();
         // the VM's payload directory
         Path dst = entry.getProcDir().resolve(InternalConstants.Files.PAYLOAD_DIR_NAME);
-        // TODO use move
-        IOUtils.copy(src, dst);
+        moveContent(src, dst);
 
+        // must be written before the instance ID, the runner starts the job when the ID appears
+        writeJobNonce(entry.getJobNonce(), dst);
         writeInstanceId(job.getInstanceId(), dst);
 
         long t2 = System.currentTimeMillis();
@@ -312,6 +393,111 @@ public class RunnerJobExecutor {
         return entry;
     }
 
+    /**
+     * Moves the content of the job's payload directory into the VM's payload directory.
+     * The VM's payload directory is the working directory of the already running process,
+     * so it can't be replaced and the top-level entries are moved one by one.
+     * Falls back to copying if the directories are on different file systems.
+     */
+    private static void moveContent(Path src, Path dst) throws IOException {
+        List<Path> items;
+        try (Stream<Path> s = Files.list(src)) {
+            items = s.collect(Collectors.toList());
+        }
+
+        for (Path p : items) {
+            Path target = dst.resolve(p.getFileName().toString());
+
+            if (Files.isDirectory(target, LinkOption.NOFOLLOW_LINKS) && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                moveContent(p, target);
+                continue;
+            }
+
+            try {
+                Files.move(p, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                if (Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                    IOUtils.copy(p, target, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.copy(p, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                }
+            }
+        }
+    }
+
+    private ProcessPool.ProcessLauncher preforkLauncher(String[] cmd) {
+        return () -> {
+            Path forkDir = IOUtils.createTempDir("prefork");
+            return start(forkDir, cmd);
+        };
+    }
+
+    /**
+     * Pre-starts the processes for the dependency sets that were in demand
+     * before the agent's restart.
+     */
+    public void restorePreforks() {
+        Path p = cfg.preforkHotSetFile;
+        if (p == null || !Files.exists(p)) {
+            return;
+        }
+
+        List<HotSetEntry> entries;
+        try {
+            entries = Arrays.asList(new ObjectMapper().readValue(p.toFile(), HotSetEntry[].class));
+        } catch (IOException e) {
+            log.warn("restorePreforks -> can't read {}: {}", p, e.getMessage());
+            return;
+        }
+
+        for (HotSetEntry e : entries) {
+            String[] cmd = e.cmd;
+            if (cmd == null || cmd.length == 0 || e.demand <= 0) {
+                continue;
+            }
+
+            // the last argument is the dependency list file, it must still exist
+            if (!Files.exists(Paths.get(cmd[cmd.length - 1]))) {
+                continue;
+            }
+
+            HashCode hc = hash(cmd);
+            preforkCmds.putIfAbsent(hc, cmd);
+            pool.warmUp(hc, preforkLauncher(cmd), e.demand);
+        }
+
+        log.info("restorePreforks -> restored {} dependency set(s)", preforkCmds.size());
+    }
+
+    private void saveHotSet() {
+        Path p = cfg.preforkHotSetFile;
+        if (p == null) {
+            return;
+        }
+
+        long t = System.currentTimeMillis();
+        long savedAt = hotSetSavedAt.get();
+        if (t - savedAt < HOT_SET_SAVE_PERIOD || !hotSetSavedAt.compareAndSet(savedAt, t)) {
+            return;
+        }
+
+        List<HotSetEntry> entries = new ArrayList<>();
+        pool.getDemand().forEach((hc, demand) -> {
+            String[] cmd = preforkCmds.get(hc);
+            if (cmd != null) {
+                entries.add(new HotSetEntry(cmd, demand));
+            }
+        });
+
+        try {
+            Path tmp = Files.createTempFile(p.toAbsolutePath().getParent(), "hotset", ".json");
+            new ObjectMapper().writeValue(tmp.toFile(), entries);
+            Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("saveHotSet -> can't save {}: {}", p, e.getMessage());
+        }
+    }
+
     protected ProcessEntry startOneTime(RunnerJob job, String[] cmd, Path procDir) throws IOException {
         // the job's payload directory containing all files from the process' state snapshot and/or the repository's data
         Path src = job.getPayloadDir();
@@ -392,6 +578,22 @@ public class RunnerJobExecutor {
         return new ObjectMapper().readValue(policyFile.toFile(), Map.class);
     }
 
+    /**
+     * Returns the ID of the job's project or {@code null} if the process
+     * doesn't belong to any project. Used to share the pooled processes
+     * only between the jobs of the same project.
+     */
+    @SuppressWarnings("unchecked")
+    private static String owner(RunnerJob job) {
+        Object v = job.getCfg().get(Constants.Request.PROJECT_INFO_KEY);
+        if (!(v instanceof Map)) {
+            return null;
+        }
+
+        Object projectId = ((Map<String, Object>) v).get("projectId");
+        return projectId != null ? projectId.toString() : null;
+    }
+
     private static boolean canUsePrefork(RunnerJob job) {
         Path workDir = job.getPayloadDir();
 
@@ -461,6 +663,11 @@ public class RunnerJobExecutor {
         }
     }
 
+    private static void writeJobNonce(String nonce, Path dst) throws IOException {
+        Path p = dst.resolve(InternalConstants.Agent.JOB_NONCE_FILE_NAME);
+        Files.write(p, nonce.getBytes(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SYNC);
+    }
+
     private static void writeInstanceId(UUID instanceId, Path dst) throws IOException {
         Path idPath = dst.resolve(InternalConstants.Files.INSTANCE_ID_FILE_NAME);
         Files.write(idPath, instanceId.toString().getBytes(), StandardOpenOption.CREATE, StandardOpenOption.SYNC);
@@ -476,6 +683,12 @@ public class RunnerJobExecutor {
         private boolean runnerSecurityManagerEnabled;
         private final long maxPreforkAge;
         private final int maxPreforkCount;
+        private final int minPreforkCount;
+        private final long preforkDemandWindow;
+        private final Path preforkHotSetFile;
+        private final int maxJobsPerProcess;
+        private final Path dependencyResolutionCacheDir;
+        private final long dependencyResolutionTtl;
 
         public RunnerJobExecutorConfiguration(String agentId,
                                               String serverApiBaseUrl,
@@ -484,7 +697,13 @@ public class RunnerJobExecutor {
                                               Path runnerPath,
                                               boolean isRunnerSecurityManagerEnabled,
                                               long maxPreforkAge,
-                                              int maxPreforkCount) {
+                                              int maxPreforkCount,
+                                              int minPreforkCount,
+                                              long preforkDemandWindow,
+                                              Path preforkHotSetFile,
+                                              int maxJobsPerProcess,
+                                              Path dependencyResolutionCacheDir,
+                                              long dependencyResolutionTtl) {
 
             this.agentId = agentId;
             this.serverApiBaseUrl = serverApiBaseUrl;
@@ -494,6 +713,12 @@ public class RunnerJobExecutor {
             this.runnerSecurityManagerEnabled = isRunnerSecurityManagerEnabled;
             this.maxPreforkAge = maxPreforkAge;
             this.maxPreforkCount = maxPreforkCount;
+            this.minPreforkCount = minPreforkCount;
+            this.preforkDemandWindow = preforkDemandWindow;
+            this.preforkHotSetFile = preforkHotSetFile;
+            this.maxJobsPerProcess = maxJobsPerProcess;
+            this.dependencyResolutionCacheDir = dependencyResolutionCacheDir;
+            this.dependencyResolutionTtl = dependencyResolutionTtl;
         }
 
         public Path getRunnerPath() {
@@ -517,16 +742,33 @@ public class RunnerJobExecutor {
         }
     }
 
+    private static final class HotSetEntry {
+
+        public String[] cmd;
+        public int demand;
+
+        @SuppressWarnings("unused")
+        public HotSetEntry() {
+        }
+
+        private HotSetEntry(String[] cmd, int demand) {
+            this.cmd = cmd;
+            this.demand = demand;
+        }
+    }
+
     private static class JobInstanceImpl implements JobInstance {
 
         private final Future<?> f;
         private final Process proc;
+        private final AtomicBoolean owned;
 
         private transient boolean cancelled = false;
 
-        private JobInstanceImpl(Future<?> f, Process proc) {
+        private JobInstanceImpl(Future<?> f, Process proc, AtomicBoolean owned) {
             this.f = f;
             this.proc = proc;
+            this.owned = owned;
         }
 
         @Override
@@ -542,7 +784,10 @@ public class RunnerJobExecutor {
 
             cancelled = true;
 
-            Utils.kill(proc);
+            // don't kill the process if it was already returned into the pool
+            if (owned.compareAndSet(true, false)) {
+                Utils.kill(proc);
+            }
         }
 
         @Override
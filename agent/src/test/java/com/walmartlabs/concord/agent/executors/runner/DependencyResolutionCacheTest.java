@@ -0,0 +1,109 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.dependencymanager.DependencyEntity;
+import org.junit.Test;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class DependencyResolutionCacheTest {
+
+    @Test
+    public void testIsCacheable() {
+        assertTrue(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:1.0", "https://example.com/b-1.0.jar")));
+        assertTrue(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:jar:tests:1.0?transitive=false")));
+
+        assertFalse(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:1.0", "mvn://com.example:b:1.0-SNAPSHOT")));
+        assertFalse(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:LATEST")));
+        assertFalse(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:release")));
+        assertFalse(DependencyResolutionCache.isCacheable(uris("mvn://com.example:a:(1.0,2.0)")));
+        assertFalse(DependencyResolutionCache.isCacheable(uris("file:///tmp/a.jar")));
+        assertFalse(DependencyResolutionCache.isCacheable(uris("https://example.com/b-1.0-SNAPSHOT.jar")));
+    }
+
+    @Test
+    public void testIsCacheableResolved() {
+        Path p = Paths.get("a.jar");
+
+        assertTrue(DependencyResolutionCache.isCacheable(new DependencyEntity(p, "com.example", "a", "1.0")));
+        assertTrue(DependencyResolutionCache.isCacheable(new DependencyEntity(p, URI.create("https://example.com/a.jar"))));
+
+        // e.g. a transitive dependency with a version range
+        assertFalse(DependencyResolutionCache.isCacheable(new DependencyEntity(p, "com.example", "a", "1.5", true)));
+        assertFalse(DependencyResolutionCache.isCacheable(new DependencyEntity(p, "com.example", "a", "1.0-SNAPSHOT")));
+        assertFalse(DependencyResolutionCache.isCacheable(new DependencyEntity(p, "com.example", "a", "1.0-20190101.123456-1")));
+    }
+
+    @Test
+    public void testEntryPath() throws Exception {
+        Path baseDir = Files.createTempDirectory("test");
+        DependencyResolutionCache cache = new DependencyResolutionCache(baseDir, 60000);
+
+        Path a = cache.entryPath(uris("mvn://com.example:a:1.0", "mvn://com.example:b:1.0"));
+        Path b = cache.entryPath(uris("mvn://com.example:b:1.0", "mvn://com.example:a:1.0"));
+        Path c = cache.entryPath(uris("mvn://com.example:a:1.0", "mvn://com.example:b:1.1"));
+
+        // the order of URIs doesn't matter
+        assertEquals(a, b);
+        assertNotEquals(a, c);
+        assertEquals(baseDir, a.getParent());
+    }
+
+    @Test
+    public void testPutAndGet() throws Exception {
+        Path baseDir = Files.createTempDirectory("test");
+        Path jar = Files.createTempFile(baseDir, "a", ".jar");
+
+        DependencyResolutionCache cache = new DependencyResolutionCache(baseDir, 60000);
+
+        Collection<URI> stable = uris("mvn://com.example:a:1.0");
+        cache.put(stable, Collections.singletonList(new DependencyEntity(jar, "com.example", "a", "1.0")));
+
+        Collection<DependencyEntity> cached = cache.get(stable);
+        assertNotNull(cached);
+        assertEquals(1, cached.size());
+        assertEquals(jar, cached.iterator().next().getPath());
+
+        // a transitive dependency was resolved from a range, the result is not cached
+        Collection<URI> ranged = uris("mvn://com.example:b:1.0");
+        cache.put(ranged, Arrays.asList(
+                new DependencyEntity(jar, "com.example", "b", "1.0"),
+                new DependencyEntity(jar, "com.example", "c", "2.3", true)));
+
+        assertNull(cache.get(ranged));
+    }
+
+    private static Collection<URI> uris(String... s) {
+        return Arrays.stream(s)
+                .map(URI::create)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,107 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.io.ByteStreams;
+import com.walmartlabs.concord.project.InternalConstants;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobOutputTest {
+
+    private static final String MARKER = InternalConstants.Agent.JOB_DONE_MARKER;
+
+    @Test
+    public void testMultipleJobs() throws Exception {
+        // the runner prints a line separator before each marker
+        InputStream in = stream("a\nb\n" + "\n" + marker("n1") + "0\nc\npartial" + "\n" + marker("n2") + "1\nd\n");
+
+        JobOutput first = new JobOutput(in, "n1");
+        assertEquals("a\nb\n", read(first));
+        assertEquals(Integer.valueOf(0), first.getExitCode());
+
+        JobOutput second = new JobOutput(in, "n2");
+        assertEquals("c\npartial\n", read(second));
+        assertEquals(Integer.valueOf(1), second.getExitCode());
+
+        // the process exited without finishing the job
+        JobOutput third = new JobOutput(in, "n3");
+        assertEquals("d\n", read(third));
+        assertNull(third.getExitCode());
+    }
+
+    @Test
+    public void testFinalJob() throws Exception {
+        InputStream in = stream("a\n" + "\n" + marker("n1") + "0\nb\n" + "\n" + marker("n2") + "0" + InternalConstants.Agent.JOB_DONE_FINAL_SUFFIX + "\n");
+
+        JobOutput first = new JobOutput(in, "n1");
+        assertEquals("a\n", read(first));
+        assertEquals(Integer.valueOf(0), first.getExitCode());
+        assertFalse(first.isFinal());
+
+        // the process can't be reused after the second job
+        JobOutput second = new JobOutput(in, "n2");
+        assertEquals("b\n", read(second));
+        assertEquals(Integer.valueOf(0), second.getExitCode());
+        assertTrue(second.isFinal());
+    }
+
+    @Test
+    public void testForgedMarker() throws Exception {
+        String s = "a\n" +
+                // printed by the job without the nonce
+                MARKER + "0\n" +
+                // with a log prefix
+                "12:00:00.000 [main] INFO - " + marker("n1") + "0\n" +
+                // a different job's nonce
+                marker("n0") + "0\n" +
+                "b\n" +
+                "\n" + marker("n1") + "1\n";
+
+        JobOutput out = new JobOutput(stream(s), "n1");
+        assertEquals("a\n" +
+                MARKER + "0\n" +
+                "12:00:00.000 [main] INFO - " + marker("n1") + "0\n" +
+                marker("n0") + "0\n" +
+                "b\n", read(out));
+        assertEquals(Integer.valueOf(1), out.getExitCode());
+    }
+
+    private static String marker(String nonce) {
+        return MARKER + nonce + ":";
+    }
+
+    private static InputStream stream(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(InputStream in) throws Exception {
+        return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+    }
+}
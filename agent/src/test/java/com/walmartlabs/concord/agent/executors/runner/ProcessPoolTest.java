@@ -0,0 +1,78 @@
+package com.walmartlabs.concord.agent.executors.runner;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.hash.HashCode;
+import com.walmartlabs.concord.agent.executors.runner.ProcessPool.ProcessEntry;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class ProcessPoolTest {
+
+    private static final HashCode HASH = HashCode.fromInt(1);
+
+    @Test
+    public void testReuseForTheSameOwner() throws Exception {
+        AtomicInteger started = new AtomicInteger();
+        ProcessPool.ProcessLauncher launcher = () -> {
+            started.incrementAndGet();
+            return new ProcessEntry(mock(Process.class), Paths.get("test"));
+        };
+
+        ProcessPool pool = new ProcessPool(60000, 10, 0, 60000);
+
+        ProcessEntry first = pool.take(HASH, "a", launcher);
+        assertTrue(first.canReuse(2));
+        pool.release(first, "a");
+
+        // other owners get a new or a pre-forked process
+        ProcessEntry other = pool.take(HASH, "b", launcher);
+        assertNotSame(first.getProcess(), other.getProcess());
+
+        // the same owner gets the released process
+        ProcessEntry second = pool.take(HASH, "a", launcher);
+        assertSame(first.getProcess(), second.getProcess());
+        assertFalse(second.canReuse(2));
+
+        assertTrue(started.get() >= 2);
+    }
+
+    @Test
+    public void testExpiredProcessIsNotReused() throws Exception {
+        ProcessPool.ProcessLauncher launcher = () -> new ProcessEntry(mock(Process.class), Paths.get("test"));
+
+        ProcessPool pool = new ProcessPool(100, 10, 0, 60000);
+
+        ProcessEntry first = pool.take(HASH, "a", launcher);
+
+        // the age of the process is counted from its start, not from the last release
+        Thread.sleep(200);
+        pool.release(first, "a");
+
+        ProcessEntry second = pool.take(HASH, "a", launcher);
+        assertNotSame(first.getProcess(), second.getProcess());
+    }
+}
@@ -20,7 +20,9 @@ package com.walmartlabs.concord.common;
  * =====
  */
 
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.slf4j.Logger;
@@ -189,6 +191,44 @@ public final class IOUtils {
         }
     }
 
+    /**
+     * Unpacks a zip archive while it is being read, without storing it first.
+     * The central directory is not available in this mode, so the file permissions
+     * are taken from the ASI extra field ({@link AsiExtraField}) of each entry.
+     * Files without the field get the default permissions, use
+     * {@link #unzip(InputStream, Path, CopyOption...)} for archives which
+     * store the permissions only in the central directory.
+     */
+    public static void unzipStreaming(InputStream in, Path targetDir, CopyOption... options) throws IOException {
+        try (ZipArchiveInputStream zip = new ZipArchiveInputStream(in)) {
+            ZipArchiveEntry e;
+            while ((e = zip.getNextZipEntry()) != null) {
+                Path p = targetDir.resolve(e.getName());
+
+                if (e.isDirectory()) {
+                    Files.createDirectories(p);
+                    continue;
+                }
+
+                Path parent = p.getParent();
+                if (!Files.exists(parent)) {
+                    Files.createDirectories(parent);
+                }
+
+                // ZipArchiveInputStream#read returns only the current entry's data
+                Files.copy(zip, p, options);
+
+                int unixMode = Posix.DEFAULT_UNIX_MODE;
+                AsiExtraField asi = (AsiExtraField) e.getExtraField(AsiExtraField.HEADER_ID);
+                if (asi != null && asi.getMode() > 0) {
+                    unixMode = asi.getMode();
+                }
+
+                Files.setPosixFilePermissions(p, Posix.posix(unixMode));
+            }
+        }
+    }
+
     public static void copy(InputStream in, OutputStream out) throws IOException {
         byte[] ab = new byte[4096];
         int read;
@@ -20,16 +20,21 @@ package com.walmartlabs.concord.common;
  * =====
  */
 
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
 
-import static org.junit.Assert.assertTrue;
-import static org.junit.Assert.fail;
+import static org.junit.Assert.*;
 
 public class IOUtilsTest {
 
@@ -99,4 +104,37 @@ public class IOUtilsTest {
         } catch (IOException e) {
         }
     }
+
+    @Test
+    public void testUnzipStreaming() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(out)) {
+            ZipArchiveEntry e = new ZipArchiveEntry("a/b/run.sh");
+            AsiExtraField asi = new AsiExtraField();
+            asi.setMode(0755);
+            e.addExtraField(asi);
+            zip.putArchiveEntry(e);
+            zip.write("hello".getBytes());
+            zip.closeArchiveEntry();
+
+            zip.putArchiveEntry(new ZipArchiveEntry("c.txt"));
+            zip.write("world".getBytes());
+            zip.closeArchiveEntry();
+        }
+
+        // ---
+
+        Path dst = Files.createTempDirectory("test");
+        IOUtils.unzipStreaming(new ByteArrayInputStream(out.toByteArray()), dst);
+
+        // ---
+
+        Path a = dst.resolve("a/b/run.sh");
+        assertEquals("hello", new String(Files.readAllBytes(a)));
+        assertTrue(Files.getPosixFilePermissions(a).contains(PosixFilePermission.OWNER_EXECUTE));
+
+        Path c = dst.resolve("c.txt");
+        assertEquals("world", new String(Files.readAllBytes(c)));
+        assertEquals(Posix.posix(Posix.DEFAULT_UNIX_MODE), Files.getPosixFilePermissions(c));
+    }
 }
@@ -29,17 +29,24 @@ public class DependencyEntity {
     private final Path path;
     private final Artifact artifact;
     private final URI directLink;
+    private final boolean dynamic;
 
     public DependencyEntity(Path path, String groupId, String artifactId, String version) {
+        this(path, groupId, artifactId, version, false);
+    }
+
+    public DependencyEntity(Path path, String groupId, String artifactId, String version, boolean dynamic) {
         this.path = path;
         this.artifact = new Artifact(groupId, artifactId, version);
         this.directLink = null;
+        this.dynamic = dynamic;
     }
 
     public DependencyEntity(Path path, URI directLink) {
         this.path = path;
         this.artifact = null;
         this.directLink = directLink;
+        this.dynamic = false;
     }
 
     public Path getPath() {
@@ -54,6 +61,15 @@ public class DependencyEntity {
         return directLink;
     }
 
+    /**
+     * Returns {@code true} if the artifact is a SNAPSHOT or its version was
+     * selected from a range, i.e. resolving the same dependencies again
+     * can give a different result.
+     */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
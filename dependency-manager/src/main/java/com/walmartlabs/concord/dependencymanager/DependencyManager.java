@@ -28,6 +28,8 @@ import org.eclipse.aether.artifact.DefaultArtifact;
 import org.eclipse.aether.collection.CollectRequest;
 import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.graph.DependencyVisitor;
 import org.eclipse.aether.impl.DefaultServiceLocator;
 import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
@@ -39,7 +41,10 @@ import org.eclipse.aether.transfer.AbstractTransferListener;
 import org.eclipse.aether.transfer.TransferEvent;
 import org.eclipse.aether.transport.file.FileTransporterFactory;
 import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.artifact.ArtifactIdUtils;
 import org.eclipse.aether.util.artifact.JavaScopes;
+import org.eclipse.aether.util.graph.visitor.TreeDependencyVisitor;
+import org.eclipse.aether.version.VersionConstraint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,11 +54,15 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 import static org.eclipse.aether.repository.RepositoryPolicy.CHECKSUM_POLICY_IGNORE;
@@ -66,6 +75,9 @@ public class DependencyManager {
     private static final String CFG_FILE_KEY = "CONCORD_MAVEN_CFG";
 
     private static final String FILES_CACHE_DIR = "files";
+    private static final String LOCK_FILE_SUFFIX = ".lock";
+    private static final int LOCK_STRIPES = 64;
+    private static final int MAX_PARALLEL_DOWNLOADS = 8;
     public static final String MAVEN_SCHEME = "mvn";
 
     private static final MavenRepository MAVEN_CENTRAL = new MavenRepository("central", "default", "https://repo.maven.apache.org/maven2/", false);
@@ -74,10 +86,24 @@ public class DependencyManager {
     private final Path cacheDir;
     private final Path localCacheDir;
     private final List<RemoteRepository> repositories;
-    private final Object mutex = new Object();
     private final RepositorySystem maven = newMavenRepositorySystem();
     private final RepositoryCache mavenCache = new DefaultRepositoryCache();
 
+    /**
+     * Striped per-artifact and per-file locks. Different artifacts are resolved concurrently.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    /**
+     * Used to download independent artifacts in parallel. The idle threads are stopped.
+     */
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_PARALLEL_DOWNLOADS, MAX_PARALLEL_DOWNLOADS,
+            60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread t = new Thread(r, "dependency-resolver");
+        t.setDaemon(true);
+        return t;
+    });
+
     public DependencyManager(Path cacheDir) throws IOException {
         this(cacheDir, readCfg());
     }
@@ -91,6 +117,11 @@ public class DependencyManager {
 
         log.info("init -> using repositories: {}", repositories);
         this.repositories = toRemote(repositories);
+
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        executor.allowCoreThreadTimeOut(true);
     }
 
     public Path getLocalCacheDir() {
@@ -108,17 +139,27 @@ public class DependencyManager {
 
         DependencyList deps = categorize(uris);
 
-        Collection<DependencyEntity> result = new HashSet<>();
+        // direct links and non-transitive artifacts are independent from each other
+        // and from the transitive graph, resolve them in parallel
+        List<Future<DependencyEntity>> futures = new ArrayList<>();
+        for (URI item : deps.directLinks) {
+            futures.add(executor.submit(() -> new DependencyEntity(resolveFile(item), item)));
+        }
+        for (MavenDependency dep : deps.mavenSingleDependencies) {
+            futures.add(executor.submit(() -> toDependency(resolveMavenSingle(dep))));
+        }
 
-        result.addAll(resolveDirectLinks(deps.directLinks));
+        Collection<DependencyEntity> result = new HashSet<>();
 
-        result.addAll(resolveMavenTransitiveDependencies(deps.mavenTransitiveDependencies).stream()
-                .map(DependencyManager::toDependency)
-                .collect(Collectors.toList()));
+        try {
+            result.addAll(resolveMavenTransitiveDependencies(deps.mavenTransitiveDependencies));
 
-        result.addAll(resolveMavenSingleDependencies(deps.mavenSingleDependencies).stream()
-                .map(DependencyManager::toDependency)
-                .collect(Collectors.toList()));
+            for (Future<DependencyEntity> f : futures) {
+                result.add(get(f));
+            }
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
 
         return result;
     }
@@ -163,14 +204,6 @@ public class DependencyManager {
         }
     }
 
-    private Collection<DependencyEntity> resolveDirectLinks(Collection<URI> items) throws IOException {
-        Collection<DependencyEntity> paths = new HashSet<>();
-        for (URI item : items) {
-            paths.add(new DependencyEntity(resolveFile(item), item));
-        }
-        return paths;
-    }
-
     private Path resolveFile(URI uri) throws IOException {
         boolean skipCache = shouldSkipCache(uri);
         String name = getLastPart(uri);
@@ -181,11 +214,25 @@ public class DependencyManager {
         }
 
         Path p = baseDir.resolve(name);
+        if (!skipCache && Files.exists(p)) {
+            return p;
+        }
 
-        synchronized (mutex) {
-            if (skipCache || !Files.exists(p)) {
-                log.info("resolveFile -> downloading {}...", uri);
-                download(uri, p);
+        synchronized (lockFor(p)) {
+            // the cache directory can be shared with other processes
+            Path lockFile = baseDir.resolve(name + LOCK_FILE_SUFFIX);
+            try (FileChannel ch = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = ch.lock()) {
+
+                if (skipCache || !Files.exists(p)) {
+                    log.info("resolveFile -> downloading {}...", uri);
+                    download(uri, p);
+                }
+            } finally {
+                // the file is replaced atomically, the lock only prevents duplicate downloads
+                // and the worst case of removing a lock file used by another process is
+                // downloading the same file twice
+                Files.deleteIfExists(lockFile);
             }
 
             return p;
@@ -199,7 +246,7 @@ public class DependencyManager {
         req.setArtifact(dep.artifact);
         req.setRepositories(repositories);
 
-        synchronized (mutex) {
+        synchronized (lockFor(dep.artifact.toString())) {
             try {
                 ArtifactResult r = maven.resolveArtifact(session, req);
                 return r.getArtifact();
@@ -209,15 +256,17 @@ public class DependencyManager {
         }
     }
 
-    private Collection<Artifact> resolveMavenSingleDependencies(Collection<MavenDependency> deps) throws IOException {
-        Collection<Artifact> paths = new HashSet<>();
-        for (MavenDependency dep : deps) {
-            paths.add(resolveMavenSingle(dep));
+    /**
+     * Resolves the transitive graph without any additional locking: the resolver
+     * downloads into the local repository using temporary files and file locks,
+     * which makes it safe to run concurrently in the same and in different processes.
+     * Artifacts with versions selected from a range are marked as dynamic.
+     */
+    private Collection<DependencyEntity> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
+        if (deps.isEmpty()) {
+            return Collections.emptySet();
         }
-        return paths;
-    }
 
-    private Collection<Artifact> resolveMavenTransitiveDependencies(Collection<MavenDependency> deps) throws IOException {
         RepositorySystem system = newMavenRepositorySystem();
         RepositorySystemSession session = newRepositorySystemSession(system);
 
@@ -229,15 +278,51 @@ public class DependencyManager {
 
         DependencyRequest dependencyRequest = new DependencyRequest(req, null);
 
-        synchronized (mutex) {
-            try {
-                return system.resolveDependencies(session, dependencyRequest)
-                        .getArtifactResults().stream()
-                        .map(ArtifactResult::getArtifact)
-                        .collect(Collectors.toSet());
-            } catch (DependencyResolutionException e) {
-                throw new IOException(e);
+        try {
+            DependencyResult result = system.resolveDependencies(session, dependencyRequest);
+
+            Set<String> ranged = new HashSet<>();
+            result.getRoot().accept(new TreeDependencyVisitor(new DependencyVisitor() {
+                @Override
+                public boolean visitEnter(DependencyNode node) {
+                    VersionConstraint c = node.getVersionConstraint();
+                    if (node.getArtifact() != null && c != null && c.getRange() != null) {
+                        ranged.add(ArtifactIdUtils.toId(node.getArtifact()));
+                    }
+                    return true;
+                }
+
+                @Override
+                public boolean visitLeave(DependencyNode node) {
+                    return true;
+                }
+            }));
+
+            return result.getArtifactResults().stream()
+                    .map(ArtifactResult::getArtifact)
+                    .map(a -> toDependency(a, ranged.contains(ArtifactIdUtils.toId(a))))
+                    .collect(Collectors.toSet());
+        } catch (DependencyResolutionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private Object lockFor(Object key) {
+        return locks[(key.hashCode() & 0x7fffffff) % locks.length];
+    }
+
+    private static <T> T get(Future<T> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while resolving dependencies", e);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
             }
+            throw new IOException(t);
         }
     }
 
@@ -270,19 +355,35 @@ public class DependencyManager {
     }
 
     private static DependencyEntity toDependency(Artifact artifact) {
+        return toDependency(artifact, false);
+    }
+
+    private static DependencyEntity toDependency(Artifact artifact, boolean ranged) {
         return new DependencyEntity(artifact.getFile().toPath(),
-                artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+                artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
+                ranged || artifact.isSnapshot());
     }
 
+    /**
+     * Downloads the file into a temporary file first, so the readers never see
+     * a partially written file.
+     */
     private static void download(URI uri, Path dst) throws IOException {
-        try (InputStream in = uri.toURL().openStream();
-             OutputStream out = Files.newOutputStream(dst, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-
-            byte[] ab = new byte[4096];
-            int read;
-            while ((read = in.read(ab)) > 0) {
-                out.write(ab, 0, read);
+        Path tmp = Files.createTempFile(dst.getParent(), dst.getFileName().toString(), ".tmp");
+        try {
+            try (InputStream in = uri.toURL().openStream();
+                 OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+                byte[] ab = new byte[4096];
+                int read;
+                while ((read = in.read(ab)) > 0) {
+                    out.write(ab, 0, read);
+                }
             }
+
+            Files.move(tmp, dst, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
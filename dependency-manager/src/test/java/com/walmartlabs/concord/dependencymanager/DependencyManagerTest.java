@@ -26,15 +26,16 @@ import org.junit.Test;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Collection;
+import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
-@Ignore
 public class DependencyManagerTest {
 
     @Test(timeout = 30000)
+    @Ignore("requires access to Maven Central")
     public void test() throws Exception {
         Path tmpDir = Files.createTempDirectory("test");
         URI uriA = new URI("mvn://com.walmartlabs.concord:concord-project-model:0.44.0?scope=runtime");
@@ -44,4 +45,36 @@ public class DependencyManagerTest {
         Collection<DependencyEntity> paths = m.resolve(Arrays.asList(uriA, uriB));
         assertEquals(10, paths.size());
     }
+
+    @Test(timeout = 30000)
+    public void testParallelFiles() throws Exception {
+        Path srcDir = Files.createTempDirectory("src");
+        Path cacheDir = Files.createTempDirectory("cache");
+
+        // more files than the number of download threads
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Path p = srcDir.resolve("file" + i + ".jar");
+            Files.write(p, ("data" + i).getBytes());
+            uris.add(p.toUri());
+        }
+
+        DependencyManager m = new DependencyManager(cacheDir, Collections.emptyList());
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Collection<DependencyEntity> deps = m.resolve(uris);
+            assertEquals(uris.size(), deps.size());
+
+            for (DependencyEntity d : deps) {
+                String name = d.getPath().getFileName().toString();
+                String expected = "data" + name.substring("file".length(), name.length() - ".jar".length());
+                assertEquals(expected, new String(Files.readAllBytes(d.getPath())));
+            }
+        }
+
+        // no lock files are left in the cache directory
+        try (Stream<Path> s = Files.list(cacheDir.resolve("files"))) {
+            assertTrue(s.noneMatch(p -> p.getFileName().toString().endsWith(".lock")));
+        }
+    }
 }
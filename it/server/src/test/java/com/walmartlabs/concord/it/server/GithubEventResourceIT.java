@@ -181,7 +181,7 @@ public class GithubEventResourceIT extends AbstractServerIT {
 
         GitHubEventsApi gitHubEvents = new GitHubEventsApi(client);
 
-        String result = gitHubEvents.onEvent(event, "push");
+        String result = gitHubEvents.onEvent(event, "push", UUID.randomUUID().toString());
         assertEquals("ok", result);
     }
 
@@ -24,9 +24,7 @@ import com.walmartlabs.concord.dependencymanager.DependencyEntity;
 import org.apache.maven.artifact.versioning.ComparableVersion;
 
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
+import java.util.*;
 
 import static com.walmartlabs.concord.policyengine.Utils.matches;
 
@@ -34,8 +32,14 @@ public class DependencyPolicy {
 
     private final PolicyRules<DependencyRule> rules;
 
+    /**
+     * Parsed "fromVersion" and "toVersion" values of the rules.
+     */
+    private final Map<String, ComparableVersion> versions;
+
     public DependencyPolicy(PolicyRules<DependencyRule> rules) {
         this.rules = rules;
+        this.versions = parseVersions(rules);
     }
 
     public CheckResult<DependencyRule, DependencyEntity> check(Collection<DependencyEntity> dependencies) {
@@ -78,7 +82,7 @@ public class DependencyPolicy {
         }
     }
 
-    private static boolean matchRule(DependencyRule r, DependencyEntity d) {
+    private boolean matchRule(DependencyRule r, DependencyEntity d) {
         if (d.getArtifact() != null) {
             return matchRule(r, d.getArtifact());
         } else {
@@ -86,7 +90,7 @@ public class DependencyPolicy {
         }
     }
 
-    private static boolean matchRule(DependencyRule r, DependencyEntity.Artifact a) {
+    private boolean matchRule(DependencyRule r, DependencyEntity.Artifact a) {
         if (r.getScheme() != null && !matches(r.getScheme(), "mvn")) {
             return false;
         }
@@ -118,10 +122,39 @@ public class DependencyPolicy {
         return false;
     }
 
-    private static int compareVersions(String a, String b) {
-        ComparableVersion v1 = new ComparableVersion(a);
+    private int compareVersions(String a, String b) {
+        ComparableVersion v1 = versions.get(a);
+        if (v1 == null) {
+            v1 = new ComparableVersion(a);
+        }
+
         ComparableVersion v2 = new ComparableVersion(b);
         return v1.compareTo(v2);
     }
 
+    private static Map<String, ComparableVersion> parseVersions(PolicyRules<DependencyRule> rules) {
+        if (rules == null || rules.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, ComparableVersion> result = new HashMap<>();
+
+        List<DependencyRule> l = new ArrayList<>();
+        l.addAll(rules.getAllow());
+        l.addAll(rules.getDeny());
+        l.addAll(rules.getWarn());
+
+        for (DependencyRule r : l) {
+            if (r.getFromVersion() != null) {
+                result.computeIfAbsent(r.getFromVersion(), ComparableVersion::new);
+            }
+
+            if (r.getToVersion() != null) {
+                result.computeIfAbsent(r.getToVersion(), ComparableVersion::new);
+            }
+        }
+
+        return result;
+    }
+
 }
@@ -25,6 +25,8 @@ import org.apache.commons.lang3.builder.ToStringStyle;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -34,6 +36,13 @@ public final class Utils {
 
     private static final Pattern FILE_SIZE_PATTERN = Pattern.compile("([\\d.]+)(.*)");
 
+    /**
+     * Compiled rule patterns. Rules are defined in a limited number of policies,
+     * the cache is reset if it grows too large anyway.
+     */
+    private static final int MAX_CACHED_PATTERNS = 10000;
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
     public static boolean matchAny(List<String> patterns, String value) {
         for (String p : patterns) {
             if (matches(p, value)) {
@@ -45,7 +54,20 @@ public final class Utils {
     }
 
     public static boolean matches(String pattern, String value) {
-        return Pattern.compile(pattern, Pattern.CASE_INSENSITIVE).matcher(value).matches();
+        return compile(pattern).matcher(value).matches();
+    }
+
+    private static Pattern compile(String pattern) {
+        Pattern p = patterns.get(pattern);
+        if (p != null) {
+            return p;
+        }
+
+        if (patterns.size() >= MAX_CACHED_PATTERNS) {
+            patterns.clear();
+        }
+
+        return patterns.computeIfAbsent(pattern, k -> Pattern.compile(k, Pattern.CASE_INSENSITIVE));
     }
 
     public static Long parseFileSize(String v) {
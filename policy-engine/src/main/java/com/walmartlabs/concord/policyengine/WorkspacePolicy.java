@@ -32,6 +32,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class WorkspacePolicy {
 
@@ -48,6 +50,17 @@ public class WorkspacePolicy {
 
         List<CheckResult.Item<WorkspaceRule, Path>> deny = new ArrayList<>();
 
+        // compiled here and not in the constructor: the policy engine is created
+        // for other checks too (e.g. on every dequeue), an invalid pattern
+        // must fail only the workspace check
+        List<Pattern> ignoredFiles;
+        try {
+            ignoredFiles = compile(rule.getIgnoredFiles());
+        } catch (PatternSyntaxException e) {
+            deny.add(new CheckResult.Item<>(rule, p, "Invalid ignoredFiles pattern: " + e.getPattern()));
+            return new CheckResult<>(Collections.emptyList(), deny);
+        }
+
         if (!Files.exists(p)) {
             deny.add(new CheckResult.Item<>(rule, p, "File not found: " + p));
         } else if (!Files.isDirectory(p)) {
@@ -58,7 +71,7 @@ public class WorkspacePolicy {
 
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    if (isIgnored(file, rule.getIgnoredFiles())) {
+                    if (isIgnored(file, ignoredFiles)) {
                         return FileVisitResult.CONTINUE;
                     }
 
@@ -76,17 +89,26 @@ public class WorkspacePolicy {
         return new CheckResult<>(Collections.emptyList(), deny);
     }
 
-    private static boolean isIgnored(Path p, Set<String> patterns) {
-        if (patterns == null) {
-            return false;
-        }
-
-        for (String s : patterns) {
-            if (p.toString().matches(s)) {
+    private static boolean isIgnored(Path p, List<Pattern> patterns) {
+        String s = p.toString();
+        for (Pattern i : patterns) {
+            if (i.matcher(s).matches()) {
                 return true;
             }
         }
 
         return false;
     }
+
+    private static List<Pattern> compile(Set<String> patterns) {
+        if (patterns == null) {
+            return Collections.emptyList();
+        }
+
+        List<Pattern> result = new ArrayList<>(patterns.size());
+        for (String s : patterns) {
+            result.add(Pattern.compile(s));
+        }
+        return result;
+    }
 }
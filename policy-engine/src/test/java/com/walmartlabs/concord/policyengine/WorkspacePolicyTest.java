@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -46,6 +47,16 @@ public class WorkspacePolicyTest {
         assertAllow(tenBytes, p);
     }
 
+    @Test
+    public void testInvalidIgnoredFiles() throws Exception {
+        Path p = Files.createTempDirectory("test2");
+
+        // must not throw, only the check itself is denied
+        WorkspacePolicy policy = new WorkspacePolicy(new WorkspaceRule("invalid", 10L, Collections.singleton("*.bin")));
+
+        assertDeny(policy, p);
+    }
+
     private static void assertAllow(WorkspacePolicy policy, Path p) throws IOException {
         CheckResult<WorkspaceRule, Path> result = policy.check(p);
         assertTrue(result.getDeny().isEmpty());
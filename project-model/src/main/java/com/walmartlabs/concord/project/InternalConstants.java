@@ -138,6 +138,34 @@ public final class InternalConstants extends Constants {
          */
         public static final String JVM_ARGS_KEY = "jvmArgs";
 
+        /**
+         * System property with the maximum number of jobs a single runner JVM can execute.
+         */
+        public static final String MAX_JOBS_PER_PROCESS_KEY = "concord.maxJobsPerProcess";
+
+        /**
+         * File which contains a random value generated by the agent for each job
+         * executed by a reused runner JVM. The runner removes the file before
+         * starting the job and uses the value in the {@link #JOB_DONE_MARKER} line,
+         * so the job's own output can't end the job.
+         */
+        public static final String JOB_NONCE_FILE_NAME = "_jobNonce";
+
+        /**
+         * Prefix of the line printed by a runner JVM after each job when the JVM is reused.
+         * Followed by the job's nonce (see {@link #JOB_NONCE_FILE_NAME}), a colon,
+         * the job's exit code and, if the JVM exits after the job,
+         * by {@link #JOB_DONE_FINAL_SUFFIX}. The marker is always printed
+         * at the start of a line.
+         */
+        public static final String JOB_DONE_MARKER = "__CONCORD_JOB_DONE__:";
+
+        /**
+         * Suffix of the {@link #JOB_DONE_MARKER} line printed when the runner JVM
+         * can't be reused, e.g. the job left some threads running.
+         */
+        public static final String JOB_DONE_FINAL_SUFFIX = ":final";
+
         private Agent() {
         }
     }
@@ -185,6 +213,19 @@ public final class InternalConstants extends Constants {
         public static final String SECRET_TYPE = "X-Concord-SecretType";
 
         public static final String AGENT = "X-Concord-Agent";
+
+        /**
+         * Websocket upgrade response header. Set to {@code true} by the servers
+         * which accept batch process requests.
+         */
+        public static final String BATCH_REQUESTS = "X-Concord-BatchRequests";
+
+        /**
+         * Process state archive response header. Set to {@code asi} when the unix mode
+         * of each entry is stored in the ASI extra field, i.e. the archive can be
+         * unpacked while it is being downloaded.
+         */
+        public static final String STATE_UNIX_MODE = "X-Concord-StateUnixMode";
     }
 
     public static final class Policy {
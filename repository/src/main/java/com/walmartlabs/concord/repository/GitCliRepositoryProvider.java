@@ -73,6 +73,50 @@ public class GitCliRepositoryProvider implements RepositoryProvider {
         }
     }
 
+    @Override
+    public void fetchCommit(String uri, String commitId, Secret secret, Path dst) {
+        try {
+            client.fetchCommit(uri, commitId, secret, dst);
+        } catch (RepositoryException e) {
+            log.warn("fetchCommit ['{}', '{}', '{}'] -> error: {}, retrying...", uri, commitId, dst, e.getMessage());
+
+            try {
+                IOUtils.deleteRecursively(dst);
+            } catch (IOException ee) {
+                log.warn("fetchCommit ['{}', '{}', '{}'] -> cleanup error: {}", uri, commitId, dst, e.getMessage());
+            }
+
+            // retry
+            client.fetchCommit(uri, commitId, secret, dst);
+        }
+    }
+
+    @Override
+    public boolean canExportCommit(Path repo, String commitId) {
+        // submodules are checked out only in the repository's own working tree
+        return !client.hasGitModules(repo, commitId);
+    }
+
+    @Override
+    public Snapshot exportCommit(Path repo, String commitId, String path, Path dst) throws IOException {
+        Path tmpDir = IOUtils.createTempDir("worktree");
+        Path worktree = tmpDir.resolve("tree");
+        try {
+            client.addWorktree(repo, commitId, worktree);
+
+            Path src = RepositoryProviders.repoPath(worktree, path);
+            return export(src, dst);
+        } finally {
+            IOUtils.deleteRecursively(tmpDir);
+
+            try {
+                client.pruneWorktrees(repo);
+            } catch (RepositoryException e) {
+                log.warn("exportCommit ['{}', '{}'] -> can't prune the worktrees: {}", repo, commitId, e.getMessage());
+            }
+        }
+    }
+
     @Override
     public Snapshot export(Path src, Path dst) throws IOException {
         LastModifiedSnapshot snapshot = new LastModifiedSnapshot(dst);
@@ -84,13 +84,16 @@ public class GitClient {
         boolean shallow = commitId == null && cfg.shallowClone();
 
         if (!hasGitRepo(dest)) {
+            // the clone fetches the same refs, no need to fetch again
             cloneCommand(uri, secret, shallow, dest);
-        }
-
-        launchCommand(dest, "config", "remote.origin.url", uri);
+        } else {
+            launchCommand(dest, "config", "remote.origin.url", uri);
 
-        List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
-        fetchCommand(uri, refspecs, secret, shallow, dest);
+            if (commitId == null || !hasCommit(commitId, dest)) {
+                List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+                fetchCommand(uri, refspecs, secret, shallow, dest);
+            }
+        }
 
         ObjectId rev;
         if (commitId != null) {
@@ -110,6 +113,49 @@ public class GitClient {
         }
     }
 
+    /**
+     * Fetches the upstream changes without updating the working tree.
+     * Fails if the specified commit can't be found after the fetch.
+     */
+    public void fetchCommit(String uri, String commitId, Secret secret, Path dest) {
+        if (!hasGitRepo(dest)) {
+            cloneCommand(uri, secret, false, dest);
+        } else if (hasCommit(commitId, dest)) {
+            log.info("Commit '{}' is already present, skipping the fetch", commitId);
+            return;
+        } else {
+            launchCommand(dest, "config", "remote.origin.url", uri);
+
+            List<RefSpec> refspecs = Collections.singletonList(new RefSpec("+refs/heads/*:refs/remotes/origin/*"));
+            fetchCommand(uri, refspecs, secret, false, dest);
+        }
+
+        getCommitRevision(commitId, dest);
+    }
+
+    /**
+     * Returns {@code true} if the specified commit contains a .gitmodules file.
+     */
+    public boolean hasGitModules(Path repo, String commitId) {
+        String result = launchCommand(repo, "ls-tree", "--name-only", commitId, ".gitmodules");
+        return !result.trim().isEmpty();
+    }
+
+    /**
+     * Checks out the specified commit into a new working tree. The repository's
+     * own working tree and index are not modified.
+     */
+    public void addWorktree(Path repo, String commitId, Path dest) {
+        launchCommand(repo, "worktree", "add", "--detach", dest.toAbsolutePath().toString(), commitId);
+    }
+
+    /**
+     * Removes the information about the deleted working trees.
+     */
+    public void pruneWorktrees(Path repo) {
+        launchCommand(repo, "worktree", "prune");
+    }
+
     private void fetchCommand(String url, List<RefSpec> refspecs, Secret secret, boolean shallow, Path dest) {
         log.info("Fetching upstream changes from '{}'", url);
 
@@ -208,6 +254,18 @@ public class GitClient {
         return ObjectId.fromString(line);
     }
 
+    /**
+     * Returns {@code true} if the specified commit is present in the local repository.
+     * Only full commit IDs are checked: other revisions (e.g. tags) might be moved upstream.
+     */
+    private boolean hasCommit(String commitId, Path dest) {
+        if (!ObjectId.isId(commitId)) {
+            return false;
+        }
+
+        return getHeadRevision(commitId, dest) != null;
+    }
+
     private ObjectId getBranchRevision(String branchSpec, Path dest) {
 
         // if it doesn't contain '/' then it could be an unqualified branch
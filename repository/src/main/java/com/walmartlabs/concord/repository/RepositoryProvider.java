@@ -35,5 +35,29 @@ public interface RepositoryProvider {
 
     Snapshot export(Path src, Path dst) throws IOException;
 
+    /**
+     * Fetches the specified commit into the local repository.
+     * Implementations that support {@link #exportCommit(Path, String, String, Path)}
+     * shouldn't modify the repository's working tree.
+     */
+    default void fetchCommit(String uri, String commitId, Secret secret, Path dst) {
+        fetch(uri, null, commitId, secret, dst);
+    }
+
+    /**
+     * Returns {@code true} if the specified commit of a fetched repository can be exported
+     * using {@link #exportCommit(Path, String, String, Path)}.
+     */
+    default boolean canExportCommit(Path repo, String commitId) {
+        return false;
+    }
+
+    /**
+     * Exports the specified commit of a fetched repository without using the repository's
+     * working tree. Called while holding the repository's shared lock, i.e. concurrently
+     * with other exports of the same repository, but not with fetches.
+     */
+    Snapshot exportCommit(Path repo, String commitId, String path, Path dst) throws IOException;
+
     RepositoryInfo getInfo(Path path);
 }
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.repository;
 import com.google.common.util.concurrent.Striped;
 import com.walmartlabs.concord.sdk.Secret;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.nio.file.Files;
@@ -32,10 +33,11 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
 
 public class RepositoryProviders {
 
-    private final Striped<Lock> locks = Striped.lock(32);
+    private final Striped<ReadWriteLock> locks = Striped.readWriteLock(32);
 
     private final List<RepositoryProvider> providers;
     private final long lockTimeout;
@@ -57,8 +59,43 @@ public class RepositoryProviders {
         return new Repository(provider.getBranchOrDefault(branch), localPath, repoPath, provider);
     }
 
+    /**
+     * Exports the specified commit into {@code dst}. The fetch is done while holding
+     * the repository's exclusive lock, the export only takes the shared lock, so
+     * exports of the same repository can run concurrently.
+     */
+    public Snapshot export(String uri, String commitId, String path, Secret secret, Path cacheDir, Path dst) {
+        Path localPath = cacheDir.resolve(encodeUrl(uri));
+
+        RepositoryProvider provider = getProvider(uri);
+
+        withLock(uri, () -> {
+            provider.fetchCommit(uri, commitId, secret, localPath);
+            return null;
+        });
+
+        if (!provider.canExportCommit(localPath, commitId)) {
+            // e.g. repositories with submodules, use the repository's own working tree
+            return withLock(uri, () -> {
+                Repository repo = fetch(uri, null, commitId, path, secret, cacheDir);
+                return repo.export(dst);
+            });
+        }
+
+        return withLock(locks.get(uri).readLock(), uri, () -> {
+            try {
+                return provider.exportCommit(localPath, commitId, path, dst);
+            } catch (IOException e) {
+                throw new RepositoryException("Error while exporting the repository: " + e.getMessage(), e);
+            }
+        });
+    }
+
     public <T> T withLock(String repoUrl, Callable<T> f) {
-        Lock l = locks.get(repoUrl);
+        return withLock(locks.get(repoUrl).writeLock(), repoUrl, f);
+    }
+
+    private <T> T withLock(Lock l, String repoUrl, Callable<T> f) {
         try {
             if (!l.tryLock(lockTimeout, TimeUnit.MILLISECONDS)) {
                 throw new IllegalStateException("Timeout waiting for the repository lock. Repository url: " + repoUrl);
@@ -100,7 +137,7 @@ public class RepositoryProviders {
         return s;
     }
 
-    private static Path repoPath(Path baseDir, String p) {
+    static Path repoPath(Path baseDir, String p) {
         String normalized = normalizePath(p);
         if (normalized == null) {
             return baseDir;
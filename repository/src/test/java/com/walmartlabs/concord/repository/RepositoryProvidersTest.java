@@ -0,0 +1,153 @@
+package com.walmartlabs.concord.repository;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.common.IOUtils;
+import com.walmartlabs.concord.common.TemporaryPath;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class RepositoryProvidersTest {
+
+    private TemporaryPath origin;
+    private TemporaryPath cacheDir;
+
+    private RepositoryProviders providers;
+
+    private String uri;
+    private String firstCommit;
+    private String secondCommit;
+
+    @Before
+    public void init() throws Exception {
+        origin = IOUtils.tempDir("origin");
+        cacheDir = IOUtils.tempDir("cache");
+
+        try (Git git = Git.init().setDirectory(origin.path().toFile()).call()) {
+            firstCommit = commit(git, "first").getName();
+            secondCommit = commit(git, "second").getName();
+        }
+
+        uri = origin.path().toUri().toString();
+
+        GitClientConfiguration cfg = GitClientConfiguration.builder()
+                .shallowClone(false)
+                .httpLowSpeedLimit(0)
+                .httpLowSpeedTime(600)
+                .sshTimeout(600)
+                .sshTimeoutRetryCount(1)
+                .build();
+
+        providers = new RepositoryProviders(Collections.singletonList(new GitCliRepositoryProvider(cfg)), 60000);
+    }
+
+    @After
+    public void cleanup() throws Exception {
+        origin.close();
+        cacheDir.close();
+    }
+
+    @Test
+    public void testExportCommit() throws Exception {
+        try (TemporaryPath a = IOUtils.tempDir("export");
+             TemporaryPath b = IOUtils.tempDir("export")) {
+
+            providers.export(uri, firstCommit, null, null, cacheDir.path(), a.path());
+            providers.export(uri, secondCommit, "/", null, cacheDir.path(), b.path());
+
+            assertContent("first", a.path());
+            assertContent("second", b.path());
+            assertFalse(Files.exists(a.path().resolve(".git")));
+        }
+
+        // the worktrees are removed after the export
+        Path worktrees = cacheDir.path().resolve(URLEncoder.encode(uri, "UTF-8"))
+                .resolve(".git").resolve("worktrees");
+
+        if (Files.exists(worktrees)) {
+            try (Stream<Path> s = Files.list(worktrees)) {
+                assertEquals(0, s.count());
+            }
+        }
+    }
+
+    @Test(timeout = 120000)
+    public void testConcurrentFetchAndExport() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String commitId = i % 2 == 0 ? firstCommit : secondCommit;
+                String expected = i % 2 == 0 ? "first" : "second";
+
+                futures.add(executor.submit(() -> {
+                    try (TemporaryPath dst = IOUtils.tempDir("export")) {
+                        providers.export(uri, commitId, null, null, cacheDir.path(), dst.path());
+                        assertContent(expected, dst.path());
+                    }
+                    return null;
+                }));
+
+                if (i % 5 == 0) {
+                    // checks out the shared working tree, exports must not be affected
+                    futures.add(executor.submit(() -> providers.withLock(uri, () ->
+                            providers.fetch(uri, "master", commitId, null, null, cacheDir.path()))));
+                }
+            }
+
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static RevCommit commit(Git git, String content) throws Exception {
+        Files.write(git.getRepository().getWorkTree().toPath().resolve("test"), content.getBytes());
+        git.add().addFilepattern("test").call();
+        return git.commit()
+                .setMessage(content)
+                .setAuthor("test", "test@example.com")
+                .setCommitter("test", "test@example.com")
+                .call();
+    }
+
+    private static void assertContent(String expected, Path dir) throws Exception {
+        assertEquals(expected, new String(Files.readAllBytes(dir.resolve("test"))).trim());
+    }
+}
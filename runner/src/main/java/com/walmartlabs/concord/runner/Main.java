@@ -72,6 +72,11 @@ public class Main {
     private final ApiClientFactory apiClientFactory;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    /**
+     * The value used in the job done marker, see {@link InternalConstants.Agent#JOB_NONCE_FILE_NAME}.
+     */
+    private String jobNonce;
+
     @Inject
     public Main(EngineFactory engineFactory, ProcessHeartbeat heartbeat, ApiClientFactory apiClientFactory) {
         this.engineFactory = engineFactory;
@@ -97,6 +102,9 @@ public class Main {
 
         UUID instanceId = UUID.fromString(new String(Files.readAllBytes(idPath)));
 
+        // read and remove the nonce before the job starts, so the job can't use it
+        jobNonce = readJobNonce(baseDir);
+
         Map<String, Object> policy = readPolicyRules(baseDir);
         if (policy.isEmpty()) {
             PolicyEngineHolder.INSTANCE.setEngine(null);
@@ -410,6 +418,8 @@ public class Main {
 
         boolean debug = Boolean.parseBoolean(System.getProperty("debug"));
 
+        int maxJobs = Integer.getInteger(InternalConstants.Agent.MAX_JOBS_PER_PROCESS_KEY, 1);
+
         try {
             long t1 = System.currentTimeMillis();
 
@@ -429,7 +439,11 @@ public class Main {
                 log.info("Runtime loaded in {}ms", (t2 - t1));
             }
 
-            main.run(baseDir, debug);
+            if (maxJobs > 1) {
+                runJobs(main, baseDir, debug, maxJobs, depsClassLoader);
+            } else {
+                main.run(baseDir, debug);
+            }
 
             // force exit
             System.exit(0);
@@ -442,6 +456,101 @@ public class Main {
         }
     }
 
+    /**
+     * Executes up to {@code maxJobs} jobs one after another using the same class loader.
+     * After each job the agent cleans up the working directory and moves the next
+     * job's payload in.
+     * <p>
+     * Each job gets a new injector, i.e. new singletons and task instances.
+     * The JVM exits after the first failed job or if the job left any non-daemon
+     * threads running or changed the system properties.
+     */
+    private static void runJobs(Main main, Path baseDir, boolean debug, int maxJobs, ClassLoader depsClassLoader) {
+        // the state of the JVM before the first job
+        Set<Thread> threads = new HashSet<>(Thread.getAllStackTraces().keySet());
+        Properties props = (Properties) System.getProperties().clone();
+
+        for (int i = 0; i < maxJobs; i++) {
+            int code = 0;
+            try {
+                main.run(baseDir, debug);
+            } catch (Throwable e) { // catch both errors and exceptions
+                Throwable t = unroll(e);
+                log.error("main -> unhandled exception", t);
+                saveLastError(baseDir, t);
+                code = 1;
+            } finally {
+                main.resetJobState(baseDir, depsClassLoader);
+            }
+
+            String nonce = main.jobNonce;
+
+            boolean last = code != 0 || i == maxJobs - 1;
+            if (!last) {
+                String leftovers = findLeftovers(threads, props);
+                if (leftovers != null) {
+                    log.warn("runJobs -> the runtime can't be reused: {}", leftovers);
+                    last = true;
+                } else {
+                    main = createInjector(depsClassLoader).getInstance(Main.class);
+                }
+            }
+
+            // let the agent know that the job is finished and if the JVM can be reused
+            // the marker must start on a new line, the agent skips the extra line separator
+            System.out.print("\n" + InternalConstants.Agent.JOB_DONE_MARKER + nonce + ":" + code + (last ? InternalConstants.Agent.JOB_DONE_FINAL_SUFFIX : "") + "\n");
+            System.out.flush();
+
+            if (last) {
+                System.exit(code);
+            }
+        }
+    }
+
+    /**
+     * Returns the description of the job's leftovers that can affect the next
+     * job or {@code null} if there are none.
+     */
+    private static String findLeftovers(Set<Thread> threads, Properties props) {
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && !t.isDaemon() && !threads.contains(t)) {
+                return "thread '" + t.getName() + "' is still running";
+            }
+        }
+
+        if (!props.equals(System.getProperties())) {
+            return "the system properties were changed";
+        }
+
+        return null;
+    }
+
+    private void resetJobState(Path baseDir, ClassLoader depsClassLoader) {
+        heartbeat.stop();
+
+        PolicyEngineHolder.INSTANCE.setEngine(null);
+        Thread.currentThread().setContextClassLoader(depsClassLoader);
+
+        // the next job starts when the agent writes a new instance ID
+        try {
+            Files.deleteIfExists(baseDir.resolve(InternalConstants.Files.INSTANCE_ID_FILE_NAME));
+        } catch (IOException e) {
+            log.error("Can't remove the instance ID file: {}", e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static String readJobNonce(Path baseDir) throws IOException {
+        Path p = baseDir.resolve(InternalConstants.Agent.JOB_NONCE_FILE_NAME);
+        if (!Files.exists(p)) {
+            return null;
+        }
+
+        String s = new String(Files.readAllBytes(p)).trim();
+        Files.delete(p);
+        return s;
+    }
+
     private static String getSessionToken(Path baseDir) throws ExecutionException {
         Path p = baseDir.resolve(InternalConstants.Files.CONCORD_SYSTEM_DIR_NAME)
                 .resolve(InternalConstants.Files.SESSION_TOKEN_FILE_NAME);
@@ -75,4 +75,20 @@ public class ProcessHeartbeat {
 
         worker.start();
     }
+
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+
+        worker.interrupt();
+
+        try {
+            worker.join(HEARTBEAT_INTERVAL);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        worker = null;
+    }
 }
@@ -30,6 +30,10 @@ public abstract class PeriodicTask implements BackgroundTask {
     private final long interval;
     private final long errorDelay;
 
+    private final Object wakeUpMonitor = new Object();
+    private boolean wakeUpRequested;
+    private long scheduledWakeUp = Long.MAX_VALUE;
+
     private Thread worker;
 
     public PeriodicTask(long interval, long errorDelay) {
@@ -62,7 +66,7 @@ public abstract class PeriodicTask implements BackgroundTask {
         while (!Thread.currentThread().isInterrupted()) {
             try {
                 performTask();
-                sleep(interval);
+                await(interval);
             } catch (Exception e) {
                 log.warn("run -> task {} error: {}. Will retry in {}ms...", taskName(), e.getMessage(), errorDelay, e);
                 sleep(errorDelay);
@@ -76,6 +80,49 @@ public abstract class PeriodicTask implements BackgroundTask {
 
     protected abstract void performTask() throws Exception;
 
+    /**
+     * Runs the task as soon as possible, without waiting for the current
+     * interval to pass. Multiple calls are coalesced.
+     */
+    protected void wakeUp() {
+        synchronized (wakeUpMonitor) {
+            wakeUpRequested = true;
+            wakeUpMonitor.notifyAll();
+        }
+    }
+
+    /**
+     * Runs the task at the specified time (epoch millis) if it comes before
+     * the end of the current interval. Only the earliest requested time is kept.
+     */
+    protected void wakeUpAt(long timestamp) {
+        synchronized (wakeUpMonitor) {
+            if (timestamp < scheduledWakeUp) {
+                scheduledWakeUp = timestamp;
+                wakeUpMonitor.notifyAll();
+            }
+        }
+    }
+
+    private void await(long ms) {
+        long deadline = System.currentTimeMillis() + ms;
+        synchronized (wakeUpMonitor) {
+            try {
+                long left = Math.min(deadline, scheduledWakeUp) - System.currentTimeMillis();
+                while (!wakeUpRequested && left > 0) {
+                    wakeUpMonitor.wait(left);
+                    left = Math.min(deadline, scheduledWakeUp) - System.currentTimeMillis();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            wakeUpRequested = false;
+            if (scheduledWakeUp <= System.currentTimeMillis()) {
+                scheduledWakeUp = Long.MAX_VALUE;
+            }
+        }
+    }
+
     private static void sleep(long ms) {
         try {
             Thread.sleep(ms);
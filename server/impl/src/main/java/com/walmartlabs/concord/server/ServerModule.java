@@ -24,8 +24,12 @@ import com.google.inject.AbstractModule;
 import com.google.inject.multibindings.Multibinder;
 import com.walmartlabs.concord.db.DatabaseModule;
 import com.walmartlabs.concord.server.agent.AgentCommandWebSocketHandler;
+import com.walmartlabs.concord.server.events.GithubEventDispatcher;
 import com.walmartlabs.concord.server.metrics.MetricModule;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsBuffer;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueNotificationListener;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueWebSocketHandler;
+import com.walmartlabs.concord.server.process.queue.ProcessWaitResolver;
 import com.walmartlabs.concord.server.task.TaskScheduler;
 
 public class ServerModule extends AbstractModule {
@@ -38,6 +42,10 @@ public class ServerModule extends AbstractModule {
         Multibinder<BackgroundTask> tasks = Multibinder.newSetBinder(binder(), BackgroundTask.class);
         tasks.addBinding().to(AgentCommandWebSocketHandler.class);
         tasks.addBinding().to(ProcessQueueWebSocketHandler.class);
+        tasks.addBinding().to(ProcessQueueNotificationListener.class);
+        tasks.addBinding().to(ProcessLogsBuffer.class);
         tasks.addBinding().to(TaskScheduler.class);
+        tasks.addBinding().to(GithubEventDispatcher.class);
+        tasks.addBinding().to(ProcessWaitResolver.class);
     }
 }
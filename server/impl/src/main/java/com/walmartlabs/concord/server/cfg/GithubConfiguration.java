@@ -45,6 +45,30 @@ public class GithubConfiguration {
     @Config("github.defaultFilter")
     private Map<String, Object> defaultFilter;
 
+    @Inject
+    @Config("github.eventQueue.workers")
+    private int eventQueueWorkers;
+
+    @Inject
+    @Config("github.eventQueue.pollInterval")
+    private long eventQueuePollInterval;
+
+    @Inject
+    @Config("github.eventQueue.maxStalledAge")
+    private String eventQueueMaxStalledAge;
+
+    @Inject
+    @Config("github.eventQueue.maxEventAge")
+    private String eventQueueMaxEventAge;
+
+    @Inject
+    @Config("github.eventQueue.maxAttempts")
+    private int eventQueueMaxAttempts;
+
+    @Inject
+    @Config("github.eventQueue.retryDelay")
+    private String eventQueueRetryDelay;
+
     public String getSecret() {
         return secret;
     }
@@ -56,4 +80,28 @@ public class GithubConfiguration {
     public Map<String, Object> getDefaultFilter() {
         return defaultFilter;
     }
+
+    public int getEventQueueWorkers() {
+        return eventQueueWorkers;
+    }
+
+    public long getEventQueuePollInterval() {
+        return eventQueuePollInterval;
+    }
+
+    public String getEventQueueMaxStalledAge() {
+        return eventQueueMaxStalledAge;
+    }
+
+    public String getEventQueueMaxEventAge() {
+        return eventQueueMaxEventAge;
+    }
+
+    public int getEventQueueMaxAttempts() {
+        return eventQueueMaxAttempts;
+    }
+
+    public String getEventQueueRetryDelay() {
+        return eventQueueRetryDelay;
+    }
 }
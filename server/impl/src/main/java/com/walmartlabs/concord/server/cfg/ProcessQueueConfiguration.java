@@ -39,6 +39,10 @@ public class ProcessQueueConfiguration implements Serializable {
     @Config("queue.maxRateTimeout")
     private int maxRateTimeout;
 
+    @Inject
+    @Config("queue.dispatcherPollDelay")
+    private long dispatcherPollDelay;
+
     public int getRateLimit() {
         return rateLimit;
     }
@@ -46,4 +50,8 @@ public class ProcessQueueConfiguration implements Serializable {
     public int getMaxRateTimeout() {
         return maxRateTimeout;
     }
+
+    public long getDispatcherPollDelay() {
+        return dispatcherPollDelay;
+    }
 }
@@ -26,8 +26,8 @@ import com.walmartlabs.concord.server.cfg.ExternalEventsConfiguration;
 import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
 import com.walmartlabs.concord.server.org.project.ProjectDao;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
+import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
-import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.process.PartialProcessKey;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.PayloadBuilder;
@@ -59,7 +59,7 @@ public abstract class AbstractEventResource {
     private final Logger log;
     private final ExternalEventsConfiguration eventsCfg;
     private final ProcessManager processManager;
-    private final TriggersDao triggersDao;
+    private final TriggerIndex triggerIndex;
     private final ProjectDao projectDao;
     private final RepositoryDao repositoryDao;
     private final TriggerDefinitionEnricher triggerDefinitionEnricher;
@@ -69,19 +69,20 @@ public abstract class AbstractEventResource {
 
     public AbstractEventResource(ExternalEventsConfiguration eventsCfg,
                                  ProcessManager processManager,
-                                 TriggersDao triggersDao,
+                                 TriggerIndex triggerIndex,
                                  ProjectDao projectDao,
                                  RepositoryDao repositoryDao,
                                  TriggersConfiguration triggersCfg,
                                  UserManager userManager,
                                  LdapManager ldapManager) {
 
-        this(eventsCfg, processManager, triggersDao, projectDao, repositoryDao, AS_IS_ENRICHER, triggersCfg, userManager, ldapManager);
+        this(eventsCfg, processManager, triggerIndex, projectDao, repositoryDao, AS_IS_ENRICHER, triggersCfg, userManager, ldapManager);
     }
 
     public AbstractEventResource(ExternalEventsConfiguration eventsCfg,
                                  ProcessManager processManager,
-                                 TriggersDao triggersDao, ProjectDao projectDao,
+                                 TriggerIndex triggerIndex,
+                                 ProjectDao projectDao,
                                  RepositoryDao repositoryDao,
                                  TriggerDefinitionEnricher enricher,
                                  TriggersConfiguration triggersCfg,
@@ -90,7 +91,7 @@ public abstract class AbstractEventResource {
 
         this.eventsCfg = eventsCfg;
         this.processManager = processManager;
-        this.triggersDao = triggersDao;
+        this.triggerIndex = triggerIndex;
         this.projectDao = projectDao;
         this.repositoryDao = repositoryDao;
         this.triggerDefinitionEnricher = enricher;
@@ -108,8 +109,21 @@ public abstract class AbstractEventResource {
 
         assertRoles(eventName);
 
-        List<TriggerEntry> triggers = triggersDao.list(eventName).stream()
-                .map(triggerDefinitionEnricher::enrich)
+        return processTriggers(eventId, eventName, conditions, event, cfgEnricher);
+    }
+
+    /**
+     * Same as {@link #process(String, String, Map, Map, ProcessConfigurationEnricher)},
+     * but without checking the current user's roles. Used when the event
+     * was accepted (and the roles checked) earlier.
+     */
+    protected int processTriggers(String eventId,
+                                  String eventName,
+                                  Map<String, Object> conditions,
+                                  Map<String, Object> event,
+                                  ProcessConfigurationEnricher cfgEnricher) {
+
+        List<TriggerEntry> triggers = triggerIndex.candidates(eventName, triggerDefinitionEnricher, conditions).stream()
                 .filter(t -> filter(conditions, t))
                 .collect(Collectors.toList());
 
@@ -160,10 +174,12 @@ public abstract class AbstractEventResource {
     }
 
     private boolean isRepositoryDisabled(TriggerEntry t) {
-        return repositoryDao.get(t.getRepositoryId()).isDisabled();
+        // the trigger index can briefly return triggers of a deleted repository
+        RepositoryEntry r = repositoryDao.get(t.getRepositoryId());
+        return r == null || r.isDisabled();
     }
 
-    private void assertRoles(String eventName) {
+    protected void assertRoles(String eventName) {
         // optional feature: require a specific user role to access the external events endpoint
         Map<String, String> requiredRoles = eventsCfg.getRequiredRoles();
         if (requiredRoles == null || requiredRoles.isEmpty()) {
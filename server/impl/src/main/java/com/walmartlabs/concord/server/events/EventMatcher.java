@@ -20,11 +20,29 @@ package com.walmartlabs.concord.server.events;
  * =====
  */
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
 import java.util.Collection;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 public final class EventMatcher {
 
+    /**
+     * Compiled condition values. The set of conditions is limited by the number
+     * of registered triggers, so the patterns are compiled only once.
+     */
+    private static final LoadingCache<String, Pattern> patterns = CacheBuilder.newBuilder()
+            .maximumSize(10000)
+            .build(new CacheLoader<String, Pattern>() {
+                @Override
+                public Pattern load(String regex) {
+                    return Pattern.compile(regex);
+                }
+            });
+
     public static boolean matches(Map<String, Object> data, Map<String, Object> conditions) {
         if (conditions == null || conditions.isEmpty()) {
             return true;
@@ -93,10 +111,13 @@ public final class EventMatcher {
     }
 
     private static boolean compareStringValues(String dataValue, String conditionValue) {
-        return dataValue.matches(conditionValue);
+        return patterns.getUnchecked(conditionValue).matcher(dataValue).matches();
     }
 
     private static boolean compareValues(Object dataValue, Object conditionValue) {
         return dataValue.equals(conditionValue);
     }
+
+    private EventMatcher() {
+    }
 }
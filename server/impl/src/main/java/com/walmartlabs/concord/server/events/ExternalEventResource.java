@@ -25,7 +25,6 @@ import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
 import com.walmartlabs.concord.server.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.project.ProjectDao;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
-import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.process.ProcessManager;
 import com.walmartlabs.concord.server.security.ldap.LdapManager;
 import com.walmartlabs.concord.server.user.UserManager;
@@ -61,14 +60,14 @@ public class ExternalEventResource extends AbstractEventResource implements Reso
     @Inject
     public ExternalEventResource(ExternalEventsConfiguration cfg,
                                  ProcessManager processManager,
-                                 TriggersDao triggersDao,
+                                 TriggerIndex triggerIndex,
                                  ProjectDao projectDao,
                                  RepositoryDao repositoryDao,
                                  TriggersConfiguration triggersCfg,
                                  UserManager userManager,
                                  LdapManager ldapManager) {
 
-        super(cfg, processManager, triggersDao, projectDao, repositoryDao, triggersCfg, userManager, ldapManager);
+        super(cfg, processManager, triggerIndex, projectDao, repositoryDao, triggersCfg, userManager, ldapManager);
     }
 
     @POST
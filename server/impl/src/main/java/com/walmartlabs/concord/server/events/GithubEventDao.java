@@ -0,0 +1,347 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.server.jooq.tables.GithubEvents;
+import com.walmartlabs.concord.server.jooq.tables.records.GithubEventsRecord;
+import org.jooq.Condition;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.impl.DSL;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.*;
+
+import static com.walmartlabs.concord.db.PgUtils.interval;
+import static com.walmartlabs.concord.server.jooq.tables.GithubEvents.GITHUB_EVENTS;
+import static org.jooq.impl.DSL.*;
+
+@Named
+public class GithubEventDao extends AbstractDao {
+
+    public enum Status {
+        NEW,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    private final ObjectMapper objectMapper;
+
+    @Inject
+    public GithubEventDao(@Named("app") Configuration cfg, ObjectMapper objectMapper) {
+        super(cfg);
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Stores a new event.
+     *
+     * @return {@code false} if an event with the same delivery ID already exists.
+     */
+    public boolean insert(String deliveryId, String eventName, String repoName, UUID initiatorId,
+                          UUID hookProjectId, String hookRepoToken,
+                          Map<String, Object> queryParams, Map<String, Object> payload) {
+
+        try (DSLContext tx = DSL.using(cfg)) {
+            int rows = tx.insertInto(GITHUB_EVENTS)
+                    .columns(GITHUB_EVENTS.DELIVERY_ID,
+                            GITHUB_EVENTS.EVENT_NAME,
+                            GITHUB_EVENTS.REPO_NAME,
+                            GITHUB_EVENTS.INITIATOR_ID,
+                            GITHUB_EVENTS.HOOK_PROJECT_ID,
+                            GITHUB_EVENTS.HOOK_REPO_TOKEN,
+                            GITHUB_EVENTS.QUERY_PARAMS,
+                            GITHUB_EVENTS.PAYLOAD,
+                            GITHUB_EVENTS.EVENT_STATUS)
+                    .values(value(deliveryId),
+                            value(eventName),
+                            value(repoName),
+                            value(initiatorId),
+                            value(hookProjectId),
+                            value(hookRepoToken),
+                            field("?::jsonb", serialize(queryParams)),
+                            field("?::jsonb", serialize(payload)),
+                            value(Status.NEW.name()))
+                    .onConflict(GITHUB_EVENTS.DELIVERY_ID)
+                    .doNothing()
+                    .execute();
+
+            return rows > 0;
+        }
+    }
+
+    /**
+     * Marks up to {@code limit} events as {@link Status#RUNNING} and returns them.
+     * Only the oldest unprocessed event of each repository is returned, so the events
+     * of the same repository are processed one at a time, in order. Events scheduled
+     * for a retry hold back the subsequent events of the repository.
+     * <p>
+     * The returned events are claimed with a new {@link GithubEventEntry#claimId()},
+     * the claim must be used to finish the event and to extend it with {@link #heartbeat(Collection)}.
+     */
+    public List<GithubEventEntry> poll(int limit) {
+        UUID claimId = UUID.randomUUID();
+
+        return txResult(tx -> {
+            GithubEvents e = GITHUB_EVENTS.as("e");
+            GithubEvents p = GITHUB_EVENTS.as("p");
+
+            List<GithubEventEntry> result = tx.select(e.EVENT_SEQ,
+                    e.DELIVERY_ID,
+                    e.EVENT_NAME,
+                    e.REPO_NAME,
+                    e.INITIATOR_ID,
+                    e.HOOK_PROJECT_ID,
+                    e.HOOK_REPO_TOKEN,
+                    e.QUERY_PARAMS,
+                    e.PAYLOAD,
+                    e.RECEIVED_AT,
+                    e.ATTEMPT_COUNT)
+                    .from(e)
+                    .where(e.EVENT_STATUS.eq(Status.NEW.name())
+                            .and(e.NOT_BEFORE.isNull().or(e.NOT_BEFORE.lessOrEqual(currentTimestamp())))
+                            .andNotExists(selectOne().from(p)
+                                    .where(p.REPO_NAME.eq(e.REPO_NAME)
+                                            .and(p.EVENT_SEQ.lt(e.EVENT_SEQ))
+                                            .and(p.EVENT_STATUS.in(Status.NEW.name(), Status.RUNNING.name())))))
+                    .orderBy(e.EVENT_SEQ)
+                    .limit(limit)
+                    .forUpdate()
+                    .of(e)
+                    .skipLocked()
+                    .fetch(r -> toEntry(r, claimId));
+
+            if (result.isEmpty()) {
+                return result;
+            }
+
+            List<Long> ids = new ArrayList<>(result.size());
+            for (GithubEventEntry r : result) {
+                ids.add(r.seq());
+            }
+
+            tx.update(GITHUB_EVENTS)
+                    .set(GITHUB_EVENTS.EVENT_STATUS, Status.RUNNING.name())
+                    .set(GITHUB_EVENTS.CLAIM_ID, claimId)
+                    .set(GITHUB_EVENTS.ATTEMPT_COUNT, GITHUB_EVENTS.ATTEMPT_COUNT.plus(1))
+                    .set(GITHUB_EVENTS.NOT_BEFORE, (Timestamp) null)
+                    .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                    .where(GITHUB_EVENTS.EVENT_SEQ.in(ids))
+                    .execute();
+
+            return result;
+        });
+    }
+
+    /**
+     * Marks the claimed event as {@link Status#DONE} or {@link Status#FAILED}.
+     *
+     * @return the time (ms) between receiving and finishing the event, measured
+     * by the DB clock, or {@code null} if the event is no longer claimed
+     * by {@code claimId} (e.g. it was considered stalled and returned to the queue).
+     */
+    public Long finish(long seq, UUID claimId, Status status) {
+        return txResult(tx -> {
+            GithubEventsRecord r = tx.update(GITHUB_EVENTS)
+                    .set(GITHUB_EVENTS.EVENT_STATUS, status.name())
+                    .set(GITHUB_EVENTS.CLAIM_ID, (UUID) null)
+                    .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                    .where(claimed(seq, claimId))
+                    .returning(GITHUB_EVENTS.RECEIVED_AT, GITHUB_EVENTS.LAST_UPDATED_AT)
+                    .fetchOne();
+
+            if (r == null) {
+                return null;
+            }
+
+            return r.getLastUpdatedAt().getTime() - r.getReceivedAt().getTime();
+        });
+    }
+
+    /**
+     * Returns the claimed event back to the queue. The event is processed
+     * again not earlier than after {@code delay} (PG interval).
+     *
+     * @return {@code false} if the event is no longer claimed by {@code claimId}.
+     */
+    public boolean retry(long seq, UUID claimId, String delay) {
+        return txResult(tx -> tx.update(GITHUB_EVENTS)
+                .set(GITHUB_EVENTS.EVENT_STATUS, Status.NEW.name())
+                .set(GITHUB_EVENTS.CLAIM_ID, (UUID) null)
+                .set(GITHUB_EVENTS.NOT_BEFORE, currentTimestamp().plus(interval(delay)))
+                .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                .where(claimed(seq, claimId))
+                .execute() > 0);
+    }
+
+    /**
+     * Updates the claimed events to prevent them from being considered stalled.
+     *
+     * @return number of events which are still claimed.
+     */
+    public int heartbeat(Collection<UUID> claimIds) {
+        if (claimIds.isEmpty()) {
+            return 0;
+        }
+
+        return txResult(tx -> tx.update(GITHUB_EVENTS)
+                .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                .where(GITHUB_EVENTS.EVENT_STATUS.eq(Status.RUNNING.name())
+                        .and(GITHUB_EVENTS.CLAIM_ID.in(claimIds)))
+                .execute());
+    }
+
+    /**
+     * Handles the {@link Status#RUNNING} events without a heartbeat for more
+     * than {@code maxAge} (e.g. if the server was restarted). The events are
+     * returned to the queue, unless they were already processed {@code maxAttempts}
+     * times. Such events are marked as {@link Status#FAILED}.
+     * The previous claims are revoked.
+     */
+    public int resetStalled(String maxAge, int maxAttempts) {
+        return txResult(tx -> {
+            Field<Timestamp> cutOff = currentTimestamp().minus(interval(maxAge));
+            Condition stalled = GITHUB_EVENTS.EVENT_STATUS.eq(Status.RUNNING.name())
+                    .and(GITHUB_EVENTS.LAST_UPDATED_AT.lessThan(cutOff));
+
+            int failed = tx.update(GITHUB_EVENTS)
+                    .set(GITHUB_EVENTS.EVENT_STATUS, Status.FAILED.name())
+                    .set(GITHUB_EVENTS.CLAIM_ID, (UUID) null)
+                    .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                    .where(stalled.and(GITHUB_EVENTS.ATTEMPT_COUNT.greaterOrEqual(maxAttempts)))
+                    .execute();
+
+            int reset = tx.update(GITHUB_EVENTS)
+                    .set(GITHUB_EVENTS.EVENT_STATUS, Status.NEW.name())
+                    .set(GITHUB_EVENTS.CLAIM_ID, (UUID) null)
+                    .set(GITHUB_EVENTS.LAST_UPDATED_AT, currentTimestamp())
+                    .where(stalled)
+                    .execute();
+
+            return failed + reset;
+        });
+    }
+
+    /**
+     * Removes the processed events older than {@code maxAge}. Until then
+     * the events are kept to detect duplicate deliveries.
+     */
+    public int deleteProcessed(String maxAge) {
+        return txResult(tx -> {
+            Field<Timestamp> cutOff = currentTimestamp().minus(interval(maxAge));
+            return tx.deleteFrom(GITHUB_EVENTS)
+                    .where(GITHUB_EVENTS.EVENT_STATUS.in(Status.DONE.name(), Status.FAILED.name())
+                            .and(GITHUB_EVENTS.RECEIVED_AT.lessThan(cutOff)))
+                    .execute();
+        });
+    }
+
+    /**
+     * @return number of events waiting to be processed.
+     */
+    public int countPending() {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.fetchCount(GITHUB_EVENTS, GITHUB_EVENTS.EVENT_STATUS.eq(Status.NEW.name()));
+        }
+    }
+
+    /**
+     * @return the age (ms) of the oldest event waiting to be processed or zero.
+     */
+    public long getOldestPendingAge() {
+        try (DSLContext tx = DSL.using(cfg)) {
+            // the age is calculated by the DB, RECEIVED_AT uses the DB clock
+            Field<Long> age = field("(extract(epoch from current_timestamp - {0}) * 1000)::bigint", Long.class,
+                    min(GITHUB_EVENTS.RECEIVED_AT));
+
+            Long ms = tx.select(age)
+                    .from(GITHUB_EVENTS)
+                    .where(GITHUB_EVENTS.EVENT_STATUS.eq(Status.NEW.name()))
+                    .fetchOne(Record1::value1);
+
+            if (ms == null) {
+                return 0;
+            }
+
+            return Math.max(0, ms);
+        }
+    }
+
+    private static Condition claimed(long seq, UUID claimId) {
+        return GITHUB_EVENTS.EVENT_SEQ.eq(seq)
+                .and(GITHUB_EVENTS.EVENT_STATUS.eq(Status.RUNNING.name()))
+                .and(GITHUB_EVENTS.CLAIM_ID.eq(claimId));
+    }
+
+    private GithubEventEntry toEntry(Record r, UUID claimId) {
+        GithubEvents e = GITHUB_EVENTS.as("e");
+        return GithubEventEntry.builder()
+                .seq(r.get(e.EVENT_SEQ))
+                .deliveryId(r.get(e.DELIVERY_ID))
+                .eventName(r.get(e.EVENT_NAME))
+                .repoName(r.get(e.REPO_NAME))
+                .initiatorId(r.get(e.INITIATOR_ID))
+                .hookProjectId(r.get(e.HOOK_PROJECT_ID))
+                .hookRepoToken(r.get(e.HOOK_REPO_TOKEN))
+                .queryParams(deserialize(r.get(e.QUERY_PARAMS)))
+                .payload(deserialize(r.get(e.PAYLOAD)))
+                .receivedAt(r.get(e.RECEIVED_AT))
+                .claimId(claimId)
+                // the attempt counter is incremented after the select
+                .attempt(r.get(e.ATTEMPT_COUNT) + 1)
+                .build();
+    }
+
+    private String serialize(Object o) {
+        if (o == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.writeValueAsString(o);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Map<String, Object> deserialize(Object o) {
+        if (o == null) {
+            return null;
+        }
+
+        try {
+            return objectMapper.readValue(String.valueOf(o), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
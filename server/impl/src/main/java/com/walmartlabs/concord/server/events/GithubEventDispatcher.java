@@ -0,0 +1,193 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Timer;
+import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.GithubConfiguration;
+import com.walmartlabs.concord.server.events.GithubEventDao.Status;
+import com.walmartlabs.concord.server.metrics.InjectTimer;
+import com.walmartlabs.concord.server.process.ProcessSecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes the stored GitHub webhook events using a bounded pool of workers.
+ * <p>
+ * Failed events are retried up to {@link GithubConfiguration#getEventQueueMaxAttempts()}
+ * times. The claims of the events being processed are extended periodically,
+ * so long running events are not considered stalled and processed twice.
+ *
+ * @see GithubEventResource
+ * @see GithubEventDao#poll(int)
+ */
+@Named
+@Singleton
+public class GithubEventDispatcher extends PeriodicTask {
+
+    private static final Logger log = LoggerFactory.getLogger(GithubEventDispatcher.class);
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(5);
+    private static final long CLEANUP_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+    private static final long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final GithubConfiguration cfg;
+    private final GithubEventDao dao;
+    private final Provider<GithubEventResource> resourceProvider;
+    private final ProcessSecurityContext processSecurityContext;
+    private final ExecutorService executor;
+    private final Semaphore workers;
+    private final Set<UUID> claims = ConcurrentHashMap.newKeySet();
+
+    @InjectTimer
+    Timer eventLatency;
+
+    private long lastCleanupAt;
+    private long lastHeartbeatAt;
+
+    @Inject
+    public GithubEventDispatcher(GithubConfiguration cfg,
+                                 GithubEventDao dao,
+                                 Provider<GithubEventResource> resourceProvider,
+                                 ProcessSecurityContext processSecurityContext) {
+
+        super(cfg.getEventQueueWorkers() > 0 ? cfg.getEventQueuePollInterval() : 0, ERROR_DELAY);
+
+        this.cfg = cfg;
+        this.dao = dao;
+        this.resourceProvider = resourceProvider;
+        this.processSecurityContext = processSecurityContext;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, cfg.getEventQueueWorkers()));
+        this.workers = new Semaphore(cfg.getEventQueueWorkers());
+    }
+
+    /**
+     * @return {@code true} if the events must be stored and processed asynchronously.
+     */
+    public boolean isEnabled() {
+        return cfg.getEventQueueWorkers() > 0;
+    }
+
+    /**
+     * Picks up the new events without waiting for the next poll.
+     */
+    public void onEnqueue() {
+        wakeUp();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        executor.shutdown();
+    }
+
+    @Override
+    protected void performTask() {
+        cleanup();
+
+        int n = workers.availablePermits();
+        if (n > 0) {
+            List<GithubEventEntry> events = dao.poll(n);
+            for (GithubEventEntry e : events) {
+                workers.acquireUninterruptibly();
+                claims.add(e.claimId());
+                executor.submit(() -> run(e));
+            }
+        }
+
+        heartbeat();
+    }
+
+    private void run(GithubEventEntry e) {
+        try {
+            processSecurityContext.runAs(e.initiatorId(), () -> {
+                resourceProvider.get().processEvent(e);
+                return null;
+            });
+
+            finish(e, Status.DONE);
+        } catch (Exception ex) {
+            if (e.attempt() < cfg.getEventQueueMaxAttempts()) {
+                log.warn("run ['{}', '{}'] -> error while processing the event (attempt {}), will retry", e.deliveryId(), e.eventName(), e.attempt(), ex);
+                if (!dao.retry(e.seq(), e.claimId(), cfg.getEventQueueRetryDelay())) {
+                    log.warn("run ['{}'] -> the event was claimed by another worker", e.deliveryId());
+                }
+            } else {
+                log.error("run ['{}', '{}'] -> error while processing the event (attempt {})", e.deliveryId(), e.eventName(), e.attempt(), ex);
+                finish(e, Status.FAILED);
+            }
+        } finally {
+            claims.remove(e.claimId());
+            workers.release();
+
+            // the next event of the same repository can be processed now
+            wakeUp();
+        }
+    }
+
+    private void finish(GithubEventEntry e, Status status) {
+        Long latency = dao.finish(e.seq(), e.claimId(), status);
+        if (latency == null) {
+            log.warn("finish ['{}', {}] -> the event was claimed by another worker", e.deliveryId(), status);
+            return;
+        }
+
+        eventLatency.update(latency, TimeUnit.MILLISECONDS);
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        if (now - lastHeartbeatAt < HEARTBEAT_INTERVAL) {
+            return;
+        }
+        lastHeartbeatAt = now;
+
+        dao.heartbeat(claims);
+    }
+
+    private void cleanup() {
+        long now = System.currentTimeMillis();
+        if (now - lastCleanupAt < CLEANUP_INTERVAL) {
+            return;
+        }
+        lastCleanupAt = now;
+
+        int stalled = dao.resetStalled(cfg.getEventQueueMaxStalledAge(), cfg.getEventQueueMaxAttempts());
+        if (stalled > 0) {
+            log.warn("cleanup -> {} stalled event(s) returned to the queue", stalled);
+        }
+
+        dao.deleteProcessed(cfg.getEventQueueMaxEventAge());
+    }
+}
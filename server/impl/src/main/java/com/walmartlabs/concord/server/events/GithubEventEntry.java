@@ -0,0 +1,73 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import org.immutables.value.Value;
+
+import javax.annotation.Nullable;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * GitHub webhook event, received and stored for processing.
+ */
+@Value.Immutable
+public interface GithubEventEntry {
+
+    long seq();
+
+    String deliveryId();
+
+    @Nullable
+    String eventName();
+
+    String repoName();
+
+    UUID initiatorId();
+
+    @Nullable
+    UUID hookProjectId();
+
+    @Nullable
+    String hookRepoToken();
+
+    @Nullable
+    Map<String, Object> queryParams();
+
+    Map<String, Object> payload();
+
+    Date receivedAt();
+
+    /**
+     * ID of the claim made by {@link GithubEventDao#poll(int)}.
+     */
+    UUID claimId();
+
+    /**
+     * Number of the current processing attempt, starting with 1.
+     */
+    int attempt();
+
+    static ImmutableGithubEventEntry.Builder builder() {
+        return ImmutableGithubEventEntry.builder();
+    }
+}
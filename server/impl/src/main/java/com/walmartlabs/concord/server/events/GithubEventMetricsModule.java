@@ -0,0 +1,66 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.CachedGauge;
+import com.codahale.metrics.Gauge;
+import com.google.inject.AbstractModule;
+import com.google.inject.Provider;
+import com.google.inject.multibindings.Multibinder;
+import com.walmartlabs.concord.server.metrics.GaugeProvider;
+
+import javax.inject.Named;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+@Named
+public class GithubEventMetricsModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        Provider<GithubEventDao> daoProvider = getProvider(GithubEventDao.class);
+
+        Multibinder<GaugeProvider> gauges = Multibinder.newSetBinder(binder(), GaugeProvider.class);
+        gauges.addBinding().toInstance(createGauge("github-events-backlog", daoProvider, d -> (long) d.countPending()));
+        gauges.addBinding().toInstance(createGauge("github-events-oldest-age", daoProvider, GithubEventDao::getOldestPendingAge));
+    }
+
+    private static GaugeProvider<Long> createGauge(String name, Provider<GithubEventDao> daoProvider,
+                                                   Function<GithubEventDao, Long> f) {
+
+        return new GaugeProvider<Long>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Gauge<Long> gauge() {
+                return new CachedGauge<Long>(5, TimeUnit.SECONDS) {
+                    @Override
+                    protected Long loadValue() {
+                        return f.apply(daoProvider.get());
+                    }
+                };
+            }
+        };
+    }
+}
@@ -30,9 +30,9 @@ import com.walmartlabs.concord.server.org.project.ProjectDao;
 import com.walmartlabs.concord.server.org.project.ProjectEntry;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
-import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.process.ProcessManager;
 import com.walmartlabs.concord.server.security.GithubAuthenticatingFilter;
+import com.walmartlabs.concord.server.security.UserPrincipal;
 import com.walmartlabs.concord.server.security.github.GithubKey;
 import com.walmartlabs.concord.server.security.ldap.LdapManager;
 import com.walmartlabs.concord.server.user.UserManager;
@@ -91,20 +91,24 @@ public class GithubEventResource extends AbstractEventResource implements Resour
     private final RepositoryDao repositoryDao;
     private final GithubConfiguration githubCfg;
     private final EncryptedProjectValueManager encryptedValueManager;
+    private final GithubEventDao eventDao;
+    private final GithubEventDispatcher dispatcher;
 
     @Inject
     public GithubEventResource(ExternalEventsConfiguration cfg,
                                ProjectDao projectDao,
-                               TriggersDao triggersDao,
+                               TriggerIndex triggerIndex,
                                RepositoryDao repositoryDao,
                                ProcessManager processManager,
                                EncryptedProjectValueManager encryptedValueManager,
                                TriggersConfiguration triggersConfiguration,
                                UserManager userManager,
                                LdapManager ldapManager,
-                               GithubConfiguration githubCfg) {
+                               GithubConfiguration githubCfg,
+                               GithubEventDao eventDao,
+                               GithubEventDispatcher dispatcher) {
 
-        super(cfg, processManager, triggersDao, projectDao, repositoryDao,
+        super(cfg, processManager, triggerIndex, projectDao, repositoryDao,
                 new GithubTriggerDefinitionEnricher(projectDao, githubCfg),
                 triggersConfiguration, userManager, ldapManager);
 
@@ -112,6 +116,8 @@ public class GithubEventResource extends AbstractEventResource implements Resour
         this.repositoryDao = repositoryDao;
         this.githubCfg = githubCfg;
         this.encryptedValueManager = encryptedValueManager;
+        this.eventDao = eventDao;
+        this.dispatcher = dispatcher;
     }
 
     @POST
@@ -120,9 +126,9 @@ public class GithubEventResource extends AbstractEventResource implements Resour
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.TEXT_PLAIN)
     @WithTimer
-    @SuppressWarnings("unchecked")
     public String onEvent(@ApiParam Map<String, Object> payload,
                           @HeaderParam("X-GitHub-Event") String eventName,
+                          @HeaderParam("X-GitHub-Delivery") String deliveryId,
                           @Context UriInfo uriInfo) {
 
         if ("ping".equalsIgnoreCase(eventName)) {
@@ -133,8 +139,7 @@ public class GithubEventResource extends AbstractEventResource implements Resour
             return "ok";
         }
 
-        Map<String, Object> repo = (Map<String, Object>) payload.getOrDefault(REPO_NAME_KEY, Collections.emptyMap());
-        String repoName = (String) repo.get("full_name");
+        String repoName = getRepoName(payload);
         if (repoName == null) {
             return "ok";
         }
@@ -142,10 +147,47 @@ public class GithubEventResource extends AbstractEventResource implements Resour
         // support for hooks restricted to a specific repository
         GithubKey githubKey = GithubKey.getCurrent();
         UUID hookProjectId = githubKey.getProjectId();
-        String hookRepoHash = githubKey.getRepoToken();
+        String hookRepoToken = githubKey.getRepoToken();
+
+        Map<String, Object> queryParams = getQueryParams(uriInfo);
+
+        if (!dispatcher.isEnabled()) {
+            handleEvent(eventName, payload, repoName, hookProjectId, hookRepoToken, queryParams, true);
+            return "ok";
+        }
+
+        // the event is processed later, check the roles while we have the request's subject
+        assertRoles(EVENT_SOURCE);
+
+        if (deliveryId == null) {
+            deliveryId = UUID.randomUUID().toString();
+        }
+
+        UUID initiatorId = UserPrincipal.assertCurrent().getId();
+        if (eventDao.insert(deliveryId, eventName, repoName, initiatorId, hookProjectId, hookRepoToken, queryParams, payload)) {
+            dispatcher.onEnqueue();
+        } else {
+            log.info("onEvent ['{}', '{}'] -> duplicate delivery, skipping", deliveryId, eventName);
+        }
+
+        return "ok";
+    }
+
+    /**
+     * Processes an event stored by {@link #onEvent(Map, String, String, UriInfo)}.
+     *
+     * @see GithubEventDispatcher
+     */
+    void processEvent(GithubEventEntry e) {
+        handleEvent(e.eventName(), e.payload(), e.repoName(), e.hookProjectId(), e.hookRepoToken(), e.queryParams(), false);
+    }
+
+    private void handleEvent(String eventName, Map<String, Object> payload, String repoName,
+                             UUID hookProjectId, String hookRepoToken,
+                             Map<String, Object> queryParams, boolean checkRoles) {
 
         String eventBranch = getBranch(payload, eventName);
-        List<RepositoryItem> repos = findRepos(repoName, eventBranch, hookProjectId, hookRepoHash);
+        List<RepositoryItem> repos = findRepos(repoName, eventBranch, hookProjectId, hookRepoToken);
         boolean unknownRepo = repos.isEmpty();
         if (unknownRepo) {
             repos = Collections.singletonList(UNKNOWN_REPO);
@@ -153,29 +195,33 @@ public class GithubEventResource extends AbstractEventResource implements Resour
 
         for (RepositoryItem r : repos) {
             Map<String, Object> conditions = buildConditions(payload, r.repositoryName, eventBranch, r.project, eventName);
-            conditions = enrich(conditions, uriInfo);
+            conditions = enrich(conditions, queryParams);
 
             Map<String, Object> event = buildTriggerEvent(payload, r.id, r.project, conditions);
 
             String eventId = UUID.randomUUID().toString();
-            int count = process(eventId, EVENT_SOURCE, conditions, event, (t, cfg) -> {
+            ProcessConfigurationEnricher cfgEnricher = (t, cfg) -> {
                 // if `useEventCommitId` is true then the process is forced to use the specified commit ID
                 String commitId = (String) event.get(COMMIT_ID_KEY);
                 if (commitId != null && t.isUseEventCommitId()) {
                     cfg.put(Constants.Request.REPO_COMMIT_ID, event.get(COMMIT_ID_KEY));
                 }
                 return cfg;
-            });
+            };
+
+            int count;
+            if (checkRoles) {
+                count = process(eventId, EVENT_SOURCE, conditions, event, cfgEnricher);
+            } else {
+                count = processTriggers(eventId, EVENT_SOURCE, conditions, event, cfgEnricher);
+            }
 
             log.info("payload ['{}'] -> {} processes started", eventId, count);
         }
 
         if (unknownRepo) {
             log.warn("'onEvent ['{}'] -> repository '{}' not found", eventName, repoName);
-            return "ok";
         }
-
-        return "ok";
     }
 
     private List<RepositoryItem> findRepos(String repoName, String branch, UUID hookProjectId, String hookRepoToken) {
@@ -255,17 +301,17 @@ public class GithubEventResource extends AbstractEventResource implements Resour
         }
     }
 
-    private static Map<String, Object> enrich(Map<String, Object> event, UriInfo uriInfo) {
+    private static Map<String, Object> getQueryParams(UriInfo uriInfo) {
         if (uriInfo == null) {
-            return event;
+            return null;
         }
 
         MultivaluedMap<String, String> qp = uriInfo.getQueryParameters();
         if (qp == null || qp.isEmpty()) {
-            return event;
+            return null;
         }
 
-        Map<String, Object> m = new HashMap<>(event);
+        Map<String, Object> m = new HashMap<>();
         qp.keySet().forEach(k -> m.put(k, qp.getFirst(k)));
 
         m.remove(GithubAuthenticatingFilter.HOOK_PROJECT_ID);
@@ -274,6 +320,16 @@ public class GithubEventResource extends AbstractEventResource implements Resour
         return m;
     }
 
+    private static Map<String, Object> enrich(Map<String, Object> event, Map<String, Object> queryParams) {
+        if (queryParams == null || queryParams.isEmpty()) {
+            return event;
+        }
+
+        Map<String, Object> m = new HashMap<>(event);
+        m.putAll(queryParams);
+        return m;
+    }
+
     private static Map<String, Object> buildTriggerEvent(Map<String, Object> payload,
                                                          UUID repoId,
                                                          ProjectEntry project,
@@ -298,6 +354,12 @@ public class GithubEventResource extends AbstractEventResource implements Resour
         return m;
     }
 
+    @SuppressWarnings("unchecked")
+    private static String getRepoName(Map<String, Object> payload) {
+        Map<String, Object> repo = (Map<String, Object>) payload.getOrDefault(REPO_NAME_KEY, Collections.emptyMap());
+        return (String) repo.get("full_name");
+    }
+
     private static String getBranch(Map<String, Object> event, String eventName) {
         if (PUSH_EVENT.equalsIgnoreCase(eventName)) {
             return getBranchPush(event);
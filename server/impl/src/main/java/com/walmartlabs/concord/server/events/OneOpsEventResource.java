@@ -27,7 +27,6 @@ import com.walmartlabs.concord.server.cfg.TriggersConfiguration;
 import com.walmartlabs.concord.server.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.project.ProjectDao;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
-import com.walmartlabs.concord.server.org.triggers.TriggersDao;
 import com.walmartlabs.concord.server.process.ProcessManager;
 import com.walmartlabs.concord.server.security.ldap.LdapManager;
 import com.walmartlabs.concord.server.user.UserManager;
@@ -78,14 +77,14 @@ public class OneOpsEventResource extends AbstractEventResource implements Resour
     @Inject
     public OneOpsEventResource(ExternalEventsConfiguration cfg,
                                ProcessManager processManager,
-                               TriggersDao triggersDao,
+                               TriggerIndex triggerIndex,
                                ProjectDao projectDao,
                                RepositoryDao repositoryDao,
                                TriggersConfiguration triggersCfg,
                                UserManager userManager,
                                LdapManager ldapManager) {
 
-        super(cfg, processManager, triggersDao, projectDao, repositoryDao, triggersCfg, userManager, ldapManager);
+        super(cfg, processManager, triggerIndex, projectDao, repositoryDao, triggersCfg, userManager, ldapManager);
         this.objectMapper = new ObjectMapper();
     }
 
@@ -0,0 +1,241 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.events.AbstractEventResource.TriggerDefinitionEnricher;
+import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggersDao;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index of the (enriched) trigger definitions, grouped by the event source.
+ * <p>
+ * Trigger conditions with literal string values for the most common keys
+ * (repository, branch, etc) are indexed by value, so an incoming event is
+ * matched only against the triggers that can possibly match it.
+ * The returned candidates must be still checked with {@link EventMatcher}.
+ * <p>
+ * Each index is built for a specific event source and enricher. It is rebuilt
+ * when {@link TriggersDao#getVersion()} changes, i.e. after the triggers are
+ * modified on any server.
+ */
+@Named
+@Singleton
+public class TriggerIndex {
+
+    private static final String[] INDEXED_KEYS = {"repository", "branch", "type"};
+
+    private final TriggersDao triggersDao;
+
+    private final ConcurrentMap<Key, Index> indexes = new ConcurrentHashMap<>();
+
+    @Inject
+    public TriggerIndex(TriggersDao triggersDao) {
+        this.triggersDao = triggersDao;
+    }
+
+    /**
+     * Returns the triggers of the specified event source which can match
+     * the specified event conditions. The original order of triggers is preserved.
+     */
+    public List<TriggerEntry> candidates(String eventSource, TriggerDefinitionEnricher enricher, Map<String, Object> conditions) {
+        Key k = new Key(eventSource, enricher);
+        Index idx = get(k, () -> enrich(triggersDao.list(eventSource), enricher));
+        return idx.candidates(conditions);
+    }
+
+    private Index get(Key k, Supplier<List<TriggerEntry>> loader) {
+        // the version is fetched before the data, a concurrent modification
+        // results in an outdated version and the index is reloaded next time
+        long v = triggersDao.getVersion();
+
+        Index idx = indexes.get(k);
+        if (idx != null && idx.version == v) {
+            return idx;
+        }
+
+        idx = new Index(v, loader.get());
+        indexes.merge(k, idx, (a, b) -> a.version >= b.version ? a : b);
+
+        return idx;
+    }
+
+    private static List<TriggerEntry> enrich(List<TriggerEntry> l, TriggerDefinitionEnricher enricher) {
+        List<TriggerEntry> result = new ArrayList<>(l.size());
+        for (TriggerEntry t : l) {
+            result.add(enricher.enrich(t));
+        }
+        return result;
+    }
+
+    static boolean isLiteral(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if ("\\^$.|?*+()[]{}".indexOf(s.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Index {
+
+        private final long version;
+        private final List<TriggerEntry> all;
+        private final Map<String, KeyIndex> keys = new HashMap<>();
+
+        private Index(long version, List<TriggerEntry> triggers) {
+            this.version = version;
+            this.all = triggers;
+
+            for (String k : INDEXED_KEYS) {
+                keys.put(k, new KeyIndex(k, triggers));
+            }
+        }
+
+        private List<TriggerEntry> candidates(Map<String, Object> conditions) {
+            if (conditions == null) {
+                return all;
+            }
+
+            KeyIndex best = null;
+            String bestValue = null;
+            int bestSize = all.size();
+
+            for (Map.Entry<String, KeyIndex> e : keys.entrySet()) {
+                Object v = conditions.get(e.getKey());
+                if (!(v instanceof String)) {
+                    // only string values are compared as regular expressions
+                    continue;
+                }
+
+                String s = (String) v;
+                int size = e.getValue().size(s);
+                if (size < bestSize) {
+                    best = e.getValue();
+                    bestValue = s;
+                    bestSize = size;
+                }
+            }
+
+            if (best == null) {
+                return all;
+            }
+
+            return best.candidates(bestValue);
+        }
+    }
+
+    /**
+     * Triggers grouped by a literal value of the condition key. Triggers without
+     * the key or with a non-literal value (e.g. a regex) can match any value.
+     */
+    private static final class KeyIndex {
+
+        private final Map<String, List<Item>> byValue = new HashMap<>();
+        private final List<Item> any = new ArrayList<>();
+
+        private KeyIndex(String key, List<TriggerEntry> triggers) {
+            for (int i = 0; i < triggers.size(); i++) {
+                TriggerEntry t = triggers.get(i);
+                Item item = new Item(i, t);
+
+                Object v = t.getConditions() != null ? t.getConditions().get(key) : null;
+                if (v instanceof String && isLiteral((String) v)) {
+                    byValue.computeIfAbsent((String) v, k -> new ArrayList<>()).add(item);
+                } else {
+                    any.add(item);
+                }
+            }
+        }
+
+        private int size(String value) {
+            List<Item> l = byValue.get(value);
+            return any.size() + (l != null ? l.size() : 0);
+        }
+
+        private List<TriggerEntry> candidates(String value) {
+            List<Item> a = byValue.getOrDefault(value, Collections.emptyList());
+            List<Item> b = any;
+
+            // both lists are ordered by the trigger's position, merge them to keep the order
+            List<TriggerEntry> result = new ArrayList<>(a.size() + b.size());
+            int i = 0;
+            int j = 0;
+            while (i < a.size() || j < b.size()) {
+                if (j >= b.size() || (i < a.size() && a.get(i).ordinal < b.get(j).ordinal)) {
+                    result.add(a.get(i++).trigger);
+                } else {
+                    result.add(b.get(j++).trigger);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Enrichers are singletons of the event resources, compared by identity.
+     */
+    private static final class Key {
+
+        private final String eventSource;
+        private final TriggerDefinitionEnricher enricher;
+
+        private Key(String eventSource, TriggerDefinitionEnricher enricher) {
+            this.eventSource = eventSource;
+            this.enricher = enricher;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return eventSource.equals(key.eventSource) && enricher == key.enricher;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * eventSource.hashCode() + System.identityHashCode(enricher);
+        }
+    }
+
+    private static final class Item {
+
+        private final int ordinal;
+        private final TriggerEntry trigger;
+
+        private Item(int ordinal, TriggerEntry trigger) {
+            this.ordinal = ordinal;
+            this.trigger = trigger;
+        }
+    }
+}
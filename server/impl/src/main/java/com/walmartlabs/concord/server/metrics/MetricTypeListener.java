@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.metrics;
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.google.inject.Injector;
 import com.google.inject.MembersInjector;
 import com.google.inject.Provider;
@@ -41,6 +42,7 @@ public class MetricTypeListener implements TypeListener {
             for (Field f : clazz.getDeclaredFields()) {
                 processMeters(encounter, clazz, f);
                 processCounters(encounter, clazz, f);
+                processTimers(encounter, clazz, f);
             }
 
             clazz = clazz.getSuperclass();
@@ -87,6 +89,26 @@ public class MetricTypeListener implements TypeListener {
         });
     }
 
+    private static <I> void processTimers(TypeEncounter<I> encounter, Class<?> clazz, Field f) {
+        InjectTimer i = f.getAnnotation(InjectTimer.class);
+        if (f.getType() != Timer.class || i == null) {
+            return;
+        }
+
+        String name = i.value();
+        if (name.isEmpty()) {
+            name = f.getName();
+        }
+
+        String fqn = MetricUtils.createFqn("timer", clazz, name, null);
+
+        Provider<Injector> injector = encounter.getProvider(Injector.class);
+        encounter.register((MembersInjector<I>) instance -> {
+            MetricRegistry registry = injector.get().getInstance(MetricRegistry.class);
+            set(f, instance, registry.timer(fqn));
+        });
+    }
+
     private static void set(Field f, Object i, Object v) {
         try {
             boolean accessible = f.isAccessible();
@@ -30,6 +30,7 @@ import org.jooq.impl.DSL;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -64,6 +65,15 @@ public class OrganizationDao extends AbstractDao {
         }
     }
 
+    public Map<UUID, String> getNames(Collection<UUID> ids) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.select(ORGANIZATIONS.ORG_ID, ORGANIZATIONS.ORG_NAME)
+                    .from(ORGANIZATIONS)
+                    .where(ORGANIZATIONS.ORG_ID.in(ids))
+                    .fetchMap(ORGANIZATIONS.ORG_ID, ORGANIZATIONS.ORG_NAME);
+        }
+    }
+
     public UUID getId(String name) {
         try (DSLContext tx = DSL.using(cfg)) {
             return tx.select(ORGANIZATIONS.ORG_ID)
@@ -0,0 +1,198 @@
+package com.walmartlabs.concord.server.org.policy;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import org.jooq.DSLContext;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the effective policies of (org, project, user) combinations and
+ * the {@link PolicyEngine} instances created for them.
+ * <p>
+ * The cached policies are checked against {@link PolicyDao#getVersion()}
+ * on each call, the changes made by any server instance are visible immediately.
+ */
+@Named
+@Singleton
+public class PolicyCache {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper()
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+
+    private final PolicyDao policyDao;
+
+    private final Cache<LinkKey, CachedRules> rules;
+
+    /**
+     * Engines by {@link PolicyRules#rulesHash()}.
+     * Policy engines are immutable and can be shared.
+     */
+    private final Cache<String, PolicyEngine> engines;
+
+    @Inject
+    public PolicyCache(PolicyDao policyDao) {
+        this.policyDao = policyDao;
+
+        this.rules = CacheBuilder.newBuilder()
+                .maximumSize(10 * 1024L)
+                .build();
+
+        this.engines = CacheBuilder.newBuilder()
+                .maximumSize(1024L)
+                .build();
+    }
+
+    /**
+     * Returns the effective policy rules or {@code null} if there's no policy.
+     *
+     * @see PolicyDao#getRules(UUID, UUID, UUID)
+     */
+    public PolicyRules getRules(UUID orgId, UUID projectId, UUID userId) {
+        return getRules(new LinkKey(orgId, projectId, userId), policyDao.getVersion(), () -> policyDao.getRules(orgId, projectId, userId));
+    }
+
+    /**
+     * Returns the effective policy rules or {@code null} if there's no policy.
+     *
+     * @see PolicyDao#getRules(DSLContext, UUID, UUID, UUID)
+     */
+    public PolicyRules getRules(DSLContext tx, UUID orgId, UUID projectId, UUID userId) {
+        return getRules(new LinkKey(orgId, projectId, userId), policyDao.getVersion(tx), () -> policyDao.getRules(tx, orgId, projectId, userId));
+    }
+
+    /**
+     * Returns the effective policy engine or {@code null} if there's no policy.
+     */
+    public PolicyEngine getEngine(DSLContext tx, UUID orgId, UUID projectId, UUID userId) {
+        PolicyRules r = getRules(tx, orgId, projectId, userId);
+        if (r == null) {
+            return null;
+        }
+        return getEngine(r);
+    }
+
+    /**
+     * Returns a (possibly shared) engine for the specified rules.
+     */
+    public PolicyEngine getEngine(PolicyRules policy) {
+        try {
+            // the engine gets its own copy, the caller's map can be modified later
+            return engines.get(policy.rulesHash(), () -> new PolicyEngine(copy(policy.rules())));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static String hash(Map<String, Object> rules) {
+        try {
+            byte[] ab = objectMapper.writeValueAsBytes(rules);
+            return Hashing.sha256().hashBytes(ab).toString();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, Object> copy(Map<String, Object> rules) {
+        try {
+            return objectMapper.readValue(objectMapper.writeValueAsBytes(rules), new TypeReference<Map<String, Object>>() {
+            });
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private PolicyRules getRules(LinkKey key, long version, Loader loader) {
+        CachedRules r = rules.getIfPresent(key);
+        if (r != null && r.version == version) {
+            return r.rules;
+        }
+
+        // the version is fetched before the data, entries loaded during
+        // a concurrent change are replaced on the next call
+        r = new CachedRules(version, loader.load());
+        rules.asMap().merge(key, r, (a, b) -> a.version > b.version ? a : b);
+
+        return r.rules;
+    }
+
+    private interface Loader {
+
+        PolicyRules load();
+    }
+
+    private static final class CachedRules {
+
+        private final long version;
+        private final PolicyRules rules;
+
+        private CachedRules(long version, PolicyRules rules) {
+            this.version = version;
+            this.rules = rules;
+        }
+    }
+
+    private static final class LinkKey {
+
+        private final UUID orgId;
+        private final UUID projectId;
+        private final UUID userId;
+
+        private LinkKey(UUID orgId, UUID projectId, UUID userId) {
+            this.orgId = orgId;
+            this.projectId = projectId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            LinkKey k = (LinkKey) o;
+            return Objects.equals(orgId, k.orgId) &&
+                    Objects.equals(projectId, k.projectId) &&
+                    Objects.equals(userId, k.userId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(orgId, projectId, userId);
+        }
+    }
+}
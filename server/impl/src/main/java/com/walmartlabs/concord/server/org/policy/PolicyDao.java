@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+import static com.walmartlabs.concord.server.jooq.Tables.CACHE_VERSIONS;
 import static com.walmartlabs.concord.server.jooq.Tables.POLICIES;
 import static com.walmartlabs.concord.server.jooq.Tables.POLICY_LINKS;
 import static org.jooq.impl.DSL.*;
@@ -42,6 +43,8 @@ import static org.jooq.impl.DSL.*;
 @Named
 public class PolicyDao extends AbstractDao {
 
+    private static final String CACHE_NAME = "policies";
+
     private final ObjectMapper objectMapper;
 
     @Inject
@@ -72,6 +75,25 @@ public class PolicyDao extends AbstractDao {
         }
     }
 
+    /**
+     * Returns the current version of the policies. The version is incremented
+     * by the DB triggers on every change of POLICIES and POLICY_LINKS.
+     */
+    public long getVersion() {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return getVersion(tx);
+        }
+    }
+
+    public long getVersion(DSLContext tx) {
+        Long v = tx.select(CACHE_VERSIONS.CACHE_VERSION)
+                .from(CACHE_VERSIONS)
+                .where(CACHE_VERSIONS.CACHE_NAME.eq(CACHE_NAME))
+                .fetchOne(CACHE_VERSIONS.CACHE_VERSION);
+
+        return v != null ? v : 0;
+    }
+
     public PolicyRules getRules(UUID orgId, UUID projectId, UUID userId) {
         try (DSLContext tx = DSL.using(cfg)) {
             return getRules(tx, orgId, projectId, userId);
@@ -32,4 +32,12 @@ public interface PolicyRules extends Serializable {
     List<String> policyNames();
 
     Map<String, Object> rules();
+
+    /**
+     * Hash of the {@link #rules()} content, calculated once.
+     */
+    @Value.Lazy
+    default String rulesHash() {
+        return PolicyCache.hash(rules());
+    }
 }
@@ -29,6 +29,7 @@ import org.jooq.impl.DSL;
 import javax.inject.Inject;
 import javax.inject.Named;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -89,6 +90,14 @@ public class RepositoryDao extends AbstractDao {
                 .fetchOne(this::toEntry));
     }
 
+    public List<RepositoryEntry> get(Collection<UUID> repoIds) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return selectRepositoryEntry(tx)
+                    .where(REPOSITORIES.REPO_ID.in(repoIds))
+                    .fetch(this::toEntry);
+        }
+    }
+
     public UUID insert(UUID projectId, String repositoryName, String url, String branch, String commitId, String path, UUID secretId, boolean disabled, Map<String, Object> meta) {
         return txResult(tx -> insert(tx, projectId, repositoryName, url, branch, commitId, path, secretId, disabled, meta));
     }
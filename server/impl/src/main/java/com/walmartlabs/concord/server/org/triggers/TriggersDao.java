@@ -45,6 +45,8 @@ import static org.jooq.impl.DSL.*;
 @Named
 public class TriggersDao extends AbstractDao {
 
+    private static final String CACHE_NAME = "triggers";
+
     private final ObjectMapper objectMapper;
 
     @Inject
@@ -105,6 +107,22 @@ public class TriggersDao extends AbstractDao {
                 .execute();
     }
 
+    /**
+     * Returns the current version of the trigger definitions. The version is
+     * incremented by the DB triggers on every change of TRIGGERS and of the
+     * project, repository and organization names included into the entries.
+     */
+    public long getVersion() {
+        try (DSLContext tx = DSL.using(cfg)) {
+            Long v = tx.select(CACHE_VERSIONS.CACHE_VERSION)
+                    .from(CACHE_VERSIONS)
+                    .where(CACHE_VERSIONS.CACHE_NAME.eq(CACHE_NAME))
+                    .fetchOne(CACHE_VERSIONS.CACHE_VERSION);
+
+            return v != null ? v : 0;
+        }
+    }
+
     public List<TriggerEntry> list(UUID projectId, UUID repositoryId) {
         try (DSLContext tx = DSL.using(cfg)) {
             SelectJoinStep<Record12<UUID, UUID, String, UUID, String, UUID, String, String, String[], String, String, String>> query = selectTriggers(tx);
@@ -133,6 +133,10 @@ public class ProcessManager {
         return queueDao.poll(capabilities);
     }
 
+    public List<ProcessQueueEntry> nextProcesses(Map<String, Object> capabilities, int maxEntries) {
+        return queueDao.poll(capabilities, maxEntries);
+    }
+
     public ProcessResult start(Payload payload, boolean sync) {
         return start(processPipeline, payload, sync);
     }
@@ -37,12 +37,15 @@ import com.walmartlabs.concord.server.process.PayloadManager.EntryPoint;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessStatusHistoryEntry;
 import com.walmartlabs.concord.server.process.ProcessEntry.ProcessWaitHistoryEntry;
 import com.walmartlabs.concord.server.process.ProcessManager.ProcessResult;
+import com.walmartlabs.concord.server.process.logs.LogManager;
+import com.walmartlabs.concord.server.process.logs.ProcessLogWatchers;
+import com.walmartlabs.concord.server.process.logs.ProcessLogWatchers.ProcessLogChunk;
 import com.walmartlabs.concord.server.process.logs.ProcessLogsDao;
-import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLog;
-import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogChunk;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogRange;
 import com.walmartlabs.concord.server.process.queue.ProcessFilter;
 import com.walmartlabs.concord.server.process.queue.ProcessKeyCache;
 import com.walmartlabs.concord.server.process.queue.ProcessQueueDao;
+import com.walmartlabs.concord.server.process.state.ProcessStateItem;
 import com.walmartlabs.concord.server.process.state.ProcessStateManager;
 import com.walmartlabs.concord.server.security.Roles;
 import com.walmartlabs.concord.server.security.UserPrincipal;
@@ -72,6 +75,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.path;
@@ -85,9 +89,13 @@ public class ProcessResource implements Resource {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessResource.class);
 
+    private static final int MAX_LOG_WAIT = 15;
+
     private final ProcessManager processManager;
     private final ProcessQueueDao queueDao;
     private final ProcessLogsDao logsDao;
+    private final LogManager logManager;
+    private final ProcessLogWatchers logWatchers;
     private final PayloadManager payloadManager;
     private final ProcessStateManager stateManager;
     private final SecretStoreConfiguration secretStoreCfg;
@@ -102,6 +110,8 @@ public class ProcessResource implements Resource {
     public ProcessResource(ProcessManager processManager,
                            ProcessQueueDao queueDao,
                            ProcessLogsDao logsDao,
+                           LogManager logManager,
+                           ProcessLogWatchers logWatchers,
                            PayloadManager payloadManager,
                            ProcessStateManager stateManager,
                            SecretStoreConfiguration secretStoreCfg,
@@ -116,6 +126,8 @@ public class ProcessResource implements Resource {
         this.processManager = processManager;
         this.queueDao = queueDao;
         this.logsDao = logsDao;
+        this.logManager = logManager;
+        this.logWatchers = logWatchers;
         this.payloadManager = payloadManager;
         this.stateManager = stateManager;
         this.secretStoreCfg = secretStoreCfg;
@@ -719,9 +731,21 @@ public class ProcessResource implements Resource {
 
     /**
      * Retrieves a process' log.
+     * <p>
+     * The returned data is trimmed to the requested range, the actual range
+     * is returned in the {@code Content-Range} header (the end is exclusive).
+     * The data is read from the DB in bounded pages while it is written.
+     * <p>
+     * If {@code wait} is specified and the range is open-ended (e.g. {@code bytes=100-}),
+     * the request waits up to {@code wait} seconds (max 15) for new data. This allows
+     * tailing the log without re-polling the DB. If there's no new data after
+     * the wait, the response is {@code 204 No Content}.
      *
      * @param instanceId
      * @param range
+     * @param ifRange
+     * @param ifNoneMatch
+     * @param wait
      * @return
      */
     @GET
@@ -730,7 +754,10 @@ public class ProcessResource implements Resource {
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     @WithTimer
     public Response getLog(@ApiParam @PathParam("id") UUID instanceId,
-                           @HeaderParam("range") String range) {
+                           @HeaderParam("range") String range,
+                           @HeaderParam("If-Range") String ifRange,
+                           @HeaderParam("If-None-Match") String ifNoneMatch,
+                           @ApiParam @QueryParam("wait") @DefaultValue("0") int wait) {
 
         ProcessKey processKey = assertKey(instanceId);
 
@@ -758,35 +785,141 @@ public class ProcessResource implements Resource {
             }
         }
 
-        ProcessLog l = logsDao.get(processKey, start, end);
-        List<ProcessLogChunk> data = l.getChunks();
+        if (wait > 0 && start != null && end == null) {
+            return tailLog(processKey, start, Math.min(wait, MAX_LOG_WAIT));
+        }
+
+        // logs are append-only, the size is enough to identify the current version of the log
+        EntityTag etag = new EntityTag(String.valueOf(logsDao.size(processKey)));
+
+        if (ifNoneMatch != null && matches(ifNoneMatch, etag)) {
+            return Response.notModified(etag).build();
+        }
+
+        if (ifRange != null && !matches(ifRange, etag)) {
+            // the log has changed, send the whole thing
+            start = null;
+            end = null;
+        }
+
+        ProcessLogRange r = logsDao.range(processKey, start, end);
         // TODO check if the instance actually exists
 
-        if (data.isEmpty()) {
+        if (r.isEmpty()) {
             int actualStart = start != null ? start : 0;
-            int actualEnd = end != null ? end : start;
+            int actualEnd = end != null ? end : actualStart;
             return Response.ok()
-                    .header("Content-Range", "bytes " + actualStart + "-" + actualEnd + "/" + l.getSize())
+                    .header("Content-Range", "bytes " + actualStart + "-" + actualEnd + "/" + r.getSize())
+                    .header("Accept-Ranges", "bytes")
+                    .tag(etag)
                     .build();
         }
 
-        ProcessLogChunk first = data.get(0);
-        int actualStart = first.getStart();
+        // trim the chunk-aligned range to the requested one
+        int actualStart = r.getStart();
+        int actualEnd = r.getEnd();
+        if (start != null) {
+            actualStart = Math.max(actualStart, start);
+            if (end != null) {
+                actualEnd = Math.min(actualEnd, end);
+            }
+        } else if (end != null) {
+            // last N bytes
+            actualStart = Math.max(actualStart, actualEnd - end);
+        }
 
-        ProcessLogChunk last = data.get(data.size() - 1);
-        int actualEnd = last.getStart() + last.getData().length;
+        boolean partial = start != null || end != null;
+        return streamLog(processKey, actualStart, actualEnd, r.getSize(), partial)
+                .tag(etag)
+                .build();
+    }
 
+    private Response tailLog(ProcessKey processKey, int start, int wait) {
+        // try the recent data first
+        List<ProcessLogChunk> chunks = logWatchers.get(processKey, start);
+
+        if (chunks == null || chunks.isEmpty()) {
+            // not in memory or caught up with the local data,
+            // the data might've been appended using another server
+            Response resp = streamLogIfAvailable(processKey, start);
+            if (resp != null) {
+                return resp;
+            }
+
+            try {
+                chunks = logWatchers.await(processKey, start, TimeUnit.SECONDS.toMillis(wait));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                chunks = null;
+            }
+        }
+
+        if (chunks == null || chunks.isEmpty()) {
+            // nothing received locally, check the DB once more
+            Response resp = streamLogIfAvailable(processKey, start);
+            if (resp != null) {
+                return resp;
+            }
+
+            // no new data, the client should retry
+            return Response.noContent()
+                    .header("Accept-Ranges", "bytes")
+                    .build();
+        }
+
+        int actualStart = chunks.get(0).getStart();
+        int actualEnd = chunks.get(chunks.size() - 1).getEnd();
+
+        List<ProcessLogChunk> data = chunks;
         StreamingOutput out = output -> {
-            for (ProcessLogChunk e : data) {
-                output.write(e.getData());
+            for (ProcessLogChunk c : data) {
+                output.write(c.getData());
             }
         };
 
-        return Response.ok(out)
-                .header("Content-Range", "bytes " + actualStart + "-" + actualEnd + "/" + l.getSize())
+        return Response.status(Status.PARTIAL_CONTENT)
+                .entity(out)
+                .header("Content-Range", "bytes " + actualStart + "-" + actualEnd + "/" + actualEnd)
+                .header(HttpHeaders.CONTENT_LENGTH, actualEnd - actualStart)
+                .header("Accept-Ranges", "bytes")
                 .build();
     }
 
+    /**
+     * Returns the log data after {@code start} or {@code null} if there's no data
+     * in the DB yet. In the latter case marks {@code start} as the current end of the log.
+     */
+    private Response streamLogIfAvailable(ProcessKey processKey, int start) {
+        ProcessLogRange r = logsDao.range(processKey, start, null);
+        if (!r.isEmpty()) {
+            return streamLog(processKey, Math.max(r.getStart(), start), r.getEnd(), r.getSize(), true).build();
+        }
+
+        logWatchers.seed(processKey, r.getSize());
+        return null;
+    }
+
+    private Response.ResponseBuilder streamLog(ProcessKey processKey, int start, int end, int size, boolean partial) {
+        StreamingOutput out = output -> logsDao.copy(processKey, start, end, output);
+
+        return Response.status(partial ? Status.PARTIAL_CONTENT : Status.OK)
+                .entity(out)
+                .header("Content-Range", "bytes " + start + "-" + end + "/" + size)
+                .header(HttpHeaders.CONTENT_LENGTH, end - start)
+                .header("Accept-Ranges", "bytes");
+    }
+
+    private static boolean matches(String header, EntityTag etag) {
+        String expected = etag.toString();
+        for (String s : header.split(",")) {
+            String t = s.trim();
+            if (t.equals("*") || t.equals(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Appends a process' log.
      *
@@ -801,7 +934,7 @@ public class ProcessResource implements Resource {
         ProcessKey processKey = processKeyCache.get(instanceId);
 
         try {
-            logsDao.append(processKey, ByteStreams.toByteArray(data));
+            logManager.append(processKey, ByteStreams.toByteArray(data));
         } catch (IOException e) {
             log.error("appendLog ['{}'] -> error", instanceId, e);
             throw new ConcordApplicationException("append log error: " + e.getMessage());
@@ -821,15 +954,53 @@ public class ProcessResource implements Resource {
 
         assertProcessStateAccess(entry);
 
-        StreamingOutput out = output -> {
-            try (ZipArchiveOutputStream dst = new ZipArchiveOutputStream(output)) {
-                stateManager.export(processKey, zipTo(dst));
-            }
-        };
+        return stateArchive(instanceId, dst -> stateManager.export(processKey, zipTo(dst)));
+    }
 
-        return Response.ok(out, "application/zip")
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + instanceId + ".zip\"")
-                .build();
+    /**
+     * Lists the items of the current state snapshot of a process.
+     * Returns an empty list for processes which weren't running before:
+     * the agents can reuse previously downloaded items only when resuming
+     * and should download the whole state otherwise.
+     */
+    @GET
+    @ApiOperation(value = "List the items of a process state snapshot", responseContainer = "list", response = ProcessStateItem.class)
+    @javax.ws.rs.Path("/{id}/state/manifest")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<ProcessStateItem> getStateManifest(@ApiParam @PathParam("id") UUID instanceId) {
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        assertProcessStateAccess(entry);
+
+        if (!queueDao.wasRunning(processKey)) {
+            return Collections.emptyList();
+        }
+
+        return stateManager.manifest(processKey);
+    }
+
+    /**
+     * Downloads the specified items of the current state snapshot of a process.
+     */
+    @POST
+    @ApiOperation(value = "Download the specified items of a process state snapshot", response = File.class)
+    @javax.ws.rs.Path("/{id}/state/snapshot")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces("application/zip")
+    public Response downloadStateItems(@ApiParam @PathParam("id") UUID instanceId,
+                                       @ApiParam List<String> paths) {
+
+        ProcessEntry entry = assertProcess(PartialProcessKey.from(instanceId));
+        ProcessKey processKey = ProcessKey.from(entry);
+
+        assertProcessStateAccess(entry);
+
+        if (paths == null || paths.isEmpty()) {
+            throw new ConcordApplicationException("The list of items is required", Status.BAD_REQUEST);
+        }
+
+        return stateArchive(instanceId, dst -> stateManager.exportItems(processKey, paths, zipTo(dst)));
     }
 
     /**
@@ -1047,6 +1218,28 @@ public class ProcessResource implements Resource {
         }
     }
 
+    /**
+     * Streams the state archive directly into the response. The state is read
+     * in pages, so no DB connection is held while the client downloads the data.
+     */
+    private static Response stateArchive(UUID instanceId, StateExporter exporter) {
+        StreamingOutput out = output -> {
+            try (ZipArchiveOutputStream dst = new ZipArchiveOutputStream(output)) {
+                exporter.export(dst);
+            }
+        };
+
+        return Response.ok(out, "application/zip")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + instanceId + ".zip\"")
+                .header(InternalConstants.Headers.STATE_UNIX_MODE, "asi")
+                .build();
+    }
+
+    private interface StateExporter {
+
+        void export(ZipArchiveOutputStream dst) throws IOException;
+    }
+
     private static Optional<Path> copyToTmp(InputStream in) {
         try {
             Path p = IOUtils.createTempFile("state", ".bin");
@@ -107,14 +107,7 @@ public class EventDao extends AbstractDao {
     }
 
     public void insert(DSLContext tx, List<ProcessKey> processKeys, String eventType, String eventData) {
-        String sql = tx.insertInto(PROCESS_EVENTS,
-                PROCESS_EVENTS.INSTANCE_ID,
-                PROCESS_EVENTS.INSTANCE_CREATED_AT,
-                PROCESS_EVENTS.EVENT_TYPE,
-                PROCESS_EVENTS.EVENT_DATE,
-                PROCESS_EVENTS.EVENT_DATA)
-                .values(value((UUID) null), null, null, currentTimestamp(), field("?::jsonb"))
-                .getSQL();
+        String sql = batchInsertSql(tx);
 
         tx.connection(conn -> {
             try (PreparedStatement ps = conn.prepareStatement(sql)) {
@@ -130,6 +123,43 @@ public class EventDao extends AbstractDao {
         });
     }
 
+    /**
+     * Inserts an event for each of the specified processes, {@code eventData}
+     * must be in the same order as {@code processKeys}.
+     */
+    public void insert(DSLContext tx, List<ProcessKey> processKeys, String eventType, List<String> eventData) {
+        if (processKeys.size() != eventData.size()) {
+            throw new IllegalArgumentException("The number of process keys and event data items must match");
+        }
+
+        String sql = batchInsertSql(tx);
+
+        tx.connection(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < processKeys.size(); i++) {
+                    ProcessKey pk = processKeys.get(i);
+                    ps.setObject(1, pk.getInstanceId());
+                    ps.setTimestamp(2, pk.getCreatedAt());
+                    ps.setString(3, eventType);
+                    ps.setString(4, eventData.get(i));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        });
+    }
+
+    private static String batchInsertSql(DSLContext tx) {
+        return tx.insertInto(PROCESS_EVENTS,
+                PROCESS_EVENTS.INSTANCE_ID,
+                PROCESS_EVENTS.INSTANCE_CREATED_AT,
+                PROCESS_EVENTS.EVENT_TYPE,
+                PROCESS_EVENTS.EVENT_DATE,
+                PROCESS_EVENTS.EVENT_DATA)
+                .values(value((UUID) null), null, null, currentTimestamp(), field("?::jsonb"))
+                .getSQL();
+    }
+
     private static ProcessEventEntry toEntry(Record4<UUID, String, Timestamp, String> r) {
         return ImmutableProcessEventEntry.builder()
                 .id(r.value1())
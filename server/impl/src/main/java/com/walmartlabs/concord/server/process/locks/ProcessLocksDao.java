@@ -24,12 +24,15 @@ import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
 import com.walmartlabs.concord.server.jooq.tables.ProcessLocks;
 import com.walmartlabs.concord.server.jooq.tables.records.ProcessLocksRecord;
+import com.walmartlabs.concord.server.process.queue.ProcessQueueNotificationListener;
+import com.walmartlabs.concord.server.process.queue.ProcessWaitIndex;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
 import org.jooq.SelectConditionStep;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.Collections;
 import java.util.UUID;
 
 import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCKS;
@@ -37,9 +40,12 @@ import static com.walmartlabs.concord.server.jooq.Tables.PROCESS_LOCKS;
 @Named
 public class ProcessLocksDao extends AbstractDao {
 
+    private final ProcessWaitIndex waitIndex;
+
     @Inject
-    protected ProcessLocksDao(@Named("app") Configuration cfg) {
+    protected ProcessLocksDao(@Named("app") Configuration cfg, ProcessWaitIndex waitIndex) {
         super(cfg);
+        this.waitIndex = waitIndex;
     }
 
     public LockEntry tryLock(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
@@ -71,7 +77,13 @@ public class ProcessLocksDao extends AbstractDao {
     }
 
     public void delete(UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
-        tx(tx -> delete(tx, instanceId, orgId, projectId, scope, lockName));
+        tx(tx -> {
+            delete(tx, instanceId, orgId, projectId, scope, lockName);
+            ProcessQueueNotificationListener.notifyReleased(tx, Collections.singletonList(instanceId));
+        });
+
+        // processes waiting for the lock can try to acquire it now
+        waitIndex.wakeUp(Collections.singletonList(instanceId));
     }
 
     private boolean insert(DSLContext tx, UUID instanceId, UUID orgId, UUID projectId, ProcessLockScope scope, String lockName) {
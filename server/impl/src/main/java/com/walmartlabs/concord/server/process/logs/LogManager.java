@@ -37,11 +37,11 @@ public class LogManager {
 
     private static final Logger log = LoggerFactory.getLogger(LogManager.class);
 
-    private final ProcessLogsDao logsDao;
+    private final ProcessLogsBuffer logsBuffer;
 
     @Inject
-    public LogManager(ProcessLogsDao logsDao) {
-        this.logsDao = logsDao;
+    public LogManager(ProcessLogsBuffer logsBuffer) {
+        this.logsBuffer = logsBuffer;
     }
 
     public void info(ProcessKey processKey, String log, Object... args) {
@@ -60,8 +60,22 @@ public class LogManager {
         log(processKey, msg.getBytes());
     }
 
+    /**
+     * Adds the message to the process log without waiting for the write.
+     * Used for the server's own messages, so the callers are not slowed down
+     * by the log writes.
+     */
     public void log(ProcessKey processKey, byte[] msg) {
-        logsDao.append(processKey, msg);
+        logsBuffer.appendAsync(processKey, msg);
+    }
+
+    /**
+     * Appends the data to the process log and waits until it is stored.
+     * Used for the data sent by the agents, so the acknowledgement reflects
+     * the stored data.
+     */
+    public void append(ProcessKey processKey, byte[] data) {
+        logsBuffer.append(processKey, data);
     }
 
     private void log(ProcessKey processKey, LogLevel level, String msg, Object... args) {
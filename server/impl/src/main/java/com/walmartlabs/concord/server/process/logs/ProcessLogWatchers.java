@@ -0,0 +1,241 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.walmartlabs.concord.server.process.ProcessKey;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent log chunks of the processes that someone is watching
+ * (e.g. tails the log in the UI), so the watchers can receive new data without
+ * querying the DB. The watchers of the same process share the same buffer.
+ * <p>
+ * The data is received only from the current server instance, the watchers
+ * must fall back to the DB when the requested data is not available.
+ * <p>
+ * The number of concurrent {@link #await(ProcessKey, int, long)} calls is limited,
+ * each waiter occupies a request thread.
+ */
+@Named
+@Singleton
+public class ProcessLogWatchers {
+
+    private static final int MAX_TAIL_SIZE = 256 * 1024;
+    private static final int MAX_WATCHED_PROCESSES = 1000;
+    private static final long MAX_IDLE_TIME = 60;
+    private static final int MAX_WAITERS = 100;
+
+    private final Cache<ProcessKey, Tail> tails = CacheBuilder.newBuilder()
+            .maximumSize(MAX_WATCHED_PROCESSES)
+            .expireAfterAccess(MAX_IDLE_TIME, TimeUnit.SECONDS)
+            .build();
+
+    private final Semaphore waiters;
+
+    @Inject
+    public ProcessLogWatchers() {
+        this(MAX_WAITERS);
+    }
+
+    ProcessLogWatchers(int maxWaiters) {
+        this.waiters = new Semaphore(maxWaiters);
+    }
+
+    /**
+     * Notifies the watchers about a new chunk written into the DB.
+     */
+    public void onAppend(ProcessKey processKey, int start, byte[] data) {
+        Tail t = tails.getIfPresent(processKey);
+        if (t == null) {
+            // no one's watching
+            return;
+        }
+
+        t.append(start, data);
+    }
+
+    /**
+     * Returns the chunks overlapping with {@code [offset, ...)} without waiting.
+     *
+     * @return the chunks, an empty list if there's no data after the offset yet
+     * or {@code null} if the data is not available in memory (including offsets
+     * past the known end of the log, e.g. the data appended on another server).
+     */
+    public List<ProcessLogChunk> get(ProcessKey processKey, int offset) {
+        return tail(processKey).get(offset);
+    }
+
+    /**
+     * Marks the specified offset as the current end of the log. Should be
+     * called when the DB has no data after the offset. If the offset is past
+     * the known end, the retained chunks are dropped.
+     */
+    public void seed(ProcessKey processKey, int offset) {
+        tail(processKey).seed(offset);
+    }
+
+    /**
+     * Same as {@link #get(ProcessKey, int)}, but waits up to {@code timeout}
+     * milliseconds for new data. Doesn't wait if there are too many waiters already.
+     */
+    public List<ProcessLogChunk> await(ProcessKey processKey, int offset, long timeout) throws InterruptedException {
+        Tail t = tail(processKey);
+
+        if (!waiters.tryAcquire()) {
+            return t.get(offset);
+        }
+
+        try {
+            return t.await(offset, timeout);
+        } finally {
+            waiters.release();
+        }
+    }
+
+    private Tail tail(ProcessKey processKey) {
+        try {
+            return tails.get(processKey, Tail::new);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static final class ProcessLogChunk implements Serializable {
+
+        private final int start;
+        private final byte[] data;
+
+        public ProcessLogChunk(int start, byte[] data) { // NOSONAR
+            this.start = start;
+            this.data = data;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return start + data.length;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * Contiguous sequence of the most recent chunks of a process.
+     */
+    private static final class Tail {
+
+        private final Deque<ProcessLogChunk> chunks = new ArrayDeque<>();
+        private int size;
+
+        /**
+         * End of the log or {@code null} if unknown.
+         */
+        private Integer end;
+
+        synchronized void append(int start, byte[] data) {
+            if (end != null && start != end) {
+                // missed some data (e.g. appended using another server instance), start over
+                chunks.clear();
+                size = 0;
+            }
+
+            chunks.addLast(new ProcessLogChunk(start, data));
+            size += data.length;
+            end = start + data.length;
+
+            while (size > MAX_TAIL_SIZE && chunks.size() > 1) {
+                size -= chunks.removeFirst().getData().length;
+            }
+
+            notifyAll();
+        }
+
+        synchronized void seed(int offset) {
+            if (end == null || offset > end) {
+                chunks.clear();
+                size = 0;
+                end = offset;
+            }
+        }
+
+        synchronized List<ProcessLogChunk> get(int offset) {
+            if (end == null) {
+                return null;
+            }
+
+            if (offset == end) {
+                return new ArrayList<>();
+            }
+
+            if (offset > end) {
+                // the data must've been appended elsewhere
+                return null;
+            }
+
+            ProcessLogChunk first = chunks.peekFirst();
+            if (first == null || offset < first.getStart()) {
+                return null;
+            }
+
+            List<ProcessLogChunk> result = new ArrayList<>();
+            for (ProcessLogChunk c : chunks) {
+                if (c.getEnd() > offset) {
+                    result.add(c);
+                }
+            }
+            return result;
+        }
+
+        synchronized List<ProcessLogChunk> await(int offset, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while (true) {
+                List<ProcessLogChunk> result = get(offset);
+                if (result == null || !result.isEmpty()) {
+                    return result;
+                }
+
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    return result;
+                }
+
+                wait(left);
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.ProcessLogsConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces process log chunks and writes them into the DB using
+ * {@link ProcessLogsDao#appendAll(Map)}. Each write produces at most
+ * one chunk per process, the chunks are written in the order they were
+ * received.
+ * <p>
+ * {@link #append(ProcessKey, byte[])} returns only after the data is written
+ * (group commit), so the caller's acknowledgement always reflects the stored
+ * data and the chunk ranges are assigned in the order the chunks were
+ * acknowledged, regardless of which server received them. The appender
+ * doesn't wait for the periodic flush: if no write is in progress the data
+ * is written immediately, otherwise the data of all appenders that arrived
+ * during the write is written together right after it.
+ * <p>
+ * {@link #appendAsync(ProcessKey, byte[])} doesn't wait, the data is written
+ * with the next write or the next periodic flush.
+ */
+@Named
+@Singleton
+public class ProcessLogsBuffer extends PeriodicTask {
+
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final ProcessLogsDao logsDao;
+    private final ProcessLogWatchers watchers;
+    private final boolean enabled;
+    private final int maxBufferSize;
+
+    /**
+     * Serializes the DB writes, otherwise two concurrent flushes could
+     * write chunks of the same process out of order.
+     */
+    private final Object flushLock = new Object();
+
+    // guarded by "this"
+    private Batch pending = new Batch();
+    private int bufferSize;
+    private boolean stopped;
+
+    @Inject
+    public ProcessLogsBuffer(ProcessLogsConfiguration cfg, ProcessLogsDao logsDao, ProcessLogWatchers watchers) {
+        super(cfg.getFlushInterval(), ERROR_DELAY);
+
+        this.logsDao = logsDao;
+        this.watchers = watchers;
+        this.enabled = cfg.getFlushInterval() > 0;
+        this.maxBufferSize = cfg.getMaxBufferSize();
+    }
+
+    /**
+     * Appends the data and waits until it is written into the DB.
+     */
+    public void append(ProcessKey processKey, byte[] data) {
+        CompletableFuture<Void> f = enqueue(processKey, data);
+
+        if (!f.isDone()) {
+            // the first appender to get the lock writes everything buffered so far,
+            // including the data of the appenders waiting for the lock
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // the error is reported using the future, the failed batch could belong to another appender
+            }
+        }
+
+        try {
+            f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while writing the log data of " + processKey);
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Appends the data without waiting for the write. Write errors are not
+     * reported to the caller.
+     */
+    public void appendAsync(ProcessKey processKey, byte[] data) {
+        enqueue(processKey, data);
+    }
+
+    /**
+     * Adds the data to the current batch.
+     *
+     * @return a future which completes when the batch is written
+     */
+    CompletableFuture<Void> enqueue(ProcessKey processKey, byte[] data) {
+        if (processKey == null) {
+            throw new IllegalArgumentException("Process key is required");
+        }
+
+        if (!enabled || isStopped()) {
+            Map<ProcessKey, byte[]> m = Collections.singletonMap(processKey, data);
+            notifyWatchers(logsDao.appendAll(m), m);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (getBufferSize() + data.length > maxBufferSize) {
+            // the flusher can't keep up, write the data using the caller's thread
+            flush();
+        }
+
+        synchronized (this) {
+            pending.add(processKey, data);
+            bufferSize += data.length;
+            return pending.future;
+        }
+    }
+
+    /**
+     * Writes all buffered data.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Batch b;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+
+                b = pending;
+                pending = new Batch();
+                bufferSize = 0;
+            }
+
+            Map<ProcessKey, byte[]> data = b.toMap();
+
+            Map<ProcessKey, Integer> offsets;
+            try {
+                offsets = logsDao.appendAll(data);
+            } catch (RuntimeException e) {
+                // the appenders receive the error, the data is not retried
+                b.future.completeExceptionally(e);
+                throw e;
+            }
+
+            notifyWatchers(offsets, data);
+            b.future.complete(null);
+        }
+    }
+
+    public synchronized int getBufferSize() {
+        return bufferSize;
+    }
+
+    public synchronized int getBufferedProcessCount() {
+        return pending.data.size();
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+
+        synchronized (this) {
+            stopped = true;
+        }
+
+        if (enabled) {
+            flush();
+        }
+    }
+
+    @Override
+    protected void performTask() {
+        flush();
+    }
+
+    private synchronized boolean isStopped() {
+        return stopped;
+    }
+
+    private void notifyWatchers(Map<ProcessKey, Integer> offsets, Map<ProcessKey, byte[]> data) {
+        offsets.forEach((k, start) -> watchers.onAppend(k, start, data.get(k)));
+    }
+
+    private static final class Batch {
+
+        private final Map<ProcessKey, ByteArrayOutputStream> data = new HashMap<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private void add(ProcessKey processKey, byte[] ab) {
+            data.computeIfAbsent(processKey, k -> new ByteArrayOutputStream())
+                    .write(ab, 0, ab.length);
+        }
+
+        private boolean isEmpty() {
+            return data.isEmpty();
+        }
+
+        private Map<ProcessKey, byte[]> toMap() {
+            Map<ProcessKey, byte[]> result = new HashMap<>(data.size());
+            data.forEach((k, v) -> result.put(k, v.toByteArray()));
+            return result;
+        }
+    }
+}
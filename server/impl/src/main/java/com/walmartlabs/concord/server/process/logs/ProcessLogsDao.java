@@ -20,19 +20,21 @@ package com.walmartlabs.concord.server.process.logs;
  * =====
  */
 
+import com.google.common.collect.Iterables;
 import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.server.jooq.tables.records.ProcessLogsRecord;
+import com.walmartlabs.concord.server.metrics.WithTimer;
 import com.walmartlabs.concord.server.process.ProcessKey;
-import org.jooq.Configuration;
-import org.jooq.DSLContext;
-import org.jooq.Record2;
+import org.jooq.*;
 import org.jooq.impl.DSL;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
 import java.sql.Timestamp;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.jooq.Routines.processLogLastNBytes2;
 import static com.walmartlabs.concord.server.jooq.Routines.processLogNextRange2;
@@ -43,6 +45,9 @@ import static org.jooq.impl.DSL.*;
 @Named
 public class ProcessLogsDao extends AbstractDao {
 
+    private static final int MAX_INSERT_ROWS = 1000;
+    private static final int COPY_PAGE_SIZE = 64;
+
     @Inject
     public ProcessLogsDao(@Named("app") Configuration cfg) {
         super(cfg);
@@ -64,103 +69,211 @@ public class ProcessLogsDao extends AbstractDao {
                 .execute());
     }
 
-    public ProcessLog get(ProcessKey processKey, Integer start, Integer end) {
+    /**
+     * Appends the data of multiple processes using a single multi-row insert.
+     * Only one chunk per process is allowed, otherwise the chunk ranges would
+     * overlap.
+     *
+     * @return the start offsets of the inserted chunks
+     */
+    @WithTimer
+    public Map<ProcessKey, Integer> appendAll(Map<ProcessKey, byte[]> data) {
+        if (data.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return txResult(tx -> {
+            Map<ProcessKey, Integer> result = new HashMap<>(data.size());
+
+            for (List<Map.Entry<ProcessKey, byte[]>> batch : Iterables.partition(data.entrySet(), MAX_INSERT_ROWS)) {
+                InsertValuesStep4<ProcessLogsRecord, UUID, Timestamp, Object, byte[]> q = tx.insertInto(PROCESS_LOGS)
+                        .columns(PROCESS_LOGS.INSTANCE_ID,
+                                PROCESS_LOGS.INSTANCE_CREATED_AT,
+                                PROCESS_LOGS.CHUNK_RANGE,
+                                PROCESS_LOGS.CHUNK_DATA);
+
+                Map<UUID, ProcessKey> keys = new HashMap<>(batch.size());
+                for (Map.Entry<ProcessKey, byte[]> e : batch) {
+                    UUID instanceId = e.getKey().getInstanceId();
+                    Timestamp createdAt = e.getKey().getCreatedAt();
+                    byte[] ab = e.getValue();
+
+                    q.values(value(instanceId),
+                            value(createdAt),
+                            processLogNextRange2(instanceId, createdAt, ab.length),
+                            value(ab));
+
+                    keys.put(instanceId, e.getKey());
+                }
+
+                q.returning(PROCESS_LOGS.INSTANCE_ID, PROCESS_LOGS.CHUNK_RANGE)
+                        .fetch()
+                        .forEach(r -> result.put(keys.get(r.getInstanceId()), lowerBound(r.getChunkRange())));
+            }
+
+            return result;
+        });
+    }
+
+    public int size(ProcessKey processKey) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return size(tx, processKey);
+        }
+    }
+
+    /**
+     * Returns the boundaries of the chunks overlapping with the specified range.
+     * The returned range is aligned to the chunk boundaries.
+     *
+     * @param start start of the range or {@code null} to return the last {@code end} bytes
+     * @param end   end of the range (exclusive) or {@code null}
+     */
+    public ProcessLogRange range(ProcessKey processKey, Integer start, Integer end) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
+        Field<Integer> lowerBound = field("min(lower(" + PROCESS_LOGS.CHUNK_RANGE + "))", Integer.class);
+        Field<Integer> upperBound = field("max(upper(" + PROCESS_LOGS.CHUNK_RANGE + "))", Integer.class);
+
+        Condition byKey = PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
+                .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt));
+
         try (DSLContext tx = DSL.using(cfg)) {
-            List<ProcessLogChunk> chunks = getChunks(tx, processKey, start, end);
+            Record2<Integer, Integer> r;
+            if (start == null && end == null) {
+                // entire file
+                r = tx.select(lowerBound, upperBound)
+                        .from(PROCESS_LOGS)
+                        .where(byKey)
+                        .fetchOne();
+
+            } else if (start != null) {
+                // ranges && [start, end)
+                String rangeExpr = PROCESS_LOGS.CHUNK_RANGE.getName() + " && int4range(?, ?)";
+                r = tx.select(lowerBound, upperBound)
+                        .from(PROCESS_LOGS)
+                        .where(byKey.and(rangeExpr, start, end))
+                        .fetchOne();
 
-            int size = tx.select(V_PROCESS_LOGS_SIZE.SIZE)
-                    .from(V_PROCESS_LOGS_SIZE)
-                    .where(V_PROCESS_LOGS_SIZE.INSTANCE_ID.eq(instanceId)
-                            .and(V_PROCESS_LOGS_SIZE.INSTANCE_CREATED_AT.eq(createdAt)))
-                    .fetchOptional(V_PROCESS_LOGS_SIZE.SIZE)
-                    .orElse(0);
+            } else {
+                // ranges && [upper_bound - end, upper_bound)
+                String rangeExpr = PROCESS_LOGS.CHUNK_RANGE.getName() + " && (select range from x)";
+                r = tx.with("x").as(select(processLogLastNBytes2(instanceId, createdAt, end).as("range")))
+                        .select(lowerBound, upperBound)
+                        .from(PROCESS_LOGS)
+                        .where(byKey.and(rangeExpr))
+                        .fetchOne();
+            }
 
-            return new ProcessLog(size, chunks);
+            int size = size(tx, processKey);
+
+            if (r == null || r.value1() == null) {
+                return new ProcessLogRange(null, null, size);
+            }
+
+            // new chunks might've been added after the size was calculated
+            return new ProcessLogRange(r.value1(), r.value2(), Math.max(size, r.value2()));
         }
     }
 
-    private List<ProcessLogChunk> getChunks(DSLContext tx, ProcessKey processKey, Integer start, Integer end) {
+    /**
+     * Writes the log data within {@code [start, end)} to the provided output
+     * stream. The output is trimmed to the range. The chunks are fetched in
+     * pages of {@link #COPY_PAGE_SIZE}, so the memory usage doesn't depend on
+     * the size of the log and no DB connection is held while the data is written.
+     */
+    public void copy(ProcessKey processKey, int start, int end, OutputStream out) throws IOException {
         UUID instanceId = processKey.getInstanceId();
         Timestamp createdAt = processKey.getCreatedAt();
 
-        String lowerBoundExpr = "lower(" + PROCESS_LOGS.CHUNK_RANGE + ")";
-
-        if (start == null && end == null) {
-            // entire file
-            return tx.select(field(lowerBoundExpr), PROCESS_LOGS.CHUNK_DATA)
-                    .from(PROCESS_LOGS)
-                    .where(PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt)))
-                    .orderBy(PROCESS_LOGS.CHUNK_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else if (start != null) {
-            // ranges && [start, end)
-            String rangeExpr = PROCESS_LOGS.CHUNK_RANGE.getName() + " && int4range(?, ?)";
-            return tx.select(field(lowerBoundExpr), PROCESS_LOGS.CHUNK_DATA)
-                    .from(PROCESS_LOGS)
-                    .where(PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(rangeExpr, start, end))
-                    .orderBy(PROCESS_LOGS.CHUNK_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-
-        } else {
-            // ranges && [upper_bound - end, upper_bound)
-            String rangeExpr = PROCESS_LOGS.CHUNK_RANGE.getName() + " && (select range from x)";
-            return tx.with("x").as(select(processLogLastNBytes2(instanceId, createdAt, end).as("range")))
-                    .select(field(lowerBoundExpr), PROCESS_LOGS.CHUNK_DATA)
-                    .from(PROCESS_LOGS)
-                    .where(PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt))
-                            .and(rangeExpr, instanceId, end))
-                    .orderBy(PROCESS_LOGS.CHUNK_RANGE)
-                    .fetch(ProcessLogsDao::toChunk);
-        }
-    }
+        String rangeExpr = PROCESS_LOGS.CHUNK_RANGE.getName() + " && int4range(?, ?)";
+        Field<Integer> lowerBound = field("lower(" + PROCESS_LOGS.CHUNK_RANGE + ")", Integer.class);
 
-    private static ProcessLogChunk toChunk(Record2<Object, byte[]> r) {
-        return new ProcessLogChunk((Integer) r.value1(), r.value2());
-    }
+        int pos = start;
+        while (pos < end) {
+            Result<Record2<Integer, byte[]>> chunks;
+            try (DSLContext tx = DSL.using(cfg)) {
+                chunks = tx.select(lowerBound, PROCESS_LOGS.CHUNK_DATA)
+                        .from(PROCESS_LOGS)
+                        .where(PROCESS_LOGS.INSTANCE_ID.eq(instanceId)
+                                .and(PROCESS_LOGS.INSTANCE_CREATED_AT.eq(createdAt))
+                                .and(rangeExpr, pos, end))
+                        .orderBy(PROCESS_LOGS.CHUNK_RANGE)
+                        .limit(COPY_PAGE_SIZE)
+                        .fetch();
+            }
 
-    public static final class ProcessLogChunk implements Serializable {
+            if (chunks.isEmpty()) {
+                break;
+            }
 
-        private final int start;
-        private final byte[] data;
+            for (Record2<Integer, byte[]> r : chunks) {
+                int chunkStart = r.value1();
+                byte[] ab = r.value2();
 
-        public ProcessLogChunk(int start, byte[] data) { // NOSONAR
-            this.start = start;
-            this.data = data;
-        }
+                int from = Math.max(pos, chunkStart) - chunkStart;
+                int to = Math.min(end, chunkStart + ab.length) - chunkStart;
+                if (to > from) {
+                    out.write(ab, from, to - from);
+                }
 
-        public int getStart() {
-            return start;
+                pos = chunkStart + ab.length;
+            }
         }
+    }
 
-        public byte[] getData() {
-            return data;
-        }
+    /**
+     * Parses the lower bound of a canonical int4range value, e.g. {@code [0,100)}.
+     */
+    private static int lowerBound(Object range) {
+        String s = String.valueOf(range);
+        return Integer.parseInt(s.substring(1, s.indexOf(',')));
+    }
+
+    private static int size(DSLContext tx, ProcessKey processKey) {
+        return tx.select(V_PROCESS_LOGS_SIZE.SIZE)
+                .from(V_PROCESS_LOGS_SIZE)
+                .where(V_PROCESS_LOGS_SIZE.INSTANCE_ID.eq(processKey.getInstanceId())
+                        .and(V_PROCESS_LOGS_SIZE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
+                .fetchOptional(V_PROCESS_LOGS_SIZE.SIZE)
+                .orElse(0);
     }
 
-    public static final class ProcessLog implements Serializable {
+    public static final class ProcessLogRange implements Serializable {
 
+        private final Integer start;
+        private final Integer end;
         private final int size;
-        private final List<ProcessLogChunk> chunks;
 
-        public ProcessLog(int size, List<ProcessLogChunk> chunks) {
+        public ProcessLogRange(Integer start, Integer end, int size) {
+            this.start = start;
+            this.end = end;
             this.size = size;
-            this.chunks = chunks;
         }
 
+        /**
+         * @return start of the first chunk or {@code null} if there's no data in the range
+         */
+        public Integer getStart() {
+            return start;
+        }
+
+        /**
+         * @return end (exclusive) of the last chunk or {@code null} if there's no data in the range
+         */
+        public Integer getEnd() {
+            return end;
+        }
+
+        /**
+         * @return total size of the log
+         */
         public int getSize() {
             return size;
         }
 
-        public List<ProcessLogChunk> getChunks() {
-            return chunks;
+        public boolean isEmpty() {
+            return start == null;
         }
     }
 }
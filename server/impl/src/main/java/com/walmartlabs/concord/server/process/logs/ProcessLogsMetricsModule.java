@@ -0,0 +1,59 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Gauge;
+import com.google.inject.AbstractModule;
+import com.google.inject.multibindings.Multibinder;
+import com.walmartlabs.concord.server.metrics.GaugeProvider;
+
+import javax.inject.Named;
+import javax.inject.Provider;
+import java.util.function.Function;
+
+@Named
+public class ProcessLogsMetricsModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        Provider<ProcessLogsBuffer> bufferProvider = getProvider(ProcessLogsBuffer.class);
+
+        Multibinder<GaugeProvider> gauges = Multibinder.newSetBinder(binder(), GaugeProvider.class);
+        gauges.addBinding().toInstance(createGauge("process-logs-buffer-size", bufferProvider, ProcessLogsBuffer::getBufferSize));
+        gauges.addBinding().toInstance(createGauge("process-logs-buffer-processes", bufferProvider, ProcessLogsBuffer::getBufferedProcessCount));
+    }
+
+    private static GaugeProvider<Integer> createGauge(String name, Provider<ProcessLogsBuffer> bufferProvider,
+                                                      Function<ProcessLogsBuffer, Integer> f) {
+
+        return new GaugeProvider<Integer>() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Gauge<Integer> gauge() {
+                return () -> f.apply(bufferProvider.get());
+            }
+        };
+    }
+}
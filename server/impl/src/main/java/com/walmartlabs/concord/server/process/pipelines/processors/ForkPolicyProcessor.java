@@ -23,8 +23,8 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.policyengine.CheckResult;
 import com.walmartlabs.concord.policyengine.ForkDepthRule;
-import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.metrics.WithTimer;
+import com.walmartlabs.concord.server.org.policy.PolicyCache;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
@@ -53,11 +53,13 @@ public class ForkPolicyProcessor implements PayloadProcessor {
 
     private final LogManager logManager;
     private final ForkDepthDao forkDepthDao;
+    private final PolicyCache policyCache;
 
     @Inject
-    public ForkPolicyProcessor(LogManager logManager, ForkDepthDao forkDepthDao) {
+    public ForkPolicyProcessor(LogManager logManager, ForkDepthDao forkDepthDao, PolicyCache policyCache) {
         this.logManager = logManager;
         this.forkDepthDao = forkDepthDao;
+        this.policyCache = policyCache;
     }
 
     @Override
@@ -74,7 +76,7 @@ public class ForkPolicyProcessor implements PayloadProcessor {
 
         CheckResult<ForkDepthRule, Integer> result;
         try {
-            result = new PolicyEngine(policy.rules())
+            result = policyCache.getEngine(policy)
                     .getForkDepthPolicy()
                     .check(() -> forkDepthDao.getDepth(parentInstanceId));
         } catch (Exception e) {
@@ -22,7 +22,7 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.walmartlabs.concord.project.InternalConstants;
-import com.walmartlabs.concord.server.org.policy.PolicyDao;
+import com.walmartlabs.concord.server.org.policy.PolicyCache;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
@@ -42,13 +42,13 @@ import java.util.UUID;
 @Named
 public class PolicyExportProcessor implements PayloadProcessor {
 
-    private final PolicyDao policyDao;
+    private final PolicyCache policyCache;
     private final LogManager logManager;
     private final ObjectMapper objectMapper;
 
     @Inject
-    public PolicyExportProcessor(PolicyDao policyDao, LogManager logManager) {
-        this.policyDao = policyDao;
+    public PolicyExportProcessor(PolicyCache policyCache, LogManager logManager) {
+        this.policyCache = policyCache;
         this.logManager = logManager;
         this.objectMapper = new ObjectMapper();
     }
@@ -61,7 +61,7 @@ public class PolicyExportProcessor implements PayloadProcessor {
         UUID projectId = payload.getHeader(Payload.PROJECT_ID);
         UUID userId = payload.getHeader(Payload.INITIATOR_ID);
 
-        PolicyRules policy = policyDao.getRules(orgId, projectId, userId);
+        PolicyRules policy = policyCache.getRules(orgId, projectId, userId);
         if (policy == null) {
             return chain.process(payload);
         }
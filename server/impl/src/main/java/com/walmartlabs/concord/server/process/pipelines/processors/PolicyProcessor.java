@@ -20,6 +20,8 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
  * =====
  */
 
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import com.walmartlabs.concord.server.org.policy.PolicyCache;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
@@ -29,7 +31,6 @@ import com.walmartlabs.concord.server.process.pipelines.processors.policy.Policy
 
 import javax.inject.Inject;
 import javax.inject.Named;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -40,11 +41,13 @@ public class PolicyProcessor implements PayloadProcessor {
 
     private final LogManager logManager;
     private final Set<PolicyApplier> appliers;
+    private final PolicyCache policyCache;
 
     @Inject
-    public PolicyProcessor(LogManager logManager, Set<PolicyApplier> appliers) {
+    public PolicyProcessor(LogManager logManager, Set<PolicyApplier> appliers, PolicyCache policyCache) {
         this.logManager = logManager;
         this.appliers = appliers;
+        this.policyCache = policyCache;
     }
 
     @Override
@@ -57,12 +60,13 @@ public class PolicyProcessor implements PayloadProcessor {
         }
 
         logManager.info(processKey, "Applying policies...");
-        Map<String, Object> rules = policy.rules();
 
         try {
+            PolicyEngine policyEngine = policyCache.getEngine(policy);
+
             // TODO merge check results
             for (PolicyApplier a : appliers) {
-                a.apply(payload, rules);
+                a.apply(payload, policyEngine);
             }
         } catch (ProcessException e) {
             throw e;
@@ -22,9 +22,9 @@ package com.walmartlabs.concord.server.process.pipelines.processors;
 
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.policyengine.CheckResult;
-import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.ExtraStatus;
 import com.walmartlabs.concord.server.metrics.WithTimer;
+import com.walmartlabs.concord.server.org.policy.PolicyCache;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
 import com.walmartlabs.concord.server.process.Payload;
 import com.walmartlabs.concord.server.process.ProcessException;
@@ -54,10 +54,12 @@ public class QueuePolicyProcessor implements PayloadProcessor {
     private static final String DEFAULT_POLICY_MESSAGE = "Maximum number of {0} processes exceeded: current {1}, limit {2}";
 
     private final QueueMetricsDao dao;
+    private final PolicyCache policyCache;
 
     @Inject
-    public QueuePolicyProcessor(QueueMetricsDao dao) {
+    public QueuePolicyProcessor(QueueMetricsDao dao, PolicyCache policyCache) {
         this.dao = dao;
+        this.policyCache = policyCache;
     }
 
     @Override
@@ -74,7 +76,7 @@ public class QueuePolicyProcessor implements PayloadProcessor {
 
         CheckResult<ProcessRule, Integer> result;
         try {
-            result = new PolicyEngine(policy.rules())
+            result = policyCache.getEngine(policy)
                     .getQueueProcessPolicy()
                     .check(statuses -> dao.metrics(orgId, prjId, statuses));
         } catch (Exception e) {
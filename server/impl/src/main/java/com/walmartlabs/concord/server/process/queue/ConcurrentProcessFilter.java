@@ -22,7 +22,7 @@ package com.walmartlabs.concord.server.process.queue;
 
 import com.walmartlabs.concord.policyengine.PolicyEngine;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
-import com.walmartlabs.concord.server.org.policy.PolicyDao;
+import com.walmartlabs.concord.server.org.policy.PolicyCache;
 import com.walmartlabs.concord.server.org.policy.PolicyRules;
 import com.walmartlabs.concord.server.process.ProcessStatus;
 import org.jooq.DSLContext;
@@ -48,12 +48,14 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             ProcessStatus.RUNNING,
             ProcessStatus.RESUMING);
 
-    private final PolicyDao policyDao;
+    private final PolicyCache policyCache;
+    private final ProcessCounterDao counterDao;
 
     @Inject
-    public ConcurrentProcessFilter(PolicyDao policyDao, ProcessQueueDao processQueueDao) {
+    public ConcurrentProcessFilter(PolicyCache policyCache, ProcessQueueDao processQueueDao, ProcessCounterDao counterDao) {
         super(processQueueDao);
-        this.policyDao = policyDao;
+        this.policyCache = policyCache;
+        this.counterDao = counterDao;
     }
 
     @Override
@@ -63,12 +65,13 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             return Collections.emptyList();
         }
 
-        List<UUID> processes = findProcesses(tx, item.projectId());
-        if (pe.getConcurrentProcessPolicy().check(processes.size()).getDeny().isEmpty()) {
+        // check the counter first, the IDs are needed only for the wait condition
+        int count = counterDao.count(tx, item.projectId(), RUNNING_PROCESS_STATUSES, false);
+        if (pe.getConcurrentProcessPolicy().check(count).getDeny().isEmpty()) {
             return Collections.emptyList();
         }
 
-        return processes;
+        return findProcesses(tx, item.projectId());
     }
 
     @Override
@@ -85,13 +88,11 @@ public class ConcurrentProcessFilter extends WaitProcessFinishFilter {
             return null;
         }
 
-        PolicyRules policy = policyDao.getRules(tx, orgId, prjId, userId);
-        if (policy == null) {
+        PolicyEngine pe = policyCache.getEngine(tx, orgId, prjId, userId);
+        if (pe == null) {
             return null;
         }
 
-        // TODO caching? use a global singleton?
-        PolicyEngine pe = new PolicyEngine(policy.rules());
         return pe.getConcurrentProcessPolicy().hasRule() ? pe : null;
     }
 
@@ -51,9 +51,12 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
             ProcessStatus.RUNNING,
             ProcessStatus.RESUMING);
 
+    private final ProcessCounterDao counterDao;
+
     @Inject
-    public ExclusiveProcessFilter(ProcessQueueDao processQueueDao) {
+    public ExclusiveProcessFilter(ProcessQueueDao processQueueDao, ProcessCounterDao counterDao) {
         super(processQueueDao);
+        this.counterDao = counterDao;
     }
 
     @Override
@@ -62,6 +65,11 @@ public class ExclusiveProcessFilter extends WaitProcessFinishFilter {
             return Collections.emptyList();
         }
 
+        // nothing to wait for, skip the actual query
+        if (counterDao.count(tx, item.projectId(), RUNNING_PROCESS_STATUSES, !item.exclusive()) == 0) {
+            return Collections.emptyList();
+        }
+
         ProcessQueue q = ProcessQueue.PROCESS_QUEUE.as("q");
         SelectConditionStep<Record1<UUID>> s = tx.select(q.INSTANCE_ID)
                 .from(q)
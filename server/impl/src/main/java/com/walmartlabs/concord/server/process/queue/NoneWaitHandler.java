@@ -20,11 +20,10 @@ package com.walmartlabs.concord.server.process.queue;
  * =====
  */
 
-import com.walmartlabs.concord.server.process.ProcessStatus;
-
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.UUID;
+import java.util.ArrayList;
+import java.util.List;
 
 @Named
 @Singleton
@@ -36,7 +35,11 @@ public class NoneWaitHandler implements ProcessWaitHandler<NoneCondition> {
     }
 
     @Override
-    public NoneCondition process(UUID instanceId, ProcessStatus status, NoneCondition waits) {
-        return null;
+    public List<NoneCondition> process(List<WaitingProcess> processes) {
+        List<NoneCondition> result = new ArrayList<>(processes.size());
+        for (int i = 0; i < processes.size(); i++) {
+            result.add(null);
+        }
+        return result;
     }
 }
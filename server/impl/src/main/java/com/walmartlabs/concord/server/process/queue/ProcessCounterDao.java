@@ -0,0 +1,89 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.server.jooq.tables.ProjectProcessCounters;
+import com.walmartlabs.concord.server.process.ProcessStatus;
+import org.jooq.Configuration;
+import org.jooq.DSLContext;
+import org.jooq.Record1;
+import org.jooq.SelectConditionStep;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProjectProcessCounters.PROJECT_PROCESS_COUNTERS;
+import static org.jooq.impl.DSL.sum;
+
+/**
+ * Number of active processes per project. The counters are maintained
+ * by the database triggers on {@code PROCESS_QUEUE} and periodically
+ * reconciled by {@link ProcessCounterReconciler}.
+ * <p>
+ * Only the {@link #TRACKED_STATUSES} are counted.
+ */
+@Named
+public class ProcessCounterDao extends AbstractDao {
+
+    public static final List<ProcessStatus> TRACKED_STATUSES = Arrays.asList(
+            ProcessStatus.STARTING,
+            ProcessStatus.SUSPENDED,
+            ProcessStatus.RUNNING,
+            ProcessStatus.RESUMING);
+
+    @Inject
+    public ProcessCounterDao(@Named("app") Configuration cfg) {
+        super(cfg);
+    }
+
+    /**
+     * Returns the number of the project's processes in the specified statuses.
+     *
+     * @param exclusiveOnly if {@code true} only the "exclusive" processes are counted
+     */
+    public int count(DSLContext tx, UUID projectId, Collection<ProcessStatus> statuses, boolean exclusiveOnly) {
+        if (!TRACKED_STATUSES.containsAll(statuses)) {
+            throw new IllegalArgumentException("Untracked process statuses: " + statuses);
+        }
+
+        ProjectProcessCounters c = PROJECT_PROCESS_COUNTERS.as("c");
+        SelectConditionStep<Record1<BigDecimal>> q = tx.select(sum(c.PROCESS_COUNT))
+                .from(c)
+                .where(c.PROJECT_ID.eq(projectId)
+                        .and(c.CURRENT_STATUS.in(statuses.stream()
+                                .map(Enum::toString)
+                                .collect(Collectors.toList()))));
+
+        if (exclusiveOnly) {
+            q.and(c.IS_EXCLUSIVE.eq(true));
+        }
+
+        BigDecimal result = q.fetchOne(Record1::value1);
+        return result != null ? result.intValue() : 0;
+    }
+}
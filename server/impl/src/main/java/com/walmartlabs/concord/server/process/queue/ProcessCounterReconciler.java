@@ -0,0 +1,208 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.Counter;
+import com.walmartlabs.concord.db.AbstractDao;
+import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
+import com.walmartlabs.concord.server.jooq.tables.ProjectProcessCounters;
+import com.walmartlabs.concord.server.metrics.InjectCounter;
+import com.walmartlabs.concord.server.task.ScheduledTask;
+import org.jooq.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static com.walmartlabs.concord.server.jooq.tables.ProjectProcessCounters.PROJECT_PROCESS_COUNTERS;
+import static org.jooq.impl.DSL.*;
+
+/**
+ * Periodically compares the per-project process counters with the actual
+ * number of processes and fixes the difference, if any.
+ * The total corrected difference is reported as the {@code countersDrift} metric.
+ *
+ * @see ProcessCounterDao
+ */
+@Named("process-counter-reconciler")
+@Singleton
+public class ProcessCounterReconciler implements ScheduledTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessCounterReconciler.class);
+
+    private final ReconcilerDao dao;
+
+    @InjectCounter
+    private Counter countersDrift;
+
+    @Inject
+    public ProcessCounterReconciler(ReconcilerDao dao) {
+        this.dao = dao;
+    }
+
+    @Override
+    public long getIntervalInSec() {
+        // TODO cfg?
+        return 60;
+    }
+
+    @Override
+    public void performTask() {
+        long drift = dao.reconcile();
+        if (drift != 0) {
+            log.warn("performTask -> process counters were off by {}", drift);
+            countersDrift.inc(drift);
+        }
+    }
+
+    @Named
+    private static final class ReconcilerDao extends AbstractDao {
+
+        @Inject
+        public ReconcilerDao(@Named("app") Configuration cfg) {
+            super(cfg);
+        }
+
+        /**
+         * @return the sum of absolute differences between the stored and the actual counters.
+         */
+        public long reconcile() {
+            // the counters are updated by the triggers in the same transaction as the processes,
+            // so a single statement sees both sides consistently. Transactions that commit later
+            // apply their own changes to the counters, that's why the corrections are relative
+            List<Delta> deltas = txResult(ReconcilerDao::fetchDeltas);
+
+            // the deltas are ordered by (project_id, status, exclusive) - the same order
+            // in which the triggers lock the counter rows
+            Map<UUID, List<Delta>> byProject = deltas.stream()
+                    .collect(Collectors.groupingBy(d -> d.key.projectId, LinkedHashMap::new, Collectors.toList()));
+
+            long drift = 0;
+            for (List<Delta> l : byProject.values()) {
+                tx(tx -> {
+                    for (Delta d : l) {
+                        add(tx, d.key, d.value);
+                    }
+                });
+
+                for (Delta d : l) {
+                    drift += Math.abs(d.value);
+                }
+            }
+
+            // empty counters are recreated by the triggers when needed
+            // skip the rows locked by the triggers, they will be removed on the next run
+            tx(ReconcilerDao::deleteEmpty);
+
+            return drift;
+        }
+
+        private static List<Delta> fetchDeltas(DSLContext tx) {
+            ProcessQueue q = PROCESS_QUEUE.as("q");
+            Table<Record4<UUID, String, Boolean, Integer>> a = tx.select(q.PROJECT_ID, q.CURRENT_STATUS, q.IS_EXCLUSIVE, count().as("ACTUAL_COUNT"))
+                    .from(q)
+                    .where(q.PROJECT_ID.isNotNull()
+                            .and(q.CURRENT_STATUS.in(ProcessCounterDao.TRACKED_STATUSES.stream()
+                                    .map(Enum::toString)
+                                    .collect(Collectors.toList()))))
+                    .groupBy(q.PROJECT_ID, q.CURRENT_STATUS, q.IS_EXCLUSIVE)
+                    .asTable("a");
+
+            Field<UUID> aProjectId = a.field(q.PROJECT_ID);
+            Field<String> aStatus = a.field(q.CURRENT_STATUS);
+            Field<Boolean> aExclusive = a.field(q.IS_EXCLUSIVE);
+            Field<Integer> aCount = a.field("ACTUAL_COUNT", Integer.class);
+
+            ProjectProcessCounters c = PROJECT_PROCESS_COUNTERS.as("c");
+
+            Field<UUID> projectId = coalesce(aProjectId, c.PROJECT_ID);
+            Field<String> status = coalesce(aStatus, c.CURRENT_STATUS);
+            Field<Boolean> exclusive = coalesce(aExclusive, c.IS_EXCLUSIVE);
+            Field<Integer> delta = coalesce(aCount, 0).minus(coalesce(c.PROCESS_COUNT, 0));
+
+            return tx.select(projectId, status, exclusive, delta)
+                    .from(a)
+                    .fullOuterJoin(c).on(aProjectId.eq(c.PROJECT_ID)
+                            .and(aStatus.eq(c.CURRENT_STATUS))
+                            .and(aExclusive.eq(c.IS_EXCLUSIVE)))
+                    .where(delta.ne(0))
+                    .orderBy(projectId, status, exclusive)
+                    .fetch(r -> new Delta(new Key(r.value1(), r.value2(), r.value3()), r.value4()));
+        }
+
+        private static void add(DSLContext tx, Key k, int delta) {
+            tx.insertInto(PROJECT_PROCESS_COUNTERS)
+                    .columns(PROJECT_PROCESS_COUNTERS.PROJECT_ID,
+                            PROJECT_PROCESS_COUNTERS.CURRENT_STATUS,
+                            PROJECT_PROCESS_COUNTERS.IS_EXCLUSIVE,
+                            PROJECT_PROCESS_COUNTERS.PROCESS_COUNT)
+                    .values(k.projectId, k.status, k.exclusive, delta)
+                    .onConflict(PROJECT_PROCESS_COUNTERS.PROJECT_ID,
+                            PROJECT_PROCESS_COUNTERS.CURRENT_STATUS,
+                            PROJECT_PROCESS_COUNTERS.IS_EXCLUSIVE)
+                    .doUpdate()
+                    .set(PROJECT_PROCESS_COUNTERS.PROCESS_COUNT, PROJECT_PROCESS_COUNTERS.PROCESS_COUNT.plus(delta))
+                    .execute();
+        }
+
+        private static void deleteEmpty(DSLContext tx) {
+            ProjectProcessCounters c = PROJECT_PROCESS_COUNTERS.as("c");
+            tx.deleteFrom(PROJECT_PROCESS_COUNTERS)
+                    .where(row(PROJECT_PROCESS_COUNTERS.PROJECT_ID, PROJECT_PROCESS_COUNTERS.CURRENT_STATUS, PROJECT_PROCESS_COUNTERS.IS_EXCLUSIVE)
+                            .in(select(c.PROJECT_ID, c.CURRENT_STATUS, c.IS_EXCLUSIVE)
+                                    .from(c)
+                                    .where(c.PROCESS_COUNT.eq(0))
+                                    .forUpdate()
+                                    .skipLocked()))
+                    .and(PROJECT_PROCESS_COUNTERS.PROCESS_COUNT.eq(0))
+                    .execute();
+        }
+    }
+
+    private static final class Delta {
+
+        private final Key key;
+        private final int value;
+
+        private Delta(Key key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID projectId;
+        private final String status;
+        private final boolean exclusive;
+
+        private Key(UUID projectId, String status, boolean exclusive) {
+            this.projectId = projectId;
+            this.status = status;
+            this.exclusive = exclusive;
+        }
+    }
+}
@@ -41,6 +41,8 @@ import org.jooq.*;
 import org.jooq.exception.DataAccessException;
 import org.jooq.impl.DSL;
 import org.jooq.util.postgres.PostgresDSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -57,15 +59,25 @@ import static com.walmartlabs.concord.server.jooq.Tables.USERS;
 import static com.walmartlabs.concord.server.jooq.tables.Organizations.ORGANIZATIONS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessCheckpoints.PROCESS_CHECKPOINTS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessEvents.PROCESS_EVENTS;
+import static com.walmartlabs.concord.server.jooq.tables.ProcessLocks.PROCESS_LOCKS;
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static com.walmartlabs.concord.server.jooq.tables.ProjectProcessCounters.PROJECT_PROCESS_COUNTERS;
 import static com.walmartlabs.concord.server.jooq.tables.Projects.PROJECTS;
 import static org.jooq.impl.DSL.*;
 
 @Named
 public class ProcessQueueDao extends AbstractDao {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcessQueueDao.class);
+
     private static final Set<ProcessDataInclude> DEFAULT_INCLUDES = Collections.singleton(ProcessDataInclude.CHILDREN_IDS);
 
+    private static final Set<ProcessStatus> FINISHED_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            ProcessStatus.FINISHED,
+            ProcessStatus.FAILED,
+            ProcessStatus.CANCELLED,
+            ProcessStatus.TIMED_OUT));
+
     private static final TypeReference<List<ProcessCheckpointEntry>> LIST_OF_CHECKPOINTS = new TypeReference<List<ProcessCheckpointEntry>>() {
     };
     private static final TypeReference<ProcessStatusHistoryEntry> STATUS_HISTORY_ENTRY = new TypeReference<ProcessStatusHistoryEntry>() {
@@ -76,21 +88,27 @@ public class ProcessQueueDao extends AbstractDao {
     };
 
     private final List<ProcessQueueEntryFilter> filters;
+    private final List<ProcessQueueListener> listeners;
 
     private final EventDao eventDao;
     private final ObjectMapper objectMapper;
     private final ProcessQueueLock queueLock;
+    private final ProcessWaitIndex waitIndex;
 
     @Inject
     protected ProcessQueueDao(@Named("app") Configuration cfg,
                               List<ProcessQueueEntryFilter> filters,
+                              List<ProcessQueueListener> listeners,
                               EventDao eventDao,
                               ProcessQueueLock queueLock,
+                              ProcessWaitIndex waitIndex,
                               ObjectMapper objectMapper) {
         super(cfg);
         this.filters = filters;
+        this.listeners = listeners;
         this.eventDao = eventDao;
         this.queueLock = queueLock;
+        this.waitIndex = waitIndex;
         this.objectMapper = objectMapper;
     }
 
@@ -231,7 +249,11 @@ public class ProcessQueueDao extends AbstractDao {
             }
 
             insertStatusHistory(tx, processKey, ProcessStatus.ENQUEUED);
+
+            notifyEnqueued(tx);
         });
+
+        onEnqueue();
     }
 
     public void updateStatus(ProcessKey processKey, ProcessStatus status) {
@@ -239,7 +261,27 @@ public class ProcessQueueDao extends AbstractDao {
     }
 
     public void updateStatus(ProcessKey processKey, ProcessStatus status, Map<String, Object> statusPayload) {
-        tx(tx -> updateStatus(tx, processKey, status, statusPayload));
+        tx(tx -> {
+            updateStatus(tx, processKey, status, statusPayload);
+
+            // finished processes free their concurrency (and exclusive) slots,
+            // other processes in the queue might be ready for dispatching now
+            if (status == ProcessStatus.ENQUEUED || FINISHED_STATUSES.contains(status)) {
+                notifyEnqueued(tx);
+            }
+
+            if (FINISHED_STATUSES.contains(status)) {
+                releaseLocks(tx, Collections.singletonList(processKey.getInstanceId()));
+            }
+        });
+
+        if (status == ProcessStatus.ENQUEUED || FINISHED_STATUSES.contains(status)) {
+            onEnqueue();
+        }
+
+        if (FINISHED_STATUSES.contains(status)) {
+            waitIndex.onFinished(Collections.singletonList(processKey.getInstanceId()));
+        }
     }
 
     private void updateStatus(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
@@ -262,7 +304,7 @@ public class ProcessQueueDao extends AbstractDao {
     public boolean updateStatus(ProcessKey processKey, ProcessStatus expected, ProcessStatus status) {
         UUID instanceId = processKey.getInstanceId();
 
-        return txResult(tx -> {
+        boolean updated = txResult(tx -> {
             int i = tx.update(PROCESS_QUEUE)
                     .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
                     .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
@@ -273,8 +315,20 @@ public class ProcessQueueDao extends AbstractDao {
 
             insertStatusHistory(tx, processKey, status);
 
+            if (i == 1 && FINISHED_STATUSES.contains(status)) {
+                releaseLocks(tx, Collections.singletonList(instanceId));
+                notifyEnqueued(tx);
+            }
+
             return i == 1;
         });
+
+        if (updated && FINISHED_STATUSES.contains(status)) {
+            onEnqueue();
+            waitIndex.onFinished(Collections.singletonList(instanceId));
+        }
+
+        return updated;
     }
 
     public boolean updateMeta(PartialProcessKey processKey, Map<String, Object> meta) {
@@ -305,10 +359,12 @@ public class ProcessQueueDao extends AbstractDao {
     }
 
     public boolean updateStatus(List<ProcessKey> processKeys, ProcessStatus status, List<ProcessStatus> expected) {
-        return txResult(tx -> {
-            List<UUID> instanceIds = processKeys.stream()
-                    .map(PartialProcessKey::getInstanceId)
-                    .collect(Collectors.toList());
+        List<UUID> instanceIds = processKeys.stream()
+                .map(PartialProcessKey::getInstanceId)
+                .collect(Collectors.toList());
+
+        boolean updated = txResult(tx -> {
+            lockCounters(tx, instanceIds);
 
             UpdateConditionStep q = tx.update(PROCESS_QUEUE)
                     .set(PROCESS_QUEUE.CURRENT_STATUS, status.toString())
@@ -328,8 +384,20 @@ public class ProcessQueueDao extends AbstractDao {
 
             insertStatusHistory(tx, processKeys, status);
 
+            if (i > 0 && FINISHED_STATUSES.contains(status)) {
+                releaseLocks(tx, instanceIds);
+                notifyEnqueued(tx);
+            }
+
             return i == processKeys.size();
         });
+
+        if (FINISHED_STATUSES.contains(status)) {
+            onEnqueue();
+            waitIndex.onFinished(instanceIds);
+        }
+
+        return updated;
     }
 
     public void removeHandler(PartialProcessKey processKey, String handler) {
@@ -418,16 +486,50 @@ public class ProcessQueueDao extends AbstractDao {
 
     @WithTimer
     public ProcessQueueEntry poll(Map<String, Object> capabilities) {
-        Set<UUID> excludeProjects = new HashSet<>();
+        List<ProcessQueueEntry> l = poll(capabilities, 1);
+        return l.isEmpty() ? null : l.get(0);
+    }
 
-        while (true) {
-            FindResult result = findEntry(capabilities, excludeProjects);
-            if (result.isDone()) {
-                return result.item;
-            } else {
-                excludeProjects.add(result.excludeProject);
+    /**
+     * Claims up to {@code maxEntries} processes matching the specified capabilities
+     * in a single transaction. Claimed processes are moved into the STARTING status.
+     */
+    @WithTimer
+    public List<ProcessQueueEntry> poll(Map<String, Object> capabilities, int maxEntries) {
+        return txResult(tx -> {
+            List<ProcessQueueEntry> result = new ArrayList<>(maxEntries);
+            Set<UUID> excludeProjects = new HashSet<>();
+            Set<UUID> excludeInstances = new HashSet<>();
+
+            while (result.size() < maxEntries) {
+                List<ProcessQueueEntry> entries = nextEntries(tx, capabilities, excludeProjects, excludeInstances, maxEntries - result.size());
+                if (entries.isEmpty()) {
+                    break;
+                }
+
+                for (ProcessQueueEntry e : entries) {
+                    UUID projectId = e.projectId();
+                    if (projectId != null && excludeProjects.contains(projectId)) {
+                        continue;
+                    }
+
+                    Boolean claimed = claim(tx, e);
+                    if (claimed == null) {
+                        excludeInstances.add(e.key().getInstanceId());
+                        continue;
+                    }
+
+                    if (!claimed) {
+                        excludeProjects.add(projectId);
+                        continue;
+                    }
+
+                    result.add(e);
+                }
             }
-        }
+
+            return result;
+        });
     }
 
     public List<ProcessEntry> list(ProcessFilter filter) {
@@ -536,6 +638,17 @@ public class ProcessQueueDao extends AbstractDao {
         query.addConditions(PgUtils.contains(PROCESS_QUEUE.PROCESS_TAGS, as));
     }
 
+    /**
+     * Returns {@code true} if the process was running before, e.g. it is being resumed.
+     */
+    public boolean wasRunning(PartialProcessKey processKey) {
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.fetchExists(tx.selectFrom(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_QUEUE.LAST_RUN_AT.isNotNull())));
+        }
+    }
+
     public boolean exists(PartialProcessKey processKey) {
         UUID instanceId = processKey.getInstanceId();
         try (DSLContext tx = DSL.using(cfg)) {
@@ -545,10 +658,24 @@ public class ProcessQueueDao extends AbstractDao {
     }
 
     public void updateWait(ProcessKey key, AbstractWaitCondition waits) {
-        tx(tx -> updateWait(tx, key, waits));
+        tx(tx -> {
+            updateWait(tx, key, waits);
+
+            if (waits == null) {
+                notifyEnqueued(tx);
+            }
+        });
+
+        if (waits == null) {
+            // the process might be ready for dispatching now
+            onEnqueue();
+        }
     }
 
     public void updateWait(DSLContext tx, ProcessKey key, AbstractWaitCondition waits) {
+        // the index is only a hint, a rollback results in a no-op wake up at most
+        waitIndex.update(key.getInstanceId(), waits);
+
         tx.update(PROCESS_QUEUE)
                 .set(PROCESS_QUEUE.WAIT_CONDITIONS, field("?::jsonb", String.class, serialize(waits)))
                 .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
@@ -563,32 +690,187 @@ public class ProcessQueueDao extends AbstractDao {
         }
     }
 
-    private FindResult findEntry(Map<String, Object> capabilities, Set<UUID> excludeProjects) {
-        return txResult(tx -> {
-            ProcessQueueEntry entry = nextEntry(tx, capabilities, excludeProjects);
-            if (entry == null) {
-                return FindResult.notFound();
+    /**
+     * Updates the wait conditions of multiple processes in a single transaction.
+     * A process is updated only if its current wait conditions are equal to
+     * the {@code expected} ones, i.e. weren't modified concurrently.
+     * {@code null} values remove the wait conditions.
+     *
+     * @return the keys of the updated processes.
+     */
+    public Set<ProcessKey> updateWaits(Map<ProcessKey, AbstractWaitCondition> expected, Map<ProcessKey, AbstractWaitCondition> waits) {
+        if (waits.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Set<ProcessKey> updated = txResult(tx -> {
+            BatchBindStep q = tx.batch(tx.update(PROCESS_QUEUE)
+                    .set(PROCESS_QUEUE.WAIT_CONDITIONS, field("?::jsonb", String.class, (String) null))
+                    .set(PROCESS_QUEUE.LAST_UPDATED_AT, currentTimestamp())
+                    .where(PROCESS_QUEUE.INSTANCE_ID.eq((UUID) null)
+                            .and(condition("{0} is not distinct from {1}::jsonb", PROCESS_QUEUE.WAIT_CONDITIONS, val((String) null)))));
+
+            List<ProcessKey> keys = new ArrayList<>(waits.keySet());
+            for (ProcessKey k : keys) {
+                q.bind(serialize(waits.get(k)), k.getInstanceId(), serialize(expected.get(k)));
             }
 
-            if (entry.projectId() != null) {
-                boolean locked = queueLock.tryLock(tx, entry.projectId());
-                if (!locked) {
-                    return FindResult.findNext(entry.projectId());
-                }
+            int[] counts = q.execute();
 
-                for (ProcessQueueEntryFilter f : filters) {
-                    if (!f.filter(tx, entry)) {
-                        return FindResult.findNext(entry.projectId());
-                    }
+            Set<ProcessKey> result = new LinkedHashSet<>();
+            List<String> eventData = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                if (counts[i] <= 0) {
+                    continue;
                 }
+
+                AbstractWaitCondition w = waits.get(keys.get(i));
+                result.add(keys.get(i));
+                eventData.add(serialize(w != null ? w : new NoneCondition()));
+            }
+
+            if (result.isEmpty()) {
+                return result;
+            }
+
+            eventDao.insert(tx, new ArrayList<>(result), EventType.PROCESS_WAIT.name(), eventData);
+
+            if (hasReleased(result, waits)) {
+                notifyEnqueued(tx);
             }
 
-            updateStatus(tx, entry.key(), ProcessStatus.STARTING);
-            return FindResult.done(entry);
+            return result;
         });
+
+        updated.forEach(k -> waitIndex.update(k.getInstanceId(), waits.get(k)));
+
+        if (hasReleased(updated, waits)) {
+            // some of the processes might be ready for dispatching now
+            onEnqueue();
+        }
+
+        return updated;
     }
 
-    private ProcessQueueEntry nextEntry(DSLContext tx, Map<String, Object> capabilities, Set<UUID> excludeProjects) {
+    private static boolean hasReleased(Set<ProcessKey> keys, Map<ProcessKey, AbstractWaitCondition> waits) {
+        for (ProcessKey k : keys) {
+            if (waits.get(k) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Locks the counters of the specified processes' projects in the same order
+     * in which the PROCESS_QUEUE triggers lock them. The triggers process
+     * the rows of a multi-row update in an arbitrary order and could deadlock
+     * with another transaction otherwise.
+     */
+    private static void lockCounters(DSLContext tx, Collection<UUID> instanceIds) {
+        if (instanceIds.size() < 2) {
+            return;
+        }
+
+        tx.select(PROJECT_PROCESS_COUNTERS.PROJECT_ID)
+                .from(PROJECT_PROCESS_COUNTERS)
+                .where(PROJECT_PROCESS_COUNTERS.PROJECT_ID.in(select(PROCESS_QUEUE.PROJECT_ID)
+                        .from(PROCESS_QUEUE)
+                        .where(PROCESS_QUEUE.INSTANCE_ID.in(instanceIds))))
+                .orderBy(PROJECT_PROCESS_COUNTERS.PROJECT_ID, PROJECT_PROCESS_COUNTERS.CURRENT_STATUS, PROJECT_PROCESS_COUNTERS.IS_EXCLUSIVE)
+                .forUpdate()
+                .execute();
+    }
+
+    /**
+     * Removes the locks held by the specified processes if the processes are finished.
+     * The locks of finished processes are also removed by {@link com.walmartlabs.concord.server.process.locks.ProcessLocksWatchdog}
+     * but doing it immediately allows the waiting processes to acquire them sooner.
+     */
+    private static void releaseLocks(DSLContext tx, Collection<UUID> instanceIds) {
+        ProcessQueue q = PROCESS_QUEUE.as("q");
+        SelectConditionStep<Record1<UUID>> finished = tx.select(q.INSTANCE_ID)
+                .from(q)
+                .where(q.INSTANCE_ID.in(instanceIds)
+                        .and(q.CURRENT_STATUS.in(FINISHED_STATUSES.stream()
+                                .map(Enum::toString)
+                                .collect(Collectors.toList()))));
+
+        tx.deleteFrom(PROCESS_LOCKS)
+                .where(PROCESS_LOCKS.INSTANCE_ID.in(finished))
+                .execute();
+
+        // processes waiting for these processes (or their locks) might be known only to other servers
+        ProcessQueueNotificationListener.notifyReleased(tx, instanceIds);
+    }
+
+    /**
+     * Checks and claims a single candidate in a nested transaction (a savepoint),
+     * so a failing candidate doesn't roll back the rest of the batch.
+     *
+     * @return {@code true} if the process was claimed, {@code false} if
+     * the process is not ready yet or {@code null} if the check failed.
+     */
+    private Boolean claim(DSLContext tx, ProcessQueueEntry entry) {
+        try {
+            return tx.transactionResult(cfg -> {
+                DSLContext ntx = DSL.using(cfg);
+
+                if (!isReady(ntx, entry)) {
+                    return false;
+                }
+
+                updateStatus(ntx, entry.key(), ProcessStatus.STARTING);
+                return true;
+            });
+        } catch (Exception e) {
+            log.warn("claim ['{}'] -> error, skipping the process: {}", entry.key(), e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private boolean isReady(DSLContext tx, ProcessQueueEntry entry) {
+        if (entry.projectId() == null) {
+            return true;
+        }
+
+        boolean locked = queueLock.tryLock(tx, entry.projectId());
+        if (!locked) {
+            return false;
+        }
+
+        for (ProcessQueueEntryFilter f : filters) {
+            if (!f.filter(tx, entry)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private List<ProcessQueueEntry> nextEntries(DSLContext tx, Map<String, Object> capabilities,
+                                                Set<UUID> excludeProjects, Set<UUID> excludeInstances, int limit) {
+        return nextEntriesQuery(tx, capabilities, excludeProjects, excludeInstances, limit)
+                .fetch(r -> ProcessQueueEntry.builder()
+                        .key(new ProcessKey(r.value1(), r.value2()))
+                        .projectId(r.value3())
+                        .orgId(r.value4())
+                        .initiatorId(r.value5())
+                        .parentInstanceId(r.value6())
+                        .repoPath(r.value7())
+                        .repoUrl(r.value8())
+                        .commitId(r.value9())
+                        .repoId(r.value10())
+                        .exclusive(r.value11())
+                        .build());
+    }
+
+    /**
+     * Returns the query used to find the next processes to start.
+     * Package-private to allow benchmarks to check the query plan.
+     */
+    ResultQuery<Record11<UUID, Timestamp, UUID, UUID, UUID, UUID, String, String, String, UUID, Boolean>> nextEntriesQuery(
+            DSLContext tx, Map<String, Object> capabilities, Set<UUID> excludeProjects, Set<UUID> excludeInstances, int limit) {
         ProcessQueue q = PROCESS_QUEUE.as("q");
 
         Field<UUID> orgIdField = select(PROJECTS.ORG_ID).from(PROJECTS).where(PROJECTS.PROJECT_ID.eq(q.PROJECT_ID)).asField();
@@ -608,7 +890,9 @@ public class ProcessQueueDao extends AbstractDao {
                         q.IS_EXCLUSIVE)
                         .from(q);
 
-        s.where(q.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+        // the conditions must match the IDX_PROC_Q_READY partial index. The status is inlined,
+        // otherwise the planner can't use the index with generic plans of prepared statements
+        s.where(q.CURRENT_STATUS.eq(inline(ProcessStatus.ENQUEUED.toString()))
                 .and(or(q.START_AT.isNull(),
                         q.START_AT.le(currentTimestamp())))
                 .and(q.WAIT_CONDITIONS.isNull()));
@@ -617,6 +901,10 @@ public class ProcessQueueDao extends AbstractDao {
             s.where(q.PROJECT_ID.isNull().or(q.PROJECT_ID.notIn(excludeProjects)));
         }
 
+        if (!excludeInstances.isEmpty()) {
+            s.where(q.INSTANCE_ID.notIn(excludeInstances));
+        }
+
         if (capabilities != null && !capabilities.isEmpty()) {
             Field<Object> agentReqField = field("{0}->'agent'", Object.class, q.REQUIREMENTS);
             Field<Object> capabilitiesField = field("?::jsonb", Object.class, value(serialize(capabilities)));
@@ -625,22 +913,42 @@ public class ProcessQueueDao extends AbstractDao {
         }
 
         return s.orderBy(q.CREATED_AT)
-                .limit(1)
+                .limit(limit)
                 .forUpdate()
                 .of(q)
-                .skipLocked()
-                .fetchOne(r -> ProcessQueueEntry.builder()
-                        .key(new ProcessKey(r.value1(), r.value2()))
-                        .projectId(r.value3())
-                        .orgId(r.value4())
-                        .initiatorId(r.value5())
-                        .parentInstanceId(r.value6())
-                        .repoPath(r.value7())
-                        .repoUrl(r.value8())
-                        .commitId(r.value9())
-                        .repoId(r.value10())
-                        .exclusive(r.value11())
-                        .build());
+                .skipLocked();
+    }
+
+    /**
+     * Returns the earliest {@code startAt} of the enqueued processes which
+     * are not ready to start yet or {@code null} if there are no such processes.
+     */
+    public Instant getNextStartAt() {
+        try (DSLContext tx = DSL.using(cfg)) {
+            Timestamp t = tx.select(min(PROCESS_QUEUE.START_AT))
+                    .from(PROCESS_QUEUE)
+                    .where(PROCESS_QUEUE.CURRENT_STATUS.eq(ProcessStatus.ENQUEUED.toString())
+                            .and(PROCESS_QUEUE.WAIT_CONDITIONS.isNull())
+                            .and(PROCESS_QUEUE.START_AT.gt(currentTimestamp())))
+                    .fetchOne(Record1::value1);
+
+            return t != null ? t.toInstant() : null;
+        }
+    }
+
+    /**
+     * Notifies other server instances. The notification is delivered when
+     * (and if) the transaction commits.
+     */
+    private static void notifyEnqueued(DSLContext tx) {
+        tx.execute("NOTIFY " + ProcessQueueNotificationListener.CHANNEL_NAME);
+    }
+
+    /**
+     * Notifies local listeners. Must be called after the transaction commits.
+     */
+    private void onEnqueue() {
+        listeners.forEach(ProcessQueueListener::onEnqueue);
     }
 
     private void insertStatusHistory(DSLContext tx, ProcessKey processKey, ProcessStatus status) {
@@ -914,38 +1222,4 @@ public class ProcessQueueDao extends AbstractDao {
             return status;
         }
     }
-
-    private static class FindResult {
-
-        enum Status {
-            DONE,
-            NEXT_ITEM
-        }
-
-        private final Status status;
-        private final ProcessQueueEntry item;
-        private final UUID excludeProject;
-
-        private FindResult(Status status, ProcessQueueEntry item, UUID excludeProject) {
-            this.status = status;
-            this.item = item;
-            this.excludeProject = excludeProject;
-        }
-
-        private boolean isDone() {
-            return status == Status.DONE;
-        }
-
-        public static FindResult done(ProcessQueueEntry item) {
-            return new FindResult(Status.DONE, item, null);
-        }
-
-        static FindResult notFound() {
-            return done(null);
-        }
-
-        static FindResult findNext(UUID excludeProject) {
-            return new FindResult(Status.NEXT_ITEM, null, excludeProject);
-        }
-    }
 }
@@ -0,0 +1,187 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.db.DatabaseConfiguration;
+import com.walmartlabs.concord.server.BackgroundTask;
+import org.jooq.DSLContext;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Listens for the process queue notifications sent by other server instances
+ * (using PostgreSQL's LISTEN/NOTIFY) and passes them to the local {@link ProcessQueueListener}s.
+ * Notifications about finished processes and released locks are passed to {@link ProcessWaitIndex}.
+ */
+@Named
+@Singleton
+public class ProcessQueueNotificationListener implements BackgroundTask {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessQueueNotificationListener.class);
+
+    public static final String CHANNEL_NAME = "concord_process_queue";
+    public static final String WAITS_CHANNEL_NAME = "concord_process_waits";
+
+    /**
+     * Identifies the notifications sent by this server instance.
+     */
+    private static final String SERVER_ID = UUID.randomUUID().toString();
+
+    /**
+     * Max number of IDs in a single notification, the payload must be shorter than 8000 bytes.
+     */
+    private static final int MAX_IDS_PER_NOTIFICATION = 100;
+
+    private static final int POLL_TIMEOUT = (int) TimeUnit.SECONDS.toMillis(1);
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(30);
+
+    private final DatabaseConfiguration cfg;
+    private final List<ProcessQueueListener> listeners;
+    private final ProcessWaitIndex waitIndex;
+
+    private Thread worker;
+
+    @Inject
+    public ProcessQueueNotificationListener(DatabaseConfiguration cfg, List<ProcessQueueListener> listeners, ProcessWaitIndex waitIndex) {
+        this.cfg = cfg;
+        this.listeners = listeners;
+        this.waitIndex = waitIndex;
+    }
+
+    /**
+     * Notifies all server instances that the specified processes finished
+     * or released their locks. The notification is delivered when (and if)
+     * the transaction commits.
+     */
+    public static void notifyReleased(DSLContext tx, Collection<UUID> instanceIds) {
+        List<UUID> l = new ArrayList<>(instanceIds);
+        for (int i = 0; i < l.size(); i += MAX_IDS_PER_NOTIFICATION) {
+            String payload = SERVER_ID + ":" + l.subList(i, Math.min(i + MAX_IDS_PER_NOTIFICATION, l.size())).stream()
+                    .map(UUID::toString)
+                    .collect(Collectors.joining(","));
+
+            tx.fetch("select pg_notify(?, ?)", WAITS_CHANNEL_NAME, payload);
+        }
+    }
+
+    @Override
+    public void start() {
+        this.worker = new Thread(this::run, "process-queue-notification-listener");
+        this.worker.start();
+        log.info("start -> done");
+    }
+
+    @Override
+    public void stop() {
+        if (worker != null) {
+            worker.interrupt();
+            worker = null;
+        }
+        log.info("stop -> done");
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try (Connection conn = DriverManager.getConnection(cfg.getUrl(), cfg.getAppUsername(), cfg.getAppPassword())) {
+                conn.setAutoCommit(true);
+
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL_NAME);
+                    st.execute("LISTEN " + WAITS_CHANNEL_NAME);
+                }
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+                while (!Thread.currentThread().isInterrupted()) {
+                    PGNotification[] ns = pg.getNotifications(POLL_TIMEOUT);
+                    if (ns == null || ns.length == 0) {
+                        continue;
+                    }
+
+                    boolean enqueued = false;
+                    Set<UUID> released = new HashSet<>();
+                    for (PGNotification n : ns) {
+                        if (WAITS_CHANNEL_NAME.equals(n.getName())) {
+                            released.addAll(parseReleased(n.getParameter()));
+                        } else {
+                            enqueued = true;
+                        }
+                    }
+
+                    if (enqueued) {
+                        listeners.forEach(ProcessQueueListener::onEnqueue);
+                    }
+
+                    waitIndex.onReleased(released);
+                }
+            } catch (SQLException e) {
+                log.warn("run -> error: {}. Will retry in {}ms...", e.getMessage(), ERROR_DELAY);
+                sleep(ERROR_DELAY);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs from the payload of a {@link #WAITS_CHANNEL_NAME} notification.
+     * The notifications sent by this server are ignored, the local
+     * {@link ProcessWaitIndex} already handled them.
+     */
+    static Set<UUID> parseReleased(String payload) {
+        if (payload == null) {
+            return Collections.emptySet();
+        }
+
+        int i = payload.indexOf(':');
+        if (i < 0 || SERVER_ID.equals(payload.substring(0, i))) {
+            return Collections.emptySet();
+        }
+
+        Set<UUID> result = new HashSet<>();
+        for (String s : payload.substring(i + 1).split(",")) {
+            try {
+                result.add(UUID.fromString(s.trim()));
+            } catch (IllegalArgumentException e) {
+                log.warn("parseReleased -> invalid ID: {}", s);
+            }
+        }
+        return result;
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
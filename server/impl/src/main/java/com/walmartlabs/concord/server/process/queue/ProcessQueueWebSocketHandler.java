@@ -21,83 +21,222 @@ package com.walmartlabs.concord.server.process.queue;
  */
 
 import com.walmartlabs.concord.server.PeriodicTask;
+import com.walmartlabs.concord.server.cfg.ProcessQueueConfiguration;
 import com.walmartlabs.concord.server.org.OrganizationDao;
 import com.walmartlabs.concord.server.org.project.RepositoryDao;
 import com.walmartlabs.concord.server.org.project.RepositoryEntry;
 import com.walmartlabs.concord.server.process.ProcessManager;
 import com.walmartlabs.concord.server.process.logs.LogManager;
+import com.walmartlabs.concord.server.queueclient.message.Message;
 import com.walmartlabs.concord.server.queueclient.message.MessageType;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchRequest;
+import com.walmartlabs.concord.server.queueclient.message.ProcessBatchResponse;
 import com.walmartlabs.concord.server.queueclient.message.ProcessRequest;
 import com.walmartlabs.concord.server.queueclient.message.ProcessResponse;
 import com.walmartlabs.concord.server.websocket.WebSocketChannel;
 import com.walmartlabs.concord.server.websocket.WebSocketChannelManager;
+import com.walmartlabs.concord.server.websocket.WebSocketRequestListener;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.Map;
+import java.time.Instant;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Named
 @Singleton
-public class ProcessQueueWebSocketHandler extends PeriodicTask {
+public class ProcessQueueWebSocketHandler extends PeriodicTask implements ProcessQueueListener, WebSocketRequestListener {
 
-    private static final long POLL_DELAY = TimeUnit.SECONDS.toMillis(1);
     private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final int MAX_BATCH_SIZE = 100;
 
     private final WebSocketChannelManager channelManager;
     private final ProcessManager processManager;
     private final OrganizationDao organizationDao;
     private final RepositoryDao repositoryDao;
     private final LogManager logManager;
+    private final ProcessQueueDao queueDao;
 
     @Inject
-    public ProcessQueueWebSocketHandler(WebSocketChannelManager channelManager,
+    public ProcessQueueWebSocketHandler(ProcessQueueConfiguration cfg,
+                                        WebSocketChannelManager channelManager,
                                         ProcessManager processManager,
                                         OrganizationDao organizationDao,
                                         RepositoryDao repositoryDao,
-                                        LogManager logManager) {
+                                        LogManager logManager,
+                                        ProcessQueueDao queueDao) {
 
-        super(POLL_DELAY, ERROR_DELAY);
+        super(cfg.getDispatcherPollDelay(), ERROR_DELAY);
 
         this.channelManager = channelManager;
         this.processManager = processManager;
         this.organizationDao = organizationDao;
         this.repositoryDao = repositoryDao;
         this.logManager = logManager;
+        this.queueDao = queueDao;
+    }
+
+    @Override
+    public void onEnqueue() {
+        wakeUp();
+    }
+
+    @Override
+    public void onRequest(Message request) {
+        MessageType t = request.getMessageType();
+        if (t == MessageType.PROCESS_REQUEST || t == MessageType.PROCESS_BATCH_REQUEST) {
+            wakeUp();
+        }
     }
 
     @Override
     protected void performTask() {
+        List<Demand> demands = new ArrayList<>();
+
         Map<WebSocketChannel, ProcessRequest> requests = this.channelManager.getRequests(MessageType.PROCESS_REQUEST);
-        if (requests.isEmpty()) {
+        requests.forEach((channel, req) -> demands.add(new Demand(channel, req, req.getCapabilities(), 1)));
+
+        Map<WebSocketChannel, ProcessBatchRequest> batchRequests = this.channelManager.getRequests(MessageType.PROCESS_BATCH_REQUEST);
+        batchRequests.forEach((channel, req) -> demands.add(new Demand(channel, req, req.getCapabilities(), Math.max(req.getSlots(), 1))));
+
+        if (demands.isEmpty()) {
+            return;
+        }
+
+        // group the requests by capabilities, each group is served using as few queries as possible
+        Map<Map<String, Object>, List<Demand>> groups = new HashMap<>();
+        demands.forEach(d -> groups.computeIfAbsent(d.capabilities, k -> new ArrayList<>()).add(d));
+        groups.forEach(this::assign);
+
+        if (demands.stream().anyMatch(d -> !d.isFull())) {
+            // some agents are still idle, make sure the processes with "startAt"
+            // are dispatched on time and not on the next poll
+            Instant nextStartAt = queueDao.getNextStartAt();
+            if (nextStartAt != null) {
+                wakeUpAt(nextStartAt.toEpochMilli());
+            }
+        }
+
+        List<ProcessQueueEntry> items = demands.stream()
+                .flatMap(d -> d.items.stream())
+                .collect(Collectors.toList());
+
+        if (items.isEmpty()) {
             return;
         }
 
-        // TODO group by capabilities to reduce the number of queries?
+        Map<UUID, String> orgNames = getOrgNames(items);
+        Map<UUID, String> secretNames = getSecretNames(items);
 
-        requests.forEach((channel, req) -> {
-            ProcessQueueEntry item = processManager.nextProcess(req.getCapabilities());
-            if (item == null) {
+        demands.forEach(d -> {
+            if (d.items.isEmpty()) {
+                // nothing to send yet, the request stays in the channel until we find a process for it
                 return;
             }
 
-            String orgName = null;
-            String secret = null;
-            if (item.repoId() != null) {
-                RepositoryEntry repository = repositoryDao.get(item.repoId());
-                if (repository != null) {
-                    secret = repository.getSecretName();
+            long correlationId = d.request.getCorrelationId();
+            List<ProcessResponse> responses = d.items.stream()
+                    .map(item -> toResponse(correlationId, item, orgNames, secretNames))
+                    .collect(Collectors.toList());
+
+            if (d.request.getMessageType() == MessageType.PROCESS_BATCH_REQUEST) {
+                channelManager.sendResponse(d.channel.getChannelId(), new ProcessBatchResponse(correlationId, responses));
+            } else {
+                channelManager.sendResponse(d.channel.getChannelId(), responses.get(0));
+            }
+
+            d.items.forEach(item -> logManager.info(item.key(), "Acquired by: " + d.channel.getInfo()));
+        });
+    }
+
+    private void assign(Map<String, Object> capabilities, List<Demand> demands) {
+        int slots = demands.stream().mapToInt(d -> d.slots).sum();
+
+        Iterator<Demand> it = demands.iterator();
+        Demand current = null;
+
+        while (slots > 0) {
+            int limit = Math.min(slots, MAX_BATCH_SIZE);
+
+            List<ProcessQueueEntry> items = processManager.nextProcesses(capabilities, limit);
+            for (ProcessQueueEntry item : items) {
+                while (current == null || current.isFull()) {
+                    current = it.next();
                 }
+                current.items.add(item);
             }
-            if (item.orgId() != null) {
-                orgName = organizationDao.get(item.orgId()).getName();
+
+            if (items.size() < limit) {
+                // no more processes for this set of capabilities
+                break;
             }
 
-            channelManager.sendResponse(channel.getChannelId(),
-                    new ProcessResponse(req.getCorrelationId(), item.key().getInstanceId(),
-                            orgName, item.repoUrl(), item.repoPath(), item.commitId(), secret));
-            logManager.info(item.key(), "Acquired by: " + channel.getInfo());
-        });
+            slots -= limit;
+        }
+    }
+
+    private static ProcessResponse toResponse(long correlationId, ProcessQueueEntry item,
+                                              Map<UUID, String> orgNames, Map<UUID, String> secretNames) {
+
+        String orgName = item.orgId() != null ? orgNames.get(item.orgId()) : null;
+        String secret = item.repoId() != null ? secretNames.get(item.repoId()) : null;
+
+        return new ProcessResponse(correlationId, item.key().getInstanceId(),
+                orgName, item.repoUrl(), item.repoPath(), item.commitId(), secret);
+    }
+
+    private Map<UUID, String> getOrgNames(List<ProcessQueueEntry> items) {
+        Set<UUID> orgIds = items.stream()
+                .map(ProcessQueueEntry::orgId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        if (orgIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return organizationDao.getNames(orgIds);
+    }
+
+    private Map<UUID, String> getSecretNames(List<ProcessQueueEntry> items) {
+        Set<UUID> repoIds = items.stream()
+                .map(ProcessQueueEntry::repoId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        if (repoIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<UUID, String> result = new HashMap<>();
+        for (RepositoryEntry r : repositoryDao.get(repoIds)) {
+            result.put(r.getId(), r.getSecretName());
+        }
+        return result;
+    }
+
+    /**
+     * A pending agent's request and the processes assigned to it.
+     */
+    private static final class Demand {
+
+        private final WebSocketChannel channel;
+        private final Message request;
+        private final Map<String, Object> capabilities;
+        private final int slots;
+        private final List<ProcessQueueEntry> items = new ArrayList<>();
+
+        private Demand(WebSocketChannel channel, Message request, Map<String, Object> capabilities, int slots) {
+            this.channel = channel;
+            this.request = request;
+            this.capabilities = capabilities;
+            this.slots = slots;
+        }
+
+        private boolean isFull() {
+            return items.size() >= slots;
+        }
     }
 }
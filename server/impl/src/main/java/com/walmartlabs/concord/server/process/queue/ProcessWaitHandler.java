@@ -20,16 +20,30 @@ package com.walmartlabs.concord.server.process.queue;
  * =====
  */
 
-import com.walmartlabs.concord.server.process.ProcessStatus;
-
-import java.util.UUID;
+import java.util.List;
 
 public interface ProcessWaitHandler<T extends AbstractWaitCondition> {
 
     WaitType getType();
 
     /**
-     * @return {@code null} if the specified process doesn't have any wait conditions.
+     * Processes a page of waiting processes. All processes have the wait conditions
+     * of {@link #getType()}.
+     *
+     * @return the new wait conditions, in the same order as {@code processes}.
+     * A {@code null} element means that the process doesn't have any wait conditions anymore.
+     * The original wait conditions should be returned for the processes that weren't handled.
+     * <p>
+     * Actions that depend on the new wait conditions being saved (e.g. resuming
+     * a process) must be performed in {@link #onUpdate(WaitingProcess, AbstractWaitCondition)}.
+     */
+    List<T> process(List<WaitingProcess> processes);
+
+    /**
+     * Called after the new wait conditions of the process returned by {@link #process(List)}
+     * are saved. Not called if the wait conditions were modified concurrently.
+     * If this method throws an exception, the original wait conditions are restored.
      */
-    T process(UUID instanceId, ProcessStatus status, T waits);
+    default void onUpdate(WaitingProcess process, T waits) {
+    }
 }
@@ -0,0 +1,161 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.*;
+
+/**
+ * Local reverse index of wait conditions: awaited process (or lock holder) ID
+ * to the IDs of waiting processes. Allows to re-check the wait conditions
+ * immediately when the awaited process finishes or releases its locks.
+ * <p>
+ * The index contains only the wait conditions seen by this server instance.
+ * Finished processes and released locks are broadcast to all server instances
+ * (see {@link ProcessQueueNotificationListener#notifyReleased}), the other
+ * instances find the waiting processes in the DB. {@link ProcessWaitWatchdog}
+ * re-populates the index on every sweep and handles everything else.
+ */
+@Named
+@Singleton
+public class ProcessWaitIndex {
+
+    private static final int MAX_WAITERS = 100_000;
+
+    private final List<ProcessWaitListener> listeners;
+
+    private final Map<UUID, Set<UUID>> waitersByAwaited = new HashMap<>();
+    private final Map<UUID, Set<UUID>> awaitedByWaiter = new HashMap<>();
+
+    @Inject
+    public ProcessWaitIndex(List<ProcessWaitListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Registers the wait conditions of the specified process,
+     * replacing the previous ones. {@code null} removes the process from the index.
+     */
+    public synchronized void update(UUID waiter, AbstractWaitCondition waits) {
+        remove(waiter);
+
+        Set<UUID> awaited = getAwaited(waits);
+        if (awaited.isEmpty()) {
+            return;
+        }
+
+        if (awaitedByWaiter.size() >= MAX_WAITERS) {
+            // the watchdog will re-populate the index
+            waitersByAwaited.clear();
+            awaitedByWaiter.clear();
+        }
+
+        awaitedByWaiter.put(waiter, awaited);
+        for (UUID a : awaited) {
+            waitersByAwaited.computeIfAbsent(a, k -> new HashSet<>()).add(waiter);
+        }
+    }
+
+    /**
+     * Removes the specified finished processes from the index and
+     * notifies the listeners about processes waiting for them.
+     * Must be called after the transaction commits.
+     */
+    public void onFinished(Collection<UUID> instanceIds) {
+        synchronized (this) {
+            instanceIds.forEach(this::remove);
+        }
+
+        wakeUp(instanceIds);
+    }
+
+    /**
+     * Notifies the listeners about processes waiting for the specified processes.
+     * Must be called after the transaction commits.
+     */
+    public void wakeUp(Collection<UUID> awaited) {
+        Set<UUID> waiters = new HashSet<>();
+
+        synchronized (this) {
+            for (UUID a : awaited) {
+                Set<UUID> s = waitersByAwaited.get(a);
+                if (s != null) {
+                    waiters.addAll(s);
+                }
+            }
+        }
+
+        if (waiters.isEmpty()) {
+            return;
+        }
+
+        listeners.forEach(l -> l.onWakeUp(waiters));
+    }
+
+    /**
+     * Notifies the listeners about processes which finished or released
+     * their locks on another server instance.
+     */
+    public void onReleased(Collection<UUID> awaited) {
+        if (awaited.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> s = new HashSet<>(awaited);
+        listeners.forEach(l -> l.onReleased(s));
+    }
+
+    private void remove(UUID waiter) {
+        Set<UUID> awaited = awaitedByWaiter.remove(waiter);
+        if (awaited == null) {
+            return;
+        }
+
+        for (UUID a : awaited) {
+            Set<UUID> s = waitersByAwaited.get(a);
+            if (s == null) {
+                continue;
+            }
+
+            s.remove(waiter);
+            if (s.isEmpty()) {
+                waitersByAwaited.remove(a);
+            }
+        }
+    }
+
+    private static Set<UUID> getAwaited(AbstractWaitCondition waits) {
+        if (waits == null) {
+            return Collections.emptySet();
+        }
+
+        switch (waits.type()) {
+            case PROCESS_COMPLETION:
+                return new HashSet<>(((ProcessCompletionCondition) waits).processes());
+            case PROCESS_LOCK:
+                return Collections.singleton(((ProcessLockCondition) waits).instanceId());
+            default:
+                return Collections.emptySet();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Receives notifications about waiting processes which wait conditions
+ * might be resolved now, e.g. after the awaited process finished.
+ */
+public interface ProcessWaitListener {
+
+    void onWakeUp(Set<UUID> instanceIds);
+
+    /**
+     * Called when the specified processes finish or release their locks on
+     * another server instance. The waiting processes are not known locally.
+     */
+    default void onReleased(Set<UUID> awaited) {
+    }
+}
@@ -0,0 +1,85 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.PeriodicTask;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-checks the wait conditions of the processes reported by {@link ProcessWaitIndex}
+ * without waiting for the next {@link ProcessWaitWatchdog} sweep. For processes
+ * released on other server instances the waiting processes are found in the DB.
+ */
+@Named
+@Singleton
+public class ProcessWaitResolver extends PeriodicTask implements ProcessWaitListener {
+
+    private static final long INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    private static final long ERROR_DELAY = TimeUnit.SECONDS.toMillis(5);
+
+    private final ProcessWaitWatchdog watchdog;
+    private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> released = ConcurrentHashMap.newKeySet();
+
+    @Inject
+    public ProcessWaitResolver(ProcessWaitWatchdog watchdog) {
+        super(INTERVAL, ERROR_DELAY);
+        this.watchdog = watchdog;
+    }
+
+    @Override
+    public void onWakeUp(Set<UUID> instanceIds) {
+        pending.addAll(instanceIds);
+        wakeUp();
+    }
+
+    @Override
+    public void onReleased(Set<UUID> awaited) {
+        released.addAll(awaited);
+        wakeUp();
+    }
+
+    @Override
+    protected void performTask() {
+        if (!pending.isEmpty()) {
+            List<UUID> ids = new ArrayList<>(pending);
+            pending.removeAll(ids);
+
+            watchdog.process(ids);
+        }
+
+        if (!released.isEmpty()) {
+            List<UUID> ids = new ArrayList<>(released);
+            released.removeAll(ids);
+
+            watchdog.processWaitersOf(ids);
+        }
+    }
+}
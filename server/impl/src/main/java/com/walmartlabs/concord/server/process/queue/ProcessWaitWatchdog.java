@@ -26,7 +26,6 @@ import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.ProcessStatus;
 import com.walmartlabs.concord.server.task.ScheduledTask;
-import org.immutables.value.Value;
 import org.jooq.Configuration;
 import org.jooq.Record5;
 import org.jooq.SelectConditionStep;
@@ -38,16 +37,23 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.jooq.impl.DSL.*;
 
 /**
  * Takes care of processes with wait conditions.
  * E.g. waiting for other processes to finish, locking, etc.
+ * <p>
+ * Waiting processes are fetched in pages. Each page is grouped by the wait type
+ * and passed to the corresponding {@link ProcessWaitHandler}, the updated wait
+ * conditions are saved in a single batch. Each process is updated only if its wait
+ * conditions weren't modified in the meantime, and only the updated processes
+ * are passed to {@link ProcessWaitHandler#onUpdate(WaitingProcess, AbstractWaitCondition)}.
+ * <p>
+ * {@link ProcessWaitResolver} uses {@link #process(Collection)} to re-check
+ * specific processes as soon as their conditions might be resolved.
  */
 @Named("process-wait-watchdog")
 @Singleton
@@ -55,15 +61,27 @@ public class ProcessWaitWatchdog implements ScheduledTask {
 
     private static final Logger log = LoggerFactory.getLogger(ProcessWaitWatchdog.class);
 
+    private static final int PAGE_SIZE = 100;
+
     private final WatchdogDao dao;
     private final ProcessQueueDao processQueueDao;
+    private final ProcessWaitIndex waitIndex;
     private final Map<WaitType, ProcessWaitHandler<AbstractWaitCondition>> processWaitHandlers;
 
+    /**
+     * Serializes the sweep and {@link #process(Collection)} on this server to avoid
+     * evaluating the same processes twice. It doesn't protect against other servers,
+     * the guarded wait and status updates make sure that the processes are updated
+     * (and resumed) only once.
+     */
+    private final Object mutex = new Object();
+
     @Inject
     @SuppressWarnings("unchecked")
-    public ProcessWaitWatchdog(WatchdogDao dao, ProcessQueueDao processQueueDao, Set<ProcessWaitHandler> handlers) {
+    public ProcessWaitWatchdog(WatchdogDao dao, ProcessQueueDao processQueueDao, ProcessWaitIndex waitIndex, Set<ProcessWaitHandler> handlers) {
         this.dao = dao;
         this.processQueueDao = processQueueDao;
+        this.waitIndex = waitIndex;
         this.processWaitHandlers = new HashMap<>();
 
         handlers.forEach(h -> this.processWaitHandlers.put(h.getType(), h));
@@ -77,57 +95,132 @@ public class ProcessWaitWatchdog implements ScheduledTask {
 
     @Override
     public void performTask() {
-        Timestamp lastUpdatedAt = null;
+        WaitingProcess last = null;
         while (true) {
-            WaitingProcess p = dao.nextWaitItem(lastUpdatedAt);
-            if (p == null) {
+            List<WaitingProcess> page;
+            synchronized (mutex) {
+                page = dao.nextWaitItems(last, PAGE_SIZE);
+                processPage(page);
+            }
+
+            if (page.size() < PAGE_SIZE) {
                 return;
             }
 
-            WaitType type = p.waits().type();
-            processHandler(type, p);
-            lastUpdatedAt = p.lastUpdatedAt();
+            last = page.get(page.size() - 1);
         }
     }
 
-    private void processHandler(WaitType type, WaitingProcess p) {
-        ProcessWaitHandler<AbstractWaitCondition> handler = processWaitHandlers.get(type);
-        if (handler == null) {
-            log.warn("performTask ['{}'] -> handler '{}' not found", p.instanceId(), type);
+    /**
+     * Re-checks the wait conditions of the specified processes.
+     * Processes without wait conditions are ignored.
+     */
+    public void process(Collection<UUID> instanceIds) {
+        if (instanceIds.isEmpty()) {
             return;
         }
 
-        try {
-            AbstractWaitCondition originalWaits = p.waits();
-            AbstractWaitCondition processedWaits = handler.process(p.instanceId(), p.status(), originalWaits);
-            if (!originalWaits.equals(processedWaits)) {
-                processQueueDao.updateWait(new ProcessKey(p.instanceId(), p.instanceCreatedAt()), processedWaits);
-            }
-        } catch (Exception e) {
-            log.info("processHandler ['{}', '{}'] -> error", type, p, e);
+        synchronized (mutex) {
+            processPage(dao.getWaitItems(instanceIds));
         }
     }
 
-    @Value.Immutable
-    interface WaitingProcess {
+    /**
+     * Re-checks the wait conditions of the processes waiting for
+     * the specified processes (or their locks).
+     */
+    public void processWaitersOf(Collection<UUID> awaited) {
+        if (awaited.isEmpty()) {
+            return;
+        }
+
+        synchronized (mutex) {
+            processPage(dao.getWaitItemsByAwaited(awaited));
+        }
+    }
+
+    private void processPage(List<WaitingProcess> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+
+        Map<WaitType, List<WaitingProcess>> byType = new EnumMap<>(WaitType.class);
+        for (WaitingProcess p : page) {
+            byType.computeIfAbsent(p.waits().type(), k -> new ArrayList<>()).add(p);
+        }
+
+        // null values are allowed, they mean "no more waits"
+        Map<ProcessKey, AbstractWaitCondition> updates = new LinkedHashMap<>();
+        Map<ProcessKey, WaitingProcess> updated = new HashMap<>();
+        byType.forEach((type, processes) -> processHandler(type, processes, updates, updated));
 
-        UUID instanceId();
+        if (updates.isEmpty()) {
+            return;
+        }
+
+        Map<ProcessKey, AbstractWaitCondition> expected = new HashMap<>();
+        updated.forEach((k, p) -> expected.put(k, p.waits()));
+
+        Set<ProcessKey> keys;
+        try {
+            keys = processQueueDao.updateWaits(expected, updates);
+        } catch (Exception e) {
+            log.warn("processPage -> error while updating {} wait condition(s)", updates.size(), e);
+            return;
+        }
 
-        ProcessStatus status();
+        for (ProcessKey k : keys) {
+            onUpdate(k, updated.get(k), updates.get(k));
+        }
+    }
 
-        Timestamp instanceCreatedAt();
+    private void onUpdate(ProcessKey key, WaitingProcess p, AbstractWaitCondition waits) {
+        ProcessWaitHandler<AbstractWaitCondition> handler = processWaitHandlers.get(p.waits().type());
+        try {
+            handler.onUpdate(p, waits);
+        } catch (Exception e) {
+            log.warn("onUpdate ['{}'] -> error, restoring the wait conditions", p.instanceId(), e);
+            try {
+                processQueueDao.updateWaits(Collections.singletonMap(key, waits), Collections.singletonMap(key, p.waits()));
+            } catch (Exception ee) {
+                log.error("onUpdate ['{}'] -> error while restoring the wait conditions", p.instanceId(), ee);
+            }
+        }
+    }
 
-        Timestamp lastUpdatedAt();
+    private void processHandler(WaitType type, List<WaitingProcess> processes,
+                                Map<ProcessKey, AbstractWaitCondition> updates, Map<ProcessKey, WaitingProcess> updated) {
+        ProcessWaitHandler<AbstractWaitCondition> handler = processWaitHandlers.get(type);
+        if (handler == null) {
+            log.warn("performTask -> handler '{}' not found, skipping {} process(es)", type, processes.size());
+            return;
+        }
 
-        AbstractWaitCondition waits();
+        List<AbstractWaitCondition> processedWaits;
+        try {
+            processedWaits = handler.process(processes);
+        } catch (Exception e) {
+            log.info("processHandler ['{}', {} process(es)] -> error", type, processes.size(), e);
+            return;
+        }
 
-        static ImmutableWaitingProcess.Builder builder() {
-            return ImmutableWaitingProcess.builder();
+        for (int i = 0; i < processes.size(); i++) {
+            WaitingProcess p = processes.get(i);
+            AbstractWaitCondition originalWaits = p.waits();
+            AbstractWaitCondition waits = processedWaits.get(i);
+            if (!originalWaits.equals(waits)) {
+                ProcessKey k = new ProcessKey(p.instanceId(), p.instanceCreatedAt());
+                updates.put(k, waits);
+                updated.put(k, p);
+            } else {
+                // the process might've been registered by another server
+                waitIndex.update(p.instanceId(), originalWaits);
+            }
         }
     }
 
     @Named
-    private static final class WatchdogDao extends AbstractDao {
+    static class WatchdogDao extends AbstractDao {
 
         private final ObjectMapper objectMapper;
 
@@ -138,7 +231,11 @@ public class ProcessWaitWatchdog implements ScheduledTask {
             this.objectMapper = objectMapper;
         }
 
-        public WaitingProcess nextWaitItem(Timestamp lastUpdatedAt) {
+        /**
+         * Returns the next page of waiting processes, ordered by
+         * {@code (LAST_UPDATED_AT, INSTANCE_ID)} and starting after {@code last}.
+         */
+        public List<WaitingProcess> nextWaitItems(WaitingProcess last, int limit) {
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
                 SelectConditionStep<Record5<UUID, String, Timestamp, Timestamp, Object>> s = tx.select(
@@ -150,22 +247,69 @@ public class ProcessWaitWatchdog implements ScheduledTask {
                         .from(q)
                         .where(q.WAIT_CONDITIONS.isNotNull());
 
-                if (lastUpdatedAt != null) {
-                    s.and(q.LAST_UPDATED_AT.greaterThan(lastUpdatedAt));
+                if (last != null) {
+                    s.and(row(q.LAST_UPDATED_AT, q.INSTANCE_ID).gt(last.lastUpdatedAt(), last.instanceId()));
                 }
 
-                return s.orderBy(q.LAST_UPDATED_AT)
-                        .limit(1)
-                        .fetchOne(r -> WaitingProcess.builder()
-                                .instanceId(r.value1())
-                                .status(ProcessStatus.valueOf(r.value2()))
-                                .instanceCreatedAt(r.value3())
-                                .lastUpdatedAt(r.value4())
-                                .waits(deserialize(r.value5()))
-                                .build());
+                return s.orderBy(q.LAST_UPDATED_AT, q.INSTANCE_ID)
+                        .limit(limit)
+                        .fetch(this::toEntry);
+            });
+        }
+
+        public List<WaitingProcess> getWaitItems(Collection<UUID> instanceIds) {
+            return txResult(tx -> {
+                ProcessQueue q = PROCESS_QUEUE.as("q");
+                return tx.select(
+                        q.INSTANCE_ID,
+                        q.CURRENT_STATUS,
+                        q.CREATED_AT,
+                        q.LAST_UPDATED_AT,
+                        q.WAIT_CONDITIONS)
+                        .from(q)
+                        .where(q.INSTANCE_ID.in(instanceIds)
+                                .and(q.WAIT_CONDITIONS.isNotNull()))
+                        .fetch(this::toEntry);
+            });
+        }
+
+        /**
+         * Returns the processes waiting for the specified processes to finish
+         * or to release their locks.
+         */
+        public List<WaitingProcess> getWaitItemsByAwaited(Collection<UUID> awaited) {
+            String[] ids = awaited.stream()
+                    .map(UUID::toString)
+                    .toArray(String[]::new);
+
+            return txResult(tx -> {
+                ProcessQueue q = PROCESS_QUEUE.as("q");
+                return tx.select(
+                        q.INSTANCE_ID,
+                        q.CURRENT_STATUS,
+                        q.CREATED_AT,
+                        q.LAST_UPDATED_AT,
+                        q.WAIT_CONDITIONS)
+                        .from(q)
+                        .where(q.WAIT_CONDITIONS.isNotNull()
+                                // PROCESS_COMPLETION
+                                .and(condition("jsonb_exists_any({0}->'processes', {1}::text[])", q.WAIT_CONDITIONS, val(ids))
+                                        // PROCESS_LOCK
+                                        .or(condition("{0}->>'instanceId' = any({1}::text[])", q.WAIT_CONDITIONS, val(ids)))))
+                        .fetch(this::toEntry);
             });
         }
 
+        private WaitingProcess toEntry(Record5<UUID, String, Timestamp, Timestamp, Object> r) {
+            return WaitingProcess.builder()
+                    .instanceId(r.value1())
+                    .status(ProcessStatus.valueOf(r.value2()))
+                    .instanceCreatedAt(r.value3())
+                    .lastUpdatedAt(r.value4())
+                    .waits(deserialize(r.value5()))
+                    .build();
+        }
+
         private AbstractWaitCondition deserialize(Object o) {
             if (o == null) {
                 return null;
@@ -21,6 +21,7 @@ package com.walmartlabs.concord.server.process.queue;
  */
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import com.walmartlabs.concord.db.AbstractDao;
 import com.walmartlabs.concord.server.jooq.tables.ProcessQueue;
 import com.walmartlabs.concord.server.process.ProcessStatus;
@@ -29,10 +30,7 @@ import org.jooq.Configuration;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
 
@@ -56,15 +54,31 @@ public class WaitProcessFinishHandler implements ProcessWaitHandler<ProcessCompl
     }
 
     @Override
-    public ProcessCompletionCondition process(UUID instanceId, ProcessStatus status, ProcessCompletionCondition wait) {
-        List<UUID> awaitProcesses = wait.processes();
-        List<UUID> finishedProcesses = dao.findFinished(awaitProcesses);
-        if (finishedProcesses.isEmpty()) {
-            return wait;
+    public List<ProcessCompletionCondition> process(List<WaitingProcess> processes) {
+        // statuses of all awaited processes in the page are fetched at once
+        Set<UUID> awaitProcesses = new HashSet<>();
+        for (WaitingProcess p : processes) {
+            awaitProcesses.addAll(((ProcessCompletionCondition) p.waits()).processes());
         }
 
+        Set<UUID> finishedProcesses = dao.findFinished(awaitProcesses);
+
+        List<ProcessCompletionCondition> result = new ArrayList<>(processes.size());
+        for (WaitingProcess p : processes) {
+            result.add(process((ProcessCompletionCondition) p.waits(), finishedProcesses));
+        }
+        return result;
+    }
+
+    private static ProcessCompletionCondition process(ProcessCompletionCondition wait, Set<UUID> finishedProcesses) {
+        List<UUID> awaitProcesses = wait.processes();
+
         List<UUID> processes = new ArrayList<>(awaitProcesses);
         processes.removeAll(finishedProcesses);
+        if (processes.size() == awaitProcesses.size()) {
+            return wait;
+        }
+
         if (processes.isEmpty()) {
             return null;
         }
@@ -75,6 +89,8 @@ public class WaitProcessFinishHandler implements ProcessWaitHandler<ProcessCompl
     @Named
     private static final class Dao extends AbstractDao {
 
+        private static final int MAX_IDS_PER_QUERY = 1000;
+
         private static final Set<ProcessStatus> FINISHED_STATUSES = ImmutableSet.of(
                 ProcessStatus.FINISHED,
                 ProcessStatus.FAILED,
@@ -86,14 +102,23 @@ public class WaitProcessFinishHandler implements ProcessWaitHandler<ProcessCompl
             super(cfg);
         }
 
-        public List<UUID> findFinished(List<UUID> awaitProcesses) {
+        public Set<UUID> findFinished(Collection<UUID> awaitProcesses) {
+            if (awaitProcesses.isEmpty()) {
+                return Collections.emptySet();
+            }
+
             return txResult(tx -> {
                 ProcessQueue q = PROCESS_QUEUE.as("q");
-                return tx.select(q.INSTANCE_ID)
-                        .from(q)
-                        .where(q.INSTANCE_ID.in(awaitProcesses)
-                                .and(q.CURRENT_STATUS.in(FINISHED_STATUSES)))
-                        .fetch(q.INSTANCE_ID);
+
+                Set<UUID> result = new HashSet<>();
+                for (List<UUID> ids : Iterables.partition(awaitProcesses, MAX_IDS_PER_QUERY)) {
+                    result.addAll(tx.select(q.INSTANCE_ID)
+                            .from(q)
+                            .where(q.INSTANCE_ID.in(ids)
+                                    .and(q.CURRENT_STATUS.in(FINISHED_STATUSES)))
+                            .fetch(q.INSTANCE_ID));
+                }
+                return result;
             });
         }
     }
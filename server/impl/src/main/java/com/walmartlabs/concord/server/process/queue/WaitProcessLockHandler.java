@@ -24,28 +24,40 @@ import com.walmartlabs.concord.server.ConcordApplicationException;
 import com.walmartlabs.concord.server.process.*;
 import com.walmartlabs.concord.server.process.locks.LockEntry;
 import com.walmartlabs.concord.server.process.locks.ProcessLocksDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * Handles the processes that are waiting for locks. Resumes a suspended process
- * if the lock was acquired successfully.
+ * if the lock was acquired successfully and the wait conditions were removed.
+ * <p>
+ * The handler can run concurrently on multiple servers (the watchdog sweep and
+ * {@link ProcessWaitResolver}). A process is resumed only by the server that
+ * moves it from {@code SUSPENDED} to {@code RESUMING}.
  */
 @Named
 @Singleton
 public class WaitProcessLockHandler implements ProcessWaitHandler<ProcessLockCondition> {
 
+    private static final Logger log = LoggerFactory.getLogger(WaitProcessLockHandler.class);
+
     private final ProcessLocksDao locksDao;
+    private final ProcessQueueDao queueDao;
     private final ProcessManager processManager;
     private final PayloadManager payloadManager;
 
     @Inject
-    public WaitProcessLockHandler(ProcessLocksDao locksDao, ProcessManager processManager, PayloadManager payloadManager) {
+    public WaitProcessLockHandler(ProcessLocksDao locksDao, ProcessQueueDao queueDao, ProcessManager processManager, PayloadManager payloadManager) {
         this.locksDao = locksDao;
+        this.queueDao = queueDao;
         this.processManager = processManager;
         this.payloadManager = payloadManager;
     }
@@ -56,20 +68,56 @@ public class WaitProcessLockHandler implements ProcessWaitHandler<ProcessLockCon
     }
 
     @Override
-    public ProcessLockCondition process(UUID instanceId, ProcessStatus status, ProcessLockCondition wait) {
+    public List<ProcessLockCondition> process(List<WaitingProcess> processes) {
+        // locks are acquired one by one, the processes are resumed in #onUpdate
+        List<ProcessLockCondition> result = new ArrayList<>(processes.size());
+        for (WaitingProcess p : processes) {
+            ProcessLockCondition wait = (ProcessLockCondition) p.waits();
+            try {
+                result.add(process(p.instanceId(), p.status(), wait));
+            } catch (Exception e) {
+                log.warn("process ['{}'] -> error", p.instanceId(), e);
+                result.add(wait);
+            }
+        }
+        return result;
+    }
+
+    private ProcessLockCondition process(UUID instanceId, ProcessStatus status, ProcessLockCondition wait) {
         if (status != ProcessStatus.SUSPENDED) {
             return wait;
         }
 
         LockEntry lock = locksDao.tryLock(instanceId, wait.orgId(), wait.projectId(), wait.scope(), wait.name());
         if (lock.instanceId().equals(instanceId)) {
-            resumeProcess(instanceId, wait.name());
             return null;
         }
 
         return ProcessLockCondition.from(lock);
     }
 
+    @Override
+    public void onUpdate(WaitingProcess process, ProcessLockCondition waits) {
+        if (waits != null) {
+            return;
+        }
+
+        // the lock is acquired and the wait conditions are removed
+        ProcessKey processKey = new ProcessKey(process.instanceId(), process.instanceCreatedAt());
+        if (!queueDao.updateStatus(processKey, ProcessStatus.SUSPENDED, ProcessStatus.RESUMING)) {
+            log.info("onUpdate ['{}'] -> skipped, the process is not suspended", process.instanceId());
+            return;
+        }
+
+        try {
+            resumeProcess(process.instanceId(), ((ProcessLockCondition) process.waits()).name());
+        } catch (Exception e) {
+            // let the next pass try again
+            queueDao.updateStatus(processKey, ProcessStatus.RESUMING, ProcessStatus.SUSPENDED);
+            throw e;
+        }
+    }
+
     private void resumeProcess(UUID instanceId, String eventName) {
         Payload payload;
         try {
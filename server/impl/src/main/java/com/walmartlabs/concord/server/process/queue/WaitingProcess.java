@@ -0,0 +1,48 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.ProcessStatus;
+import org.immutables.value.Value;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+/**
+ * A process with wait conditions.
+ */
+@Value.Immutable
+public interface WaitingProcess {
+
+    UUID instanceId();
+
+    ProcessStatus status();
+
+    Timestamp instanceCreatedAt();
+
+    Timestamp lastUpdatedAt();
+
+    AbstractWaitCondition waits();
+
+    static ImmutableWaitingProcess.Builder builder() {
+        return ImmutableWaitingProcess.builder();
+    }
+}
@@ -0,0 +1,76 @@
+package com.walmartlabs.concord.server.process.state;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.Serializable;
+
+/**
+ * A single item of the process state manifest.
+ */
+@JsonInclude(Include.NON_NULL)
+public class ProcessStateItem implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String path;
+    private final String hash;
+    private final int unixMode;
+
+    @JsonCreator
+    public ProcessStateItem(@JsonProperty("path") String path,
+                            @JsonProperty("hash") String hash,
+                            @JsonProperty("unixMode") int unixMode) {
+
+        this.path = path;
+        this.hash = hash;
+        this.unixMode = unixMode;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * MD5 of the item's data. {@code null} for encrypted items, those
+     * must not be cached outside of the server.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public int getUnixMode() {
+        return unixMode;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessStateItem{" +
+                "path='" + path + '\'' +
+                ", hash='" + hash + '\'' +
+                ", unixMode=" + unixMode +
+                '}';
+    }
+}
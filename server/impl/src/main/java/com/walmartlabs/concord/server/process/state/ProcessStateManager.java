@@ -20,6 +20,7 @@ package com.walmartlabs.concord.server.process.state;
  * =====
  */
 
+import com.google.common.io.ByteStreams;
 import com.walmartlabs.concord.common.IOUtils;
 import com.walmartlabs.concord.common.Posix;
 import com.walmartlabs.concord.db.AbstractDao;
@@ -29,15 +30,20 @@ import com.walmartlabs.concord.server.metrics.WithTimer;
 import com.walmartlabs.concord.server.org.secret.SecretUtils;
 import com.walmartlabs.concord.server.process.PartialProcessKey;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import org.apache.commons.compress.archivers.zip.AsiExtraField;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.jooq.Condition;
 import org.jooq.Configuration;
 import org.jooq.DSLContext;
 import org.jooq.impl.DSL;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -60,8 +66,12 @@ import static com.walmartlabs.concord.server.jooq.tables.ProcessState.PROCESS_ST
 @Singleton
 public class ProcessStateManager extends AbstractDao {
 
+    private static final Logger log = LoggerFactory.getLogger(ProcessStateManager.class);
+
     private static final String PATH_SEPARATOR = "/";
 
+    private static final int EXPORT_PAGE_SIZE = 10;
+
     private final SecretStoreConfiguration secretCfg;
     private final Set<String> secureFiles = new HashSet<>();
 
@@ -281,24 +291,28 @@ public class ProcessStateManager extends AbstractDao {
      */
     @WithTimer
     public void importPath(ProcessKey processKey, String path, Path src) {
-        tx(tx -> importPath(tx, processKey.getInstanceId(), processKey.getCreatedAt(), path, src, (p, attrs) -> true));
+        tx(tx -> importPath(tx, processKey.getInstanceId(), processKey.getCreatedAt(), path, src, (p, attrs) -> true, true));
     }
 
     /**
      * Imports data from the specified directory or a file replacing the existing data.
      * If the filter function returns {@code false}, the matching file will be skipped.
      */
+    @WithTimer
     public void replacePath(ProcessKey processKey, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
         UUID instanceId = processKey.getInstanceId();
         Timestamp instanceCreatedAt = processKey.getCreatedAt();
 
         tx(tx -> {
             delete(tx, instanceId, instanceCreatedAt);
-            importPath(tx, instanceId, instanceCreatedAt, null, src, filter);
+            // the whole instance was just cleared, no need to delete the individual items
+            importPath(tx, instanceId, instanceCreatedAt, null, src, filter, false);
         });
     }
 
-    private void importPath(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path, Path src, BiFunction<Path, BasicFileAttributes, Boolean> filter) {
+    private void importPath(DSLContext tx, UUID instanceId, Timestamp instanceCreatedAt, String path, Path src,
+                            BiFunction<Path, BasicFileAttributes, Boolean> filter, boolean replaceExisting) {
+
         String prefix = fixPath(path);
 
         String sql = tx.insertInto(PROCESS_STATE)
@@ -306,65 +320,141 @@ public class ProcessStateManager extends AbstractDao {
                 .values((UUID) null, null, null, null, null, null)
                 .getSQL();
 
-        try {
-            Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Path p = src.relativize(file);
+        tx.connection(conn -> {
+            try (PreparedStatement ps = conn.prepareStatement(sql);
+                 ImportBatch batch = new ImportBatch(tx, ps, instanceId, instanceCreatedAt, replaceExisting)) {
+
+                Files.walkFileTree(src, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        Path p = src.relativize(file);
+
+                        if (!filter.apply(p, attrs)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        String n = p.toString();
+                        if (prefix != null) {
+                            n = prefix + n;
+                        }
+
+                        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+                        int unixMode = Posix.unixMode(permissions);
+
+                        try {
+                            batch.add(n, unixMode, file, attrs.size());
+                        } catch (SQLException e) {
+                            throw new RuntimeException(e);
+                        }
 
-                    if (!filter.apply(p, attrs)) {
                         return FileVisitResult.CONTINUE;
                     }
+                });
 
-                    String n = p.toString();
-                    if (prefix != null) {
-                        n = prefix + n;
-                    }
+                batch.flush();
+            }
+        });
+    }
 
-                    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
-                    int unixMode = Posix.unixMode(permissions);
-                    boolean needsEncryption = secureFiles.contains(n);
+    /**
+     * Accumulates inserts of process state items and executes them in batches
+     * using a single prepared statement. Unencrypted files are streamed
+     * directly from the disk, so the files are kept open until the batch is
+     * executed.
+     */
+    private final class ImportBatch implements AutoCloseable {
 
-                    tx.deleteFrom(PROCESS_STATE).where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
-                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
-                            .and(PROCESS_STATE.ITEM_PATH.eq(n)))
-                            .execute();
+        private static final int MAX_BATCH_SIZE = 100;
 
-                    String itemPath = n;
-                    tx.connection(conn -> {
-                        try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                            // INSTANCE_ID
-                            ps.setObject(1, instanceId);
+        private final DSLContext tx;
+        private final PreparedStatement ps;
+        private final UUID instanceId;
+        private final Timestamp instanceCreatedAt;
+        private final boolean replaceExisting;
 
-                            // INSTANCE_CREATED_AT
-                            ps.setTimestamp(2, instanceCreatedAt);
+        private final List<String> paths = new ArrayList<>();
+        private final List<InputStream> streams = new ArrayList<>();
 
-                            // ITEM_PATH
-                            ps.setString(3, itemPath);
+        private ImportBatch(DSLContext tx, PreparedStatement ps, UUID instanceId, Timestamp instanceCreatedAt, boolean replaceExisting) {
+            this.tx = tx;
+            this.ps = ps;
+            this.instanceId = instanceId;
+            this.instanceCreatedAt = instanceCreatedAt;
+            this.replaceExisting = replaceExisting;
+        }
 
-                            // UNIX_MODE
-                            ps.setInt(4, unixMode);
+        public void add(String itemPath, int unixMode, Path file, long size) throws IOException, SQLException {
+            boolean needsEncryption = secureFiles.contains(itemPath);
 
-                            // ITEM_DATA
-                            try (InputStream in = Files.newInputStream(file);
-                                 InputStream processed = needsEncryption ? encrypt(in) : in) {
-                                ps.setBinaryStream(5, processed);
-                            }
+            // INSTANCE_ID
+            ps.setObject(1, instanceId);
 
-                            // IS_ENCRYPTED
-                            ps.setBoolean(6, needsEncryption);
+            // INSTANCE_CREATED_AT
+            ps.setTimestamp(2, instanceCreatedAt);
 
-                            ps.execute();
-                        } catch (SQLException e) {
-                            throw new RuntimeException(e);
-                        }
-                    });
+            // ITEM_PATH
+            ps.setString(3, itemPath);
+
+            // UNIX_MODE
+            ps.setInt(4, unixMode);
 
-                    return FileVisitResult.CONTINUE;
+            // ITEM_DATA
+            if (needsEncryption) {
+                // the size of encrypted data is not known in advance, encrypted files are small anyway
+                try (InputStream in = Files.newInputStream(file);
+                     InputStream processed = encrypt(in)) {
+                    ps.setBytes(5, ByteStreams.toByteArray(processed));
                 }
-            });
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            } else {
+                InputStream in = Files.newInputStream(file);
+                streams.add(in);
+                ps.setBinaryStream(5, in, size);
+            }
+
+            // IS_ENCRYPTED
+            ps.setBoolean(6, needsEncryption);
+
+            ps.addBatch();
+            paths.add(itemPath);
+
+            if (paths.size() >= MAX_BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        public void flush() throws SQLException {
+            if (paths.isEmpty()) {
+                return;
+            }
+
+            if (replaceExisting) {
+                tx.deleteFrom(PROCESS_STATE)
+                        .where(PROCESS_STATE.INSTANCE_ID.eq(instanceId)
+                                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(instanceCreatedAt))
+                                .and(PROCESS_STATE.ITEM_PATH.in(paths)))
+                        .execute();
+            }
+
+            ps.executeBatch();
+
+            paths.clear();
+            closeStreams();
+        }
+
+        @Override
+        public void close() {
+            closeStreams();
+        }
+
+        private void closeStreams() {
+            for (InputStream in : streams) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    log.warn("closeStreams -> error while closing a file: {}", e.getMessage());
+                }
+            }
+            streams.clear();
         }
     }
 
@@ -372,36 +462,77 @@ public class ProcessStateManager extends AbstractDao {
      * Exports all data of a process instance.
      */
     public boolean export(ProcessKey processKey, ItemConsumer consumer) {
+        return export(processKey, null, consumer);
+    }
+
+    /**
+     * Lists all items of a process instance without fetching the data.
+     * The hashes are calculated by the DB when the items are written and
+     * only for unencrypted items.
+     */
+    @WithTimer
+    public List<ProcessStateItem> manifest(ProcessKey processKey) {
         try (DSLContext tx = DSL.using(cfg)) {
-            String sql = tx
-                    .select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
+            return tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.ITEM_HASH, PROCESS_STATE.UNIX_MODE)
                     .from(PROCESS_STATE)
-                    .where(PROCESS_STATE.INSTANCE_ID.eq((UUID) null).and(PROCESS_STATE.INSTANCE_CREATED_AT.eq((Timestamp) null)))
-                    .getSQL();
+                    .where(PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                            .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt())))
+                    .fetch(r -> new ProcessStateItem(r.value1(), r.value2(), r.value3()));
+        }
+    }
 
-            return tx.connectionResult(conn -> {
-                try (PreparedStatement ps = conn.prepareStatement(sql)) {
-                    ps.setObject(1, processKey.getInstanceId());
-                    ps.setTimestamp(2, processKey.getCreatedAt());
+    /**
+     * Exports the specified items of a process instance.
+     */
+    public boolean exportItems(ProcessKey processKey, Collection<String> paths, ItemConsumer consumer) {
+        return export(processKey, PROCESS_STATE.ITEM_PATH.in(paths), consumer);
+    }
 
-                    boolean found = false;
-                    try (ResultSet rs = ps.executeQuery()) {
-                        while (rs.next()) {
-                            found = true;
+    /**
+     * Exports the items in pages ordered by path. Each page is fetched with
+     * a separate short query, so the DB connection is not held while
+     * the consumer processes the data (e.g. sends it to a slow client).
+     */
+    private boolean export(ProcessKey processKey, Condition filter, ItemConsumer consumer) {
+        boolean found = false;
+        String lastPath = null;
 
-                            String n = rs.getString(1);
-                            int unixMode = rs.getInt(2);
-                            boolean encrypted = rs.getBoolean(3);
-                            try (InputStream in = rs.getBinaryStream(4);
-                                 InputStream processed = encrypted ? decrypt(in) : in) {
-                                consumer.accept(n, unixMode, processed);
-                            }
-                        }
-                    }
+        while (true) {
+            List<StateItem> page = nextPage(processKey, filter, lastPath);
+            for (StateItem i : page) {
+                found = true;
 
-                    return found;
-                }
-            });
+                byte[] data = i.encrypted ? decrypt(i.data) : i.data;
+                consumer.accept(i.path, i.unixMode, new ByteArrayInputStream(data));
+            }
+
+            if (page.size() < EXPORT_PAGE_SIZE) {
+                return found;
+            }
+
+            lastPath = page.get(page.size() - 1).path;
+        }
+    }
+
+    private List<StateItem> nextPage(ProcessKey processKey, Condition filter, String lastPath) {
+        Condition c = PROCESS_STATE.INSTANCE_ID.eq(processKey.getInstanceId())
+                .and(PROCESS_STATE.INSTANCE_CREATED_AT.eq(processKey.getCreatedAt()));
+
+        if (filter != null) {
+            c = c.and(filter);
+        }
+
+        if (lastPath != null) {
+            c = c.and(PROCESS_STATE.ITEM_PATH.gt(lastPath));
+        }
+
+        try (DSLContext tx = DSL.using(cfg)) {
+            return tx.select(PROCESS_STATE.ITEM_PATH, PROCESS_STATE.UNIX_MODE, PROCESS_STATE.IS_ENCRYPTED, PROCESS_STATE.ITEM_DATA)
+                    .from(PROCESS_STATE)
+                    .where(c)
+                    .orderBy(PROCESS_STATE.ITEM_PATH)
+                    .limit(EXPORT_PAGE_SIZE)
+                    .fetch(r -> new StateItem(r.value1(), r.value2() != null ? r.value2().intValue() : 0, Boolean.TRUE.equals(r.value3()), r.value4()));
         }
     }
 
@@ -447,6 +578,10 @@ public class ProcessStateManager extends AbstractDao {
         }
     }
 
+    private byte[] decrypt(byte[] in) {
+        return SecretUtils.decrypt(in, secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt());
+    }
+
     private InputStream decrypt(InputStream in) {
         return SecretUtils.decrypt(in, secretCfg.getServerPwd(), secretCfg.getSecretStoreSalt());
     }
@@ -554,6 +689,21 @@ public class ProcessStateManager extends AbstractDao {
         return t;
     }
 
+    private static final class StateItem {
+
+        private final String path;
+        private final int unixMode;
+        private final boolean encrypted;
+        private final byte[] data;
+
+        private StateItem(String path, int unixMode, boolean encrypted, byte[] data) {
+            this.path = path;
+            this.unixMode = unixMode;
+            this.encrypted = encrypted;
+            this.data = data;
+        }
+    }
+
     public static final class CopyConsumer implements ItemConsumer {
 
         private final Path dst;
@@ -608,6 +758,11 @@ public class ProcessStateManager extends AbstractDao {
             ZipArchiveEntry entry = new ZipArchiveEntry(name);
             entry.setUnixMode(unixMode);
 
+            // duplicate the mode in the local header for the clients that unpack the archive as a stream
+            AsiExtraField asi = new AsiExtraField();
+            asi.setMode(unixMode);
+            entry.addExtraField(asi);
+
             try {
                 dst.putArchiveEntry(entry);
                 IOUtils.copy(src, dst);
@@ -77,6 +77,12 @@ public class ClasspathRepositoryProvider implements RepositoryProvider {
         return (path, attrs) -> true;
     }
 
+    @Override
+    public Snapshot exportCommit(Path repo, String commitId, String path, Path dst) throws IOException {
+        // classpath repositories don't have commits, export the fetched files
+        return export(repo, dst);
+    }
+
     @Override
     public RepositoryInfo getInfo(Path path) {
         return null;
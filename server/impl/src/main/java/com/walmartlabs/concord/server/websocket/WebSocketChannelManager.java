@@ -25,9 +25,11 @@ import com.walmartlabs.concord.server.queueclient.message.MessageType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -39,9 +41,15 @@ public class WebSocketChannelManager {
     private static final Logger log = LoggerFactory.getLogger(WebSocketChannelManager.class);
 
     private final Map<UUID, WebSocketChannel> channels = new ConcurrentHashMap<>();
+    private final List<WebSocketRequestListener> listeners;
 
     private volatile boolean isShutdown;
 
+    @Inject
+    public WebSocketChannelManager(List<WebSocketRequestListener> listeners) {
+        this.listeners = listeners;
+    }
+
     public boolean isShutdown() {
         return isShutdown;
     }
@@ -73,6 +81,8 @@ public class WebSocketChannelManager {
         }
 
         channel.onRequest(message);
+
+        listeners.forEach(l -> l.onRequest(message));
     }
 
     /**
@@ -69,6 +69,9 @@ public class WebSocketCreator implements org.eclipse.jetty.websocket.servlet.Web
             return null;
         }
 
+        // let the agent know that it can use batch requests
+        resp.setHeader(InternalConstants.Headers.BATCH_REQUESTS, "true");
+
         UUID channelId = UUID.randomUUID();
         String channelInfo = req.getHeader(InternalConstants.Headers.AGENT);
         return new WebSocketListener(channelManager, channelId, channelInfo);
@@ -0,0 +1,141 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.events.GithubEventDao.Status;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+@Ignore("requires a local DB instance")
+public class GithubEventDaoTest extends AbstractDaoTest {
+
+    private GithubEventDao dao;
+
+    @Before
+    public void setUp() {
+        dao = new GithubEventDao(getConfiguration(), TestObjectMapper.INSTANCE);
+    }
+
+    @Test
+    public void testRetry() {
+        String repo = insert();
+
+        GithubEventEntry e = poll(repo);
+        assertNotNull(e);
+        assertEquals(1, e.attempt());
+
+        // a wrong claim can't modify the event
+        assertFalse(dao.retry(e.seq(), UUID.randomUUID(), "0 seconds"));
+        assertTrue(dao.retry(e.seq(), e.claimId(), "0 seconds"));
+
+        GithubEventEntry retry = poll(repo);
+        assertNotNull(retry);
+        assertEquals(e.seq(), retry.seq());
+        assertEquals(2, retry.attempt());
+        assertNotEquals(e.claimId(), retry.claimId());
+
+        Long latency = dao.finish(retry.seq(), retry.claimId(), Status.DONE);
+        assertNotNull(latency);
+        assertTrue(latency >= 0);
+
+        assertNull(poll(repo));
+    }
+
+    @Test
+    public void testRetryDelay() {
+        String repo = insert();
+        insert(repo);
+
+        GithubEventEntry e = poll(repo);
+        assertNotNull(e);
+        assertTrue(dao.retry(e.seq(), e.claimId(), "1 hour"));
+
+        // neither the delayed event nor the subsequent events of the same repo are returned
+        assertNull(poll(repo));
+    }
+
+    @Test
+    public void testStalled() throws Exception {
+        String repo = insert();
+
+        GithubEventEntry e = poll(repo);
+        assertNotNull(e);
+
+        // the heartbeat keeps the event claimed
+        Thread.sleep(100);
+        assertEquals(1, dao.heartbeat(Collections.singleton(e.claimId())));
+        dao.resetStalled("1 minute", 3);
+        assertNull(poll(repo));
+
+        // without the heartbeat the event is returned to the queue and the claim is revoked
+        Thread.sleep(100);
+        dao.resetStalled("10 milliseconds", 3);
+        assertNull(dao.finish(e.seq(), e.claimId(), Status.DONE));
+        assertEquals(0, dao.heartbeat(Collections.singleton(e.claimId())));
+
+        GithubEventEntry retry = poll(repo);
+        assertNotNull(retry);
+        assertEquals(2, retry.attempt());
+
+        // the last attempt is failed
+        Thread.sleep(100);
+        dao.resetStalled("10 milliseconds", 2);
+        assertNull(dao.finish(retry.seq(), retry.claimId(), Status.DONE));
+        assertNull(poll(repo));
+    }
+
+    private String insert() {
+        String repo = "org/repo_" + UUID.randomUUID();
+        insert(repo);
+        return repo;
+    }
+
+    private void insert(String repo) {
+        assertTrue(dao.insert(UUID.randomUUID().toString(), "push", repo, UUID.randomUUID(),
+                null, null, null, Collections.singletonMap("ref", "refs/heads/master")));
+    }
+
+    /**
+     * Polls the queue until an event of the specified repository is found.
+     * The test DB can contain the events of other tests.
+     */
+    private GithubEventEntry poll(String repo) {
+        List<GithubEventEntry> l = dao.poll(100);
+        GithubEventEntry result = null;
+        for (GithubEventEntry e : l) {
+            if (e.repoName().equals(repo)) {
+                result = e;
+            } else {
+                dao.finish(e.seq(), e.claimId(), Status.DONE);
+            }
+        }
+        return result;
+    }
+}
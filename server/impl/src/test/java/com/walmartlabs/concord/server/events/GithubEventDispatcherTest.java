@@ -0,0 +1,163 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.walmartlabs.concord.server.cfg.GithubConfiguration;
+import com.walmartlabs.concord.server.events.GithubEventDao.Status;
+import com.walmartlabs.concord.server.process.ProcessSecurityContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class GithubEventDispatcherTest {
+
+    private GithubEventDao dao;
+    private GithubEventResource resource;
+    private GithubEventDispatcher dispatcher;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        GithubConfiguration cfg = mock(GithubConfiguration.class);
+        when(cfg.getEventQueueWorkers()).thenReturn(2);
+        when(cfg.getEventQueuePollInterval()).thenReturn(1000L);
+        when(cfg.getEventQueueMaxAttempts()).thenReturn(2);
+        when(cfg.getEventQueueRetryDelay()).thenReturn("1 minute");
+        when(cfg.getEventQueueMaxStalledAge()).thenReturn("10 minutes");
+
+        ProcessSecurityContext securityContext = mock(ProcessSecurityContext.class);
+        when(securityContext.runAs(any(), any())).thenAnswer(i -> ((Callable<Object>) i.getArgument(1)).call());
+
+        dao = mock(GithubEventDao.class);
+        resource = mock(GithubEventResource.class);
+
+        dispatcher = new GithubEventDispatcher(cfg, dao, () -> resource, securityContext);
+        dispatcher.eventLatency = new MetricRegistry().timer("test");
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void testDone() throws Exception {
+        GithubEventEntry e = event(1);
+        when(dao.poll(anyInt())).thenReturn(Collections.singletonList(e));
+        when(dao.finish(anyLong(), any(), any())).thenReturn(100L);
+
+        dispatcher.performTask();
+
+        verify(dao, timeout(5000)).finish(e.seq(), e.claimId(), Status.DONE);
+        verify(dao, never()).retry(anyLong(), any(), any());
+
+        // the latency is recorded right after the status update
+        long deadline = System.currentTimeMillis() + 5000;
+        while (dispatcher.eventLatency.getCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dispatcher.eventLatency.getCount());
+    }
+
+    @Test
+    public void testRetry() throws Exception {
+        doThrow(new RuntimeException("boom")).when(resource).processEvent(any());
+
+        // the first attempt is retried
+        GithubEventEntry first = event(1);
+        when(dao.poll(anyInt())).thenReturn(Collections.singletonList(first));
+        when(dao.retry(anyLong(), any(), any())).thenReturn(true);
+
+        dispatcher.performTask();
+
+        verify(dao, timeout(5000)).retry(first.seq(), first.claimId(), "1 minute");
+        verify(dao, never()).finish(anyLong(), any(), any());
+
+        // the last attempt fails the event
+        GithubEventEntry second = event(2);
+        when(dao.poll(anyInt())).thenReturn(Collections.singletonList(second));
+        when(dao.finish(anyLong(), any(), any())).thenReturn(100L);
+
+        dispatcher.performTask();
+
+        verify(dao, timeout(5000)).finish(second.seq(), second.claimId(), Status.FAILED);
+        verify(dao, times(1)).retry(anyLong(), any(), any());
+    }
+
+    @Test
+    public void testLostClaim() throws Exception {
+        GithubEventEntry e = event(1);
+        when(dao.poll(anyInt())).thenReturn(Collections.singletonList(e));
+
+        // e.g. the event was returned to the queue as stalled
+        when(dao.finish(anyLong(), any(), any())).thenReturn(null);
+
+        dispatcher.performTask();
+
+        verify(dao, timeout(5000)).finish(e.seq(), e.claimId(), Status.DONE);
+        assertEquals(0, dispatcher.eventLatency.getCount());
+    }
+
+    @Test
+    public void testHeartbeat() throws Exception {
+        Object lock = new Object();
+        doAnswer(i -> {
+            synchronized (lock) {
+                lock.wait(5000);
+            }
+            return null;
+        }).when(resource).processEvent(any());
+
+        GithubEventEntry e = event(1);
+        when(dao.poll(anyInt())).thenReturn(Collections.singletonList(e));
+
+        dispatcher.performTask();
+
+        // the running event's claim is extended
+        verify(dao).heartbeat(argThat(c -> c.contains(e.claimId())));
+
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    private static GithubEventEntry event(int attempt) {
+        return GithubEventEntry.builder()
+                .seq(attempt)
+                .deliveryId(UUID.randomUUID().toString())
+                .eventName("push")
+                .repoName("org/repo")
+                .initiatorId(UUID.randomUUID())
+                .payload(Collections.emptyMap())
+                .receivedAt(new Date())
+                .claimId(UUID.randomUUID())
+                .attempt(attempt)
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggersDao;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares the full scan of all triggers with the {@link TriggerIndex} lookup.
+ * Not a unit test, run with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TriggerIndexBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int triggerCount;
+
+    private List<TriggerEntry> triggers;
+    private TriggerIndex index;
+    private Map<String, Object> event;
+
+    @Setup
+    public void setup() {
+        triggers = new ArrayList<>(triggerCount);
+        for (int i = 0; i < triggerCount; i++) {
+            Map<String, Object> conditions = new HashMap<>();
+            // every 50th trigger uses a regex
+            conditions.put("repository", i % 50 == 0 ? "org-" + (i % 10) + "/.*" : "org-" + (i % 10) + "/repo-" + i);
+            conditions.put("branch", "master");
+            conditions.put("type", "push");
+
+            triggers.add(new TriggerEntry(UUID.randomUUID(), null, null, null, null, UUID.randomUUID(), null,
+                    "github", null, null, conditions, null));
+        }
+
+        TriggersDao dao = mock(TriggersDao.class);
+        when(dao.list("github")).thenReturn(triggers);
+
+        index = new TriggerIndex(dao);
+
+        event = new HashMap<>();
+        event.put("repository", "org-" + (triggerCount / 2 % 10) + "/repo-" + (triggerCount / 2));
+        event.put("branch", "master");
+        event.put("type", "push");
+    }
+
+    @Benchmark
+    public List<TriggerEntry> fullScan() {
+        return triggers.stream()
+                .filter(t -> EventMatcher.matches(event, t.getConditions()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<TriggerEntry> index() {
+        return index.candidates("github", t -> t, event).stream()
+                .filter(t -> EventMatcher.matches(event, t.getConditions()))
+                .collect(Collectors.toList());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TriggerIndexBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,154 @@
+package com.walmartlabs.concord.server.events;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.events.AbstractEventResource.TriggerDefinitionEnricher;
+import com.walmartlabs.concord.server.org.triggers.TriggerEntry;
+import com.walmartlabs.concord.server.org.triggers.TriggersDao;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class TriggerIndexTest {
+
+    private static final TriggerDefinitionEnricher AS_IS = t -> t;
+
+    @Test
+    public void testCandidates() {
+        List<TriggerEntry> triggers = Arrays.asList(
+                trigger("a", "repo-1", "master"),
+                trigger("b", "repo-.*", "master"),
+                trigger("c", "repo-2", "master"),
+                trigger("d", null, "dev"),
+                trigger("e", "repo-1", "dev"));
+
+        TriggersDao dao = mock(TriggersDao.class);
+        when(dao.list("github")).thenReturn(triggers);
+
+        when(dao.getVersion()).thenReturn(1L);
+
+        TriggerIndex index = new TriggerIndex(dao);
+
+        // the most selective key is used, the order of triggers is preserved
+        assertEquals(Arrays.asList("a", "b", "c"), names(index.candidates("github", AS_IS, event("repo-1", "master"))));
+        assertEquals(Arrays.asList("d", "e"), names(index.candidates("github", AS_IS, event("repo-1", "dev"))));
+        assertEquals(Arrays.asList("b", "d"), names(index.candidates("github", AS_IS, event("repo-3", null))));
+        assertTrue(index.candidates("github", AS_IS, event("repo-3", "feature")).isEmpty());
+        assertTrue(index.candidates("other", AS_IS, event("repo-1", "master")).isEmpty());
+
+        // the index is reused while the version stays the same
+        index.candidates("github", AS_IS, event("repo-1", "master"));
+        verify(dao, times(1)).list("github");
+
+        // e.g. the triggers were modified by another server
+        when(dao.getVersion()).thenReturn(2L);
+        index.candidates("github", AS_IS, event("repo-1", "master"));
+        index.candidates("github", AS_IS, event("repo-1", "master"));
+        verify(dao, times(2)).list("github");
+    }
+
+    @Test
+    public void testEnrichers() {
+        List<TriggerEntry> triggers = Collections.singletonList(trigger("a", "repo-1", "master"));
+
+        TriggersDao dao = mock(TriggersDao.class);
+        when(dao.list("github")).thenReturn(triggers);
+
+        TriggerDefinitionEnricher renaming = t -> trigger("b", "repo-1", "master");
+
+        TriggerIndex index = new TriggerIndex(dao);
+
+        // each enricher gets its own index
+        assertEquals(Collections.singletonList("a"), names(index.candidates("github", AS_IS, event("repo-1", "master"))));
+        assertEquals(Collections.singletonList("b"), names(index.candidates("github", renaming, event("repo-1", "master"))));
+        assertEquals(Collections.singletonList("a"), names(index.candidates("github", AS_IS, event("repo-1", "master"))));
+        verify(dao, times(2)).list("github");
+    }
+
+    @Test
+    public void testCandidatesMatchFullScan() {
+        List<TriggerEntry> triggers = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String repo = i % 10 == 0 ? "repo-" + (i % 3) + ".*" : "repo-" + (i % 7);
+            triggers.add(trigger("t" + i, repo, i % 2 == 0 ? "master" : "dev"));
+        }
+
+        TriggersDao dao = mock(TriggersDao.class);
+        when(dao.list("github")).thenReturn(triggers);
+
+        TriggerIndex index = new TriggerIndex(dao);
+
+        for (int i = 0; i < 10; i++) {
+            for (String branch : Arrays.asList("master", "dev", "x")) {
+                Map<String, Object> event = event("repo-" + i, branch);
+
+                List<TriggerEntry> expected = triggers.stream()
+                        .filter(t -> EventMatcher.matches(event, t.getConditions()))
+                        .collect(Collectors.toList());
+
+                List<TriggerEntry> actual = index.candidates("github", AS_IS, event).stream()
+                        .filter(t -> EventMatcher.matches(event, t.getConditions()))
+                        .collect(Collectors.toList());
+
+                assertEquals(names(expected), names(actual));
+            }
+        }
+    }
+
+    @Test
+    public void testIsLiteral() {
+        assertTrue(TriggerIndex.isLiteral("my-org/my_repo"));
+        assertFalse(TriggerIndex.isLiteral("release/.*"));
+        assertFalse(TriggerIndex.isLiteral("(?i)master"));
+    }
+
+    private static Map<String, Object> event(String repo, String branch) {
+        Map<String, Object> m = new HashMap<>();
+        m.put("repository", repo);
+        m.put("branch", branch);
+        m.put("type", "push");
+        return m;
+    }
+
+    private static TriggerEntry trigger(String name, String repo, String branch) {
+        Map<String, Object> conditions = new HashMap<>();
+        if (repo != null) {
+            conditions.put("repository", repo);
+        }
+        conditions.put("branch", branch);
+        conditions.put("type", "push");
+
+        return new TriggerEntry(UUID.randomUUID(), null, null, null, name, UUID.randomUUID(), null,
+                "github", null, null, conditions, null);
+    }
+
+    private static List<String> names(List<TriggerEntry> l) {
+        return l.stream()
+                .map(TriggerEntry::getProjectName)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,112 @@
+package com.walmartlabs.concord.server.org.policy;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.policyengine.PolicyEngine;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PolicyCacheTest {
+
+    @Test
+    public void testVersion() {
+        UUID orgId = UUID.randomUUID();
+
+        PolicyDao dao = mock(PolicyDao.class);
+        when(dao.getVersion()).thenReturn(1L);
+        when(dao.getRules(orgId, null, null)).thenReturn(rules(Collections.singletonMap("a", 1)));
+
+        PolicyCache cache = new PolicyCache(dao);
+
+        // the rules are reused while the version stays the same
+        PolicyRules a = cache.getRules(orgId, null, null);
+        PolicyRules b = cache.getRules(orgId, null, null);
+        assertSame(a, b);
+        verify(dao, times(1)).getRules(orgId, null, null);
+
+        // e.g. the policy was modified by another server
+        when(dao.getVersion()).thenReturn(2L);
+        when(dao.getRules(orgId, null, null)).thenReturn(rules(Collections.singletonMap("a", 2)));
+
+        PolicyRules c = cache.getRules(orgId, null, null);
+        assertEquals(2, c.rules().get("a"));
+        verify(dao, times(2)).getRules(orgId, null, null);
+    }
+
+    @Test
+    public void testNoPolicy() {
+        PolicyDao dao = mock(PolicyDao.class);
+        when(dao.getVersion()).thenReturn(1L);
+
+        PolicyCache cache = new PolicyCache(dao);
+
+        assertNull(cache.getRules(null, null, null));
+        assertNull(cache.getRules(null, null, null));
+        verify(dao, times(1)).getRules(null, null, null);
+    }
+
+    @Test
+    public void testEngines() {
+        PolicyCache cache = new PolicyCache(mock(PolicyDao.class));
+
+        Map<String, Object> x = new LinkedHashMap<>();
+        x.put("x", 1);
+        x.put("y", 2);
+
+        Map<String, Object> y = new LinkedHashMap<>();
+        y.put("y", 2);
+        y.put("x", 1);
+
+        // the same content (in any order) shares the engine
+        PolicyEngine a = cache.getEngine(rules(Collections.singletonMap("queue", x)));
+        PolicyEngine b = cache.getEngine(rules(Collections.singletonMap("queue", y)));
+        assertSame(a, b);
+
+        // the engine is not affected by the changes of the original map
+        x.put("z", 3);
+        PolicyEngine c = cache.getEngine(rules(Collections.singletonMap("queue", x)));
+        assertNotSame(a, c);
+        assertSame(a, cache.getEngine(rules(Collections.singletonMap("queue", y))));
+    }
+
+    @Test
+    public void testHash() {
+        Map<String, Object> x = new HashMap<>();
+        x.put("a", Collections.singletonMap("b", Arrays.asList(1, 2)));
+
+        Map<String, Object> y = new TreeMap<>(Comparator.reverseOrder());
+        y.putAll(x);
+
+        assertEquals(PolicyCache.hash(x), PolicyCache.hash(y));
+        assertNotEquals(PolicyCache.hash(x), PolicyCache.hash(Collections.singletonMap("a", Collections.singletonMap("b", Arrays.asList(2, 1)))));
+    }
+
+    private static PolicyRules rules(Map<String, Object> rules) {
+        return ImmutablePolicyRules.builder()
+                .addPolicyNames("test")
+                .rules(rules)
+                .build();
+    }
+}
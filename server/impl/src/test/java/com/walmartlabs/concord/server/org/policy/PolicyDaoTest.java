@@ -21,12 +21,16 @@ package com.walmartlabs.concord.server.org.policy;
  */
 
 import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.org.OrganizationManager;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.UUID;
 
+import static org.junit.Assert.assertTrue;
+
 @Ignore("requires a local DB instance")
 public class PolicyDaoTest extends AbstractDaoTest {
 
@@ -46,4 +50,20 @@ public class PolicyDaoTest extends AbstractDaoTest {
         PolicyRules result = policyDao.getRules(orgId, projectId, userId);
         System.out.println(">>>" + result);
     }
+
+    @Test
+    public void testVersion() {
+        long v1 = policyDao.getVersion();
+
+        UUID policyId = policyDao.insert("policy_" + System.currentTimeMillis(), null, Collections.singletonMap("a", 1));
+        long v2 = policyDao.getVersion();
+        assertTrue(v2 > v1);
+
+        policyDao.link(policyId, OrganizationManager.DEFAULT_ORG_ID, null, null);
+        long v3 = policyDao.getVersion();
+        assertTrue(v3 > v2);
+
+        policyDao.delete(policyId);
+        assertTrue(policyDao.getVersion() > v3);
+    }
 }
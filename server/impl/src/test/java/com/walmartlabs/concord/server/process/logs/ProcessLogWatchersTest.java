@@ -0,0 +1,169 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogWatchers.ProcessLogChunk;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ProcessLogWatchersTest {
+
+    @Test
+    public void testUnknown() {
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessKey k = newKey();
+
+        // the process isn't watched, the data is not retained
+        watchers.onAppend(k, 0, "aaaa".getBytes());
+        assertNull(watchers.get(k, 0));
+
+        // the process is watched now
+        watchers.onAppend(k, 4, "bbbb".getBytes());
+        assertNull(watchers.get(k, 0));
+        assertEquals(1, watchers.get(k, 4).size());
+    }
+
+    @Test
+    public void testGet() {
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessKey k = newKey();
+
+        watchers.seed(k, 4);
+        assertTrue(watchers.get(k, 4).isEmpty());
+
+        watchers.onAppend(k, 4, "bbbb".getBytes());
+        watchers.onAppend(k, 8, "cccc".getBytes());
+
+        List<ProcessLogChunk> chunks = watchers.get(k, 4);
+        assertEquals(2, chunks.size());
+
+        // chunk-aligned
+        chunks = watchers.get(k, 9);
+        assertEquals(1, chunks.size());
+        assertEquals(8, chunks.get(0).getStart());
+
+        // before the first known chunk
+        assertNull(watchers.get(k, 0));
+
+        // caught up
+        assertTrue(watchers.get(k, 12).isEmpty());
+
+        // past the known end, must be read from the DB
+        assertNull(watchers.get(k, 16));
+    }
+
+    @Test
+    public void testSeedPastEnd() {
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessKey k = newKey();
+
+        watchers.seed(k, 0);
+        watchers.onAppend(k, 0, "aaaa".getBytes());
+
+        // the DB has more data (e.g. appended using another server)
+        watchers.seed(k, 8);
+
+        assertNull(watchers.get(k, 0));
+        assertTrue(watchers.get(k, 8).isEmpty());
+
+        watchers.onAppend(k, 8, "cccc".getBytes());
+        assertEquals(1, watchers.get(k, 8).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testMaxWaiters() throws Exception {
+        ProcessLogWatchers watchers = new ProcessLogWatchers(1);
+        ProcessKey k = newKey();
+
+        watchers.seed(k, 0);
+
+        CompletableFuture<List<ProcessLogChunk>> f = CompletableFuture.supplyAsync(() -> {
+            try {
+                return watchers.await(k, 0, TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(100);
+
+        // the only permit is taken, returns immediately
+        long t1 = System.currentTimeMillis();
+        assertTrue(watchers.await(k, 0, TimeUnit.SECONDS.toMillis(5)).isEmpty());
+        assertTrue(System.currentTimeMillis() - t1 < TimeUnit.SECONDS.toMillis(5));
+
+        watchers.onAppend(k, 0, "aaaa".getBytes());
+        assertEquals(1, f.get().size());
+    }
+
+    @Test
+    public void testGap() {
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessKey k = newKey();
+
+        watchers.seed(k, 0);
+        watchers.onAppend(k, 0, "aaaa".getBytes());
+
+        // some data was appended elsewhere
+        watchers.onAppend(k, 8, "cccc".getBytes());
+
+        assertNull(watchers.get(k, 4));
+        assertEquals(1, watchers.get(k, 8).size());
+    }
+
+    @Test(timeout = 10000)
+    public void testAwait() throws Exception {
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessKey k = newKey();
+
+        watchers.seed(k, 0);
+
+        // times out
+        assertTrue(watchers.await(k, 0, 100).isEmpty());
+
+        CompletableFuture<List<ProcessLogChunk>> f = CompletableFuture.supplyAsync(() -> {
+            try {
+                return watchers.await(k, 0, TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        watchers.onAppend(k, 0, "aaaa".getBytes());
+
+        List<ProcessLogChunk> chunks = f.get();
+        assertEquals(1, chunks.size());
+        assertArrayEquals("aaaa".getBytes(), chunks.get(0).getData());
+    }
+
+    private static ProcessKey newKey() {
+        return new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+    }
+}
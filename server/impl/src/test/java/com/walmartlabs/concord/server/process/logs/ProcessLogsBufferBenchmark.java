@@ -0,0 +1,105 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2018 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.cfg.ProcessLogsConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures the throughput of {@link ProcessLogsBuffer#append(ProcessKey, byte[])}
+ * with the agents' append pattern: each thread is a process which sends its
+ * log chunks sequentially, every chunk waits for its acknowledgement.
+ * The {@code direct} benchmark writes the same chunks using {@link ProcessLogsDao}.
+ * Not a unit test, requires a local DB instance. Run with {@link #main(String[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(16)
+@Fork(1)
+public class ProcessLogsBufferBenchmark extends AbstractDaoTest {
+
+    private static final int CHUNK_SIZE = 100;
+
+    private ProcessLogsDao logsDao;
+    private ProcessLogsBuffer buffer;
+    private byte[] chunk;
+
+    @Setup
+    public void setup() {
+        initDataSource();
+
+        ProcessLogsConfiguration cfg = mock(ProcessLogsConfiguration.class);
+        when(cfg.getFlushInterval()).thenReturn(100L);
+        when(cfg.getMaxBufferSize()).thenReturn(1024 * 1024);
+
+        logsDao = new ProcessLogsDao(getConfiguration());
+        buffer = new ProcessLogsBuffer(cfg, logsDao, new ProcessLogWatchers());
+        buffer.start();
+
+        chunk = new byte[CHUNK_SIZE];
+        ThreadLocalRandom.current().nextBytes(chunk);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        buffer.stop();
+        closeDataSource();
+    }
+
+    @State(Scope.Thread)
+    public static class Process {
+
+        private final ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    public void buffered(Process p) {
+        buffer.append(p.processKey, chunk);
+    }
+
+    @Benchmark
+    public void direct(Process p) {
+        logsDao.append(p.processKey, chunk);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ProcessLogsBufferBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
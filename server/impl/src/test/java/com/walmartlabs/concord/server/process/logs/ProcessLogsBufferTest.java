@@ -0,0 +1,217 @@
+package com.walmartlabs.concord.server.process.logs;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.cfg.ProcessLogsConfiguration;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogWatchers.ProcessLogChunk;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProcessLogsBufferTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testCoalesce() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(1000, 1024), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        ProcessKey b = newKey();
+
+        CompletableFuture<Void> f1 = buffer.enqueue(a, "a1".getBytes());
+        CompletableFuture<Void> f2 = buffer.enqueue(b, "b1".getBytes());
+        CompletableFuture<Void> f3 = buffer.enqueue(a, "a2".getBytes());
+
+        assertEquals(6, buffer.getBufferSize());
+        assertEquals(2, buffer.getBufferedProcessCount());
+        verify(dao, never()).appendAll(any());
+
+        // the data is not acknowledged until it is written
+        assertFalse(f1.isDone());
+
+        buffer.flush();
+
+        ArgumentCaptor<Map<ProcessKey, byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(dao, times(1)).appendAll(captor.capture());
+
+        Map<ProcessKey, byte[]> data = captor.getValue();
+        assertEquals(2, data.size());
+        assertArrayEquals("a1a2".getBytes(), data.get(a));
+        assertArrayEquals("b1".getBytes(), data.get(b));
+
+        assertEquals(0, buffer.getBufferSize());
+        assertTrue(f1.isDone() && f2.isDone() && f3.isDone());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAppendWaitsForFlush() throws Exception {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(10, 1024), dao, new ProcessLogWatchers());
+        buffer.start();
+
+        try {
+            ProcessKey a = newKey();
+            buffer.append(a, "a1".getBytes());
+
+            // append returns only after the data is written
+            ArgumentCaptor<Map<ProcessKey, byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+            verify(dao, times(1)).appendAll(captor.capture());
+            assertArrayEquals("a1".getBytes(), captor.getValue().get(a));
+            assertEquals(0, buffer.getBufferSize());
+        } finally {
+            buffer.stop();
+        }
+    }
+
+    /**
+     * A single sequential appender must not wait for the periodic flush.
+     */
+    @Test(timeout = 10000)
+    public void testSequentialAppends() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        // the periodic flush is never started
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(TimeUnit.HOURS.toMillis(1), 1024), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            buffer.append(a, ("a" + i).getBytes());
+        }
+
+        verify(dao, times(count)).appendAll(any());
+        assertEquals(0, buffer.getBufferSize());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAppendAsync() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(1000, 1024), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        buffer.appendAsync(a, "a1".getBytes());
+        verify(dao, never()).appendAll(any());
+
+        // written together with the next acknowledged append
+        buffer.append(a, "a2".getBytes());
+
+        ArgumentCaptor<Map<ProcessKey, byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(dao, times(1)).appendAll(captor.capture());
+        assertArrayEquals("a1a2".getBytes(), captor.getValue().get(a));
+    }
+
+    @Test
+    public void testFailedFlush() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(1000, 1024), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        CompletableFuture<Void> f = buffer.enqueue(a, "a1".getBytes());
+
+        doThrow(new RuntimeException("boom")).when(dao).appendAll(any());
+        try {
+            buffer.flush();
+            fail("exception expected");
+        } catch (RuntimeException e) {
+            // expected
+        }
+
+        // the appender receives the error
+        assertTrue(f.isCompletedExceptionally());
+        assertEquals(0, buffer.getBufferSize());
+    }
+
+    @Test
+    public void testMaxBufferSize() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(1000, 4), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        CompletableFuture<Void> f1 = buffer.enqueue(a, "a1".getBytes());
+        buffer.enqueue(a, "a2".getBytes());
+        verify(dao, never()).appendAll(any());
+
+        // exceeds the max buffer size, the previous data must be flushed
+        buffer.enqueue(a, "a3".getBytes());
+        verify(dao, times(1)).appendAll(any());
+        assertEquals(2, buffer.getBufferSize());
+        assertTrue(f1.isDone());
+    }
+
+    @Test
+    public void testNotifyWatchers() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogWatchers watchers = new ProcessLogWatchers();
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(1000, 1024), dao, watchers);
+
+        ProcessKey a = newKey();
+
+        // start watching
+        watchers.seed(a, 10);
+
+        buffer.enqueue(a, "a1".getBytes());
+        when(dao.appendAll(any())).thenReturn(Collections.singletonMap(a, 10));
+        buffer.flush();
+
+        List<ProcessLogChunk> chunks = watchers.get(a, 10);
+        assertEquals(1, chunks.size());
+        assertEquals(10, chunks.get(0).getStart());
+        assertArrayEquals("a1".getBytes(), chunks.get(0).getData());
+    }
+
+    @Test
+    public void testDisabled() {
+        ProcessLogsDao dao = mock(ProcessLogsDao.class);
+        ProcessLogsBuffer buffer = new ProcessLogsBuffer(cfg(0, 1024), dao, new ProcessLogWatchers());
+
+        ProcessKey a = newKey();
+        byte[] ab = "a1".getBytes();
+        buffer.append(a, ab);
+
+        verify(dao, times(1)).appendAll(eq(Collections.singletonMap(a, ab)));
+        assertEquals(0, buffer.getBufferSize());
+    }
+
+    private static ProcessLogsConfiguration cfg(long flushInterval, int maxBufferSize) {
+        ProcessLogsConfiguration cfg = mock(ProcessLogsConfiguration.class);
+        when(cfg.getFlushInterval()).thenReturn(flushInterval);
+        when(cfg.getMaxBufferSize()).thenReturn(maxBufferSize);
+        return cfg;
+    }
+
+    private static ProcessKey newKey() {
+        return new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+    }
+}
@@ -22,13 +22,18 @@ package com.walmartlabs.concord.server.process.logs;
 
 import com.walmartlabs.concord.server.AbstractDaoTest;
 import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.logs.ProcessLogsDao.ProcessLogRange;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.sql.Timestamp;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ThreadLocalRandom;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 @Ignore
 public class ProcessLogsDaoTest extends AbstractDaoTest {
 
@@ -56,4 +61,75 @@ public class ProcessLogsDaoTest extends AbstractDaoTest {
             }
         }
     }
+
+    @Test
+    public void testAppendAll() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey a = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        ProcessKey b = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        processLogsDao.append(a, "a1".getBytes());
+
+        Map<ProcessKey, byte[]> m = new HashMap<>();
+        m.put(a, "a2a3".getBytes());
+        m.put(b, "b1".getBytes());
+        Map<ProcessKey, Integer> offsets = processLogsDao.appendAll(m);
+        assertEquals(2, (int) offsets.get(a));
+        assertEquals(0, (int) offsets.get(b));
+
+        assertEquals(6, processLogsDao.size(a));
+        assertEquals(2, processLogsDao.size(b));
+
+        // the second chunk only
+        ProcessLogRange r = processLogsDao.range(a, 3, null);
+        assertEquals(2, (int) r.getStart());
+        assertEquals(6, (int) r.getEnd());
+        assertEquals(6, r.getSize());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        processLogsDao.copy(a, r.getStart(), r.getEnd(), out);
+        assertEquals("a2a3", new String(out.toByteArray()));
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        ProcessLogsDao processLogsDao = new ProcessLogsDao(getConfiguration());
+
+        ProcessKey a = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        assertTrue(processLogsDao.range(a, null, null).isEmpty());
+
+        processLogsDao.append(a, "aaaa".getBytes());
+        processLogsDao.append(a, "bbbb".getBytes());
+        processLogsDao.append(a, "cccc".getBytes());
+
+        // entire log
+        ProcessLogRange r = processLogsDao.range(a, null, null);
+        assertEquals(0, (int) r.getStart());
+        assertEquals(12, (int) r.getEnd());
+
+        // last N bytes
+        r = processLogsDao.range(a, null, 2);
+        assertEquals(8, (int) r.getStart());
+        assertEquals(12, (int) r.getEnd());
+
+        // [start, end)
+        r = processLogsDao.range(a, 5, 9);
+        assertEquals(4, (int) r.getStart());
+        assertEquals(12, (int) r.getEnd());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        processLogsDao.copy(a, r.getStart(), r.getEnd(), out);
+        assertEquals("bbbbcccc", new String(out.toByteArray()));
+
+        // the output is trimmed to the requested range
+        out = new ByteArrayOutputStream();
+        processLogsDao.copy(a, 5, 9, out);
+        assertEquals("bbbc", new String(out.toByteArray()));
+
+        // past the end
+        r = processLogsDao.range(a, 12, null);
+        assertTrue(r.isEmpty());
+        assertEquals(12, r.getSize());
+    }
 }
@@ -28,27 +28,35 @@ import com.walmartlabs.concord.server.process.ProcessKey;
 import com.walmartlabs.concord.server.process.ProcessKind;
 import com.walmartlabs.concord.server.process.ProcessStatus;
 import com.walmartlabs.concord.server.process.event.EventDao;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import java.sql.Timestamp;
-import java.util.Collections;
-import java.util.UUID;
+import java.util.*;
 
 import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @Ignore("requires a local DB instance")
 public class ProcessQueueDaoTest extends AbstractDaoTest {
 
     private ProcessQueueDao queueDao;
     private ProjectDao projectDao;
+    private ProcessCounterDao counterDao;
 
     @Before
     public void setUp() {
-        queueDao = new ProcessQueueDao(getConfiguration(), Collections.emptyList(), mock(EventDao.class), mock(ProcessQueueLock.class), TestObjectMapper.INSTANCE);
+        ProcessQueueLock queueLock = mock(ProcessQueueLock.class);
+        when(queueLock.tryLock(any(), any())).thenReturn(true);
+
+        queueDao = new ProcessQueueDao(getConfiguration(), Collections.emptyList(), Collections.emptyList(), mock(EventDao.class), queueLock, new ProcessWaitIndex(Collections.emptyList()), TestObjectMapper.INSTANCE);
         projectDao = new ProjectDao(getConfiguration());
+        counterDao = new ProcessCounterDao(getConfiguration());
     }
 
     @Test
@@ -83,4 +91,164 @@ public class ProcessQueueDaoTest extends AbstractDaoTest {
 
         assertNull(e3);
     }
+
+    @Test
+    public void testBatchPoll() throws Exception {
+        UUID orgId = OrganizationManager.DEFAULT_ORG_ID;
+
+        String projectName = "project_" + System.currentTimeMillis();
+        UUID projectId = projectDao.insert(orgId, projectName, null, null, null, null, true, new byte[0], null);
+
+        List<ProcessKey> keys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ProcessKey k = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+            queueDao.insertInitial(k, ProcessKind.DEFAULT, null, projectId, null, null);
+            queueDao.updateStatus(k, ProcessStatus.ENQUEUED);
+            keys.add(k);
+
+            // add a small delay between jobs
+            Thread.sleep(100);
+        }
+
+        // ---
+
+        List<ProcessQueueEntry> l1 = queueDao.poll(null, 2);
+        List<ProcessQueueEntry> l2 = queueDao.poll(null, 2);
+        List<ProcessQueueEntry> l3 = queueDao.poll(null, 2);
+
+        assertEquals(2, l1.size());
+        assertEquals(keys.get(0).getInstanceId(), l1.get(0).key().getInstanceId());
+        assertEquals(keys.get(1).getInstanceId(), l1.get(1).key().getInstanceId());
+
+        assertEquals(1, l2.size());
+        assertEquals(keys.get(2).getInstanceId(), l2.get(0).key().getInstanceId());
+
+        assertTrue(l3.isEmpty());
+
+        for (ProcessKey k : keys) {
+            assertEquals(ProcessStatus.STARTING, queueDao.getStatus(k.getInstanceId()));
+        }
+    }
+
+    @Test
+    public void testBatchPollSkipsFailedCandidates() throws Exception {
+        UUID orgId = OrganizationManager.DEFAULT_ORG_ID;
+
+        String projectName = "project_" + System.currentTimeMillis();
+        UUID projectId = projectDao.insert(orgId, projectName, null, null, null, null, true, new byte[0], null);
+
+        List<ProcessKey> keys = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ProcessKey k = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+            queueDao.insertInitial(k, ProcessKind.DEFAULT, null, projectId, null, null);
+            queueDao.updateStatus(k, ProcessStatus.ENQUEUED);
+            keys.add(k);
+
+            // add a small delay between jobs
+            Thread.sleep(100);
+        }
+
+        UUID failing = keys.get(0).getInstanceId();
+        ProcessQueueEntryFilter filter = (tx, e) -> {
+            if (e.key().getInstanceId().equals(failing)) {
+                throw new RuntimeException("test");
+            }
+            return true;
+        };
+
+        ProcessQueueLock queueLock = mock(ProcessQueueLock.class);
+        when(queueLock.tryLock(any(), any())).thenReturn(true);
+
+        ProcessQueueDao dao = new ProcessQueueDao(getConfiguration(), Collections.singletonList(filter), Collections.emptyList(), mock(EventDao.class), queueLock, new ProcessWaitIndex(Collections.emptyList()), TestObjectMapper.INSTANCE);
+
+        // ---
+
+        List<ProcessQueueEntry> l = dao.poll(null, 3);
+
+        assertEquals(2, l.size());
+        assertEquals(keys.get(1).getInstanceId(), l.get(0).key().getInstanceId());
+        assertEquals(keys.get(2).getInstanceId(), l.get(1).key().getInstanceId());
+
+        assertEquals(ProcessStatus.ENQUEUED, queueDao.getStatus(failing));
+    }
+
+    @Test
+    public void testUpdateWaits() throws Exception {
+        UUID orgId = OrganizationManager.DEFAULT_ORG_ID;
+
+        String projectName = "project_" + System.currentTimeMillis();
+        UUID projectId = projectDao.insert(orgId, projectName, null, null, null, null, true, new byte[0], null);
+
+        ProcessKey instanceA = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        queueDao.insertInitial(instanceA, ProcessKind.DEFAULT, null, projectId, null, null);
+
+        ProcessKey instanceB = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        queueDao.insertInitial(instanceB, ProcessKind.DEFAULT, null, projectId, null, null);
+
+        Map<ProcessKey, AbstractWaitCondition> waits = new LinkedHashMap<>();
+        waits.put(instanceA, ProcessCompletionCondition.of(Collections.singletonList(UUID.randomUUID()), "test"));
+        waits.put(instanceB, ProcessCompletionCondition.of(Collections.singletonList(UUID.randomUUID()), "test"));
+        assertEquals(waits.keySet(), queueDao.updateWaits(Collections.emptyMap(), waits));
+
+        queueDao.updateStatus(instanceA, ProcessStatus.ENQUEUED);
+        queueDao.updateStatus(instanceB, ProcessStatus.ENQUEUED);
+
+        // ---
+
+        assertNull(queueDao.poll(null));
+
+        // the wait conditions were modified concurrently, nothing is updated
+        assertTrue(queueDao.updateWaits(Collections.emptyMap(), Collections.singletonMap(instanceA, null)).isEmpty());
+        assertTrue(queueDao.updateWaits(Collections.singletonMap(instanceA, waits.get(instanceB)), Collections.singletonMap(instanceA, null)).isEmpty());
+        assertNull(queueDao.poll(null));
+
+        assertEquals(Collections.singleton(instanceA), queueDao.updateWaits(Collections.singletonMap(instanceA, waits.get(instanceA)), Collections.singletonMap(instanceA, null)));
+
+        ProcessQueueEntry e1 = queueDao.poll(null);
+        assertNotNull(e1);
+        assertEquals(instanceA.getInstanceId(), e1.key().getInstanceId());
+
+        assertNull(queueDao.poll(null));
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        UUID orgId = OrganizationManager.DEFAULT_ORG_ID;
+
+        String projectName = "project_" + System.currentTimeMillis();
+        UUID projectId = projectDao.insert(orgId, projectName, null, null, null, null, true, new byte[0], null);
+
+        ProcessKey instanceA = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        queueDao.insertInitial(instanceA, ProcessKind.DEFAULT, null, projectId, null, null);
+        queueDao.updateStatus(instanceA, ProcessStatus.RUNNING);
+
+        ProcessKey instanceB = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+        queueDao.insertInitial(instanceB, ProcessKind.DEFAULT, null, projectId, null, null);
+        queueDao.updateStatus(instanceB, ProcessStatus.SUSPENDED);
+
+        // ---
+
+        List<ProcessStatus> running = Collections.singletonList(ProcessStatus.RUNNING);
+        assertEquals(1, countersOf(projectId, running));
+        assertEquals(2, countersOf(projectId, ProcessCounterDao.TRACKED_STATUSES));
+
+        queueDao.updateStatus(instanceA, ProcessStatus.FINISHED);
+        assertEquals(0, countersOf(projectId, running));
+        assertEquals(1, countersOf(projectId, ProcessCounterDao.TRACKED_STATUSES));
+
+        // multi-row update
+
+        queueDao.updateStatus(Arrays.asList(instanceA, instanceB), ProcessStatus.RUNNING, null);
+        assertEquals(2, countersOf(projectId, running));
+        assertEquals(2, countersOf(projectId, ProcessCounterDao.TRACKED_STATUSES));
+
+        queueDao.updateStatus(Arrays.asList(instanceA, instanceB), ProcessStatus.CANCELLED, null);
+        assertEquals(0, countersOf(projectId, ProcessCounterDao.TRACKED_STATUSES));
+    }
+
+    private int countersOf(UUID projectId, List<ProcessStatus> statuses) {
+        try (DSLContext tx = DSL.using(getConfiguration())) {
+            return counterDao.count(tx, projectId, statuses, false);
+        }
+    }
 }
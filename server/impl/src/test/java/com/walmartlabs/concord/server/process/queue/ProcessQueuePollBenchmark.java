@@ -0,0 +1,124 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.AbstractDaoTest;
+import com.walmartlabs.concord.server.TestObjectMapper;
+import com.walmartlabs.concord.server.org.OrganizationManager;
+import com.walmartlabs.concord.server.org.project.ProjectDao;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.ProcessKind;
+import com.walmartlabs.concord.server.process.ProcessStatus;
+import com.walmartlabs.concord.server.process.event.EventDao;
+import org.jooq.DSLContext;
+import org.jooq.ResultQuery;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.walmartlabs.concord.server.jooq.tables.ProcessQueue.PROCESS_QUEUE;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures {@link ProcessQueueDao#poll(java.util.Map)} with a large number of
+ * finished (historical) and waiting processes in the queue.
+ */
+@Ignore("requires a local DB instance")
+public class ProcessQueuePollBenchmark extends AbstractDaoTest {
+
+    private static final int HISTORY_SIZE = 1_000_000;
+    private static final int WAITING_SIZE = 10_000;
+    private static final int ENQUEUED_SIZE = 1_000;
+    private static final double MAX_AVG_POLL_MILLIS = 10;
+
+    private ProcessQueueDao queueDao;
+    private UUID projectId;
+
+    @Before
+    public void setUp() {
+        ProcessQueueLock queueLock = mock(ProcessQueueLock.class);
+        when(queueLock.tryLock(any(), any())).thenReturn(true);
+
+        queueDao = new ProcessQueueDao(getConfiguration(), Collections.emptyList(), Collections.emptyList(), mock(EventDao.class), queueLock, new ProcessWaitIndex(Collections.emptyList()), TestObjectMapper.INSTANCE);
+
+        ProjectDao projectDao = new ProjectDao(getConfiguration());
+        projectId = projectDao.insert(OrganizationManager.DEFAULT_ORG_ID, "project_" + System.currentTimeMillis(), null, null, null, null, true, new byte[0], null);
+
+        tx(tx -> {
+            generate(tx, HISTORY_SIZE, ProcessStatus.FINISHED, null);
+            generate(tx, WAITING_SIZE, ProcessStatus.ENQUEUED, "{\"type\": \"NONE\"}");
+            tx.execute("analyze PROCESS_QUEUE");
+        });
+    }
+
+    @After
+    public void tearDown() {
+        tx(tx -> tx.deleteFrom(PROCESS_QUEUE)
+                .where(PROCESS_QUEUE.PROJECT_ID.eq(projectId))
+                .execute());
+    }
+
+    @Test
+    public void testPoll() throws Exception {
+        for (int i = 0; i < ENQUEUED_SIZE; i++) {
+            ProcessKey k = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+            queueDao.insertInitial(k, ProcessKind.DEFAULT, null, projectId, null, null);
+            queueDao.updateStatus(k, ProcessStatus.ENQUEUED);
+        }
+
+        // the same query poll() uses, including the org subquery and the capabilities predicate
+        Map<String, Object> capabilities = Collections.singletonMap("flavor", "default");
+        tx(tx -> {
+            ResultQuery<?> q = queueDao.nextEntriesQuery(tx, capabilities, Collections.emptySet(), Collections.emptySet(), 1);
+            String plan = String.join("\n", tx.fetch("explain analyze " + q.getSQL(), q.getBindValues().toArray())
+                    .getValues(0, String.class));
+
+            assertTrue(plan, plan.toUpperCase().contains("IDX_PROC_Q_READY"));
+        });
+
+        long t1 = System.nanoTime();
+        for (int i = 0; i < ENQUEUED_SIZE; i++) {
+            assertNotNull(queueDao.poll(capabilities));
+        }
+        long t2 = System.nanoTime();
+
+        double avg = (double) TimeUnit.NANOSECONDS.toMicros(t2 - t1) / ENQUEUED_SIZE / 1000;
+        assertTrue("avg poll time: " + avg + "ms", avg < MAX_AVG_POLL_MILLIS);
+    }
+
+    private void generate(DSLContext tx, int count, ProcessStatus status, String waits) {
+        tx.execute("insert into PROCESS_QUEUE (INSTANCE_ID, PROCESS_KIND, PROJECT_ID, CREATED_AT, CURRENT_STATUS, LAST_UPDATED_AT, WAIT_CONDITIONS) " +
+                        "select md5(random()::text || i)::uuid, 'DEFAULT', ?, now() - (i || ' seconds')::interval, ?, now(), ?::jsonb " +
+                        "from generate_series(1, ?) i",
+                projectId, status.toString(), waits, count);
+    }
+}
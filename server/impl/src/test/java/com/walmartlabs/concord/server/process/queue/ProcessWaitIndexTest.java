@@ -0,0 +1,120 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProcessWaitIndexTest {
+
+    private List<Set<UUID>> wakeUps;
+    private List<Set<UUID>> released;
+    private ProcessWaitIndex index;
+
+    @Before
+    public void setUp() {
+        wakeUps = new ArrayList<>();
+        released = new ArrayList<>();
+        index = new ProcessWaitIndex(Collections.singletonList(new ProcessWaitListener() {
+            @Override
+            public void onWakeUp(Set<UUID> waiters) {
+                wakeUps.add(waiters);
+            }
+
+            @Override
+            public void onReleased(Set<UUID> awaited) {
+                released.add(awaited);
+            }
+        }));
+    }
+
+    @Test
+    public void testProcessCompletion() {
+        UUID waiter = UUID.randomUUID();
+        UUID childA = UUID.randomUUID();
+        UUID childB = UUID.randomUUID();
+
+        index.update(waiter, ProcessCompletionCondition.of(Arrays.asList(childA, childB), "test"));
+
+        index.onFinished(Collections.singletonList(childA));
+        assertEquals(Collections.singletonList(Collections.singleton(waiter)), wakeUps);
+
+        // no longer waiting
+        index.update(waiter, null);
+        index.onFinished(Collections.singletonList(childB));
+        assertEquals(1, wakeUps.size());
+    }
+
+    @Test
+    public void testProcessLock() {
+        UUID holder = UUID.randomUUID();
+        UUID waiter = UUID.randomUUID();
+
+        index.update(waiter, ProcessLockCondition.builder()
+                .instanceId(holder)
+                .orgId(UUID.randomUUID())
+                .projectId(UUID.randomUUID())
+                .scope(ProcessLockScope.PROJECT)
+                .name("test")
+                .build());
+
+        index.wakeUp(Collections.singletonList(UUID.randomUUID()));
+        assertTrue(wakeUps.isEmpty());
+
+        index.wakeUp(Collections.singletonList(holder));
+        assertEquals(Collections.singletonList(Collections.singleton(waiter)), wakeUps);
+    }
+
+    @Test
+    public void testFinishedWaiter() {
+        UUID waiter = UUID.randomUUID();
+        UUID child = UUID.randomUUID();
+
+        index.update(waiter, ProcessCompletionCondition.of(Collections.singletonList(child), "test"));
+
+        // e.g. the waiting process was cancelled
+        index.onFinished(Collections.singletonList(waiter));
+        index.onFinished(Collections.singletonList(child));
+        assertTrue(wakeUps.isEmpty());
+    }
+
+    @Test
+    public void testReleasedOnOtherServer() {
+        UUID awaited = UUID.randomUUID();
+
+        Set<UUID> ids = ProcessQueueNotificationListener.parseReleased("another-server:" + awaited + ",garbage");
+        assertEquals(Collections.singleton(awaited), ids);
+
+        // not known to this server's index, but the listeners are notified anyway
+        index.onReleased(ids);
+        assertTrue(wakeUps.isEmpty());
+        assertEquals(Collections.singletonList(Collections.singleton(awaited)), released);
+
+        index.onReleased(Collections.emptySet());
+        assertEquals(1, released.size());
+    }
+}
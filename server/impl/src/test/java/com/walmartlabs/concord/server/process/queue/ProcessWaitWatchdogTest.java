@@ -0,0 +1,183 @@
+package com.walmartlabs.concord.server.process.queue;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.walmartlabs.concord.server.jooq.enums.ProcessLockScope;
+import com.walmartlabs.concord.server.process.PayloadManager;
+import com.walmartlabs.concord.server.process.ProcessKey;
+import com.walmartlabs.concord.server.process.ProcessManager;
+import com.walmartlabs.concord.server.process.ProcessStatus;
+import com.walmartlabs.concord.server.process.locks.LockEntry;
+import com.walmartlabs.concord.server.process.locks.ProcessLocksDao;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class ProcessWaitWatchdogTest {
+
+    private final UUID instanceId = UUID.randomUUID();
+    private final ProcessLockCondition lockWait = ProcessLockCondition.builder()
+            .instanceId(instanceId)
+            .orgId(UUID.randomUUID())
+            .projectId(UUID.randomUUID())
+            .scope(ProcessLockScope.PROJECT)
+            .name("test")
+            .build();
+
+    /**
+     * The state of the process "in the DB", shared by all servers.
+     */
+    private AbstractWaitCondition currentWaits;
+    private ProcessStatus currentStatus;
+
+    private ProcessQueueDao queueDao;
+    private ProcessLocksDao locksDao;
+    private ProcessManager processManager;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        currentWaits = lockWait;
+        currentStatus = ProcessStatus.SUSPENDED;
+
+        // guarded updates, see ProcessQueueDao#updateWaits and ProcessQueueDao#updateStatus
+        queueDao = mock(ProcessQueueDao.class);
+        when(queueDao.updateWaits(any(), any())).thenAnswer(i -> {
+            Map<ProcessKey, AbstractWaitCondition> expected = i.getArgument(0);
+            Map<ProcessKey, AbstractWaitCondition> waits = i.getArgument(1);
+            synchronized (this) {
+                ProcessKey k = waits.keySet().iterator().next();
+                if (!Objects.equals(currentWaits, expected.get(k))) {
+                    return Collections.emptySet();
+                }
+                currentWaits = waits.get(k);
+                return Collections.singleton(k);
+            }
+        });
+        when(queueDao.updateStatus(any(ProcessKey.class), any(ProcessStatus.class), any(ProcessStatus.class))).thenAnswer(i -> {
+            synchronized (this) {
+                if (currentStatus != i.getArgument(1)) {
+                    return false;
+                }
+                currentStatus = i.getArgument(2);
+                return true;
+            }
+        });
+
+        locksDao = mock(ProcessLocksDao.class);
+        when(locksDao.tryLock(eq(instanceId), any(), any(), any(), any())).thenReturn(LockEntry.builder()
+                .instanceId(instanceId)
+                .orgId(lockWait.orgId())
+                .projectId(lockWait.projectId())
+                .scope(lockWait.scope())
+                .name(lockWait.name())
+                .build());
+
+        processManager = mock(ProcessManager.class);
+    }
+
+    @Test
+    public void testConcurrentResolvers() throws Exception {
+        // both servers see the process as suspended and waiting for the lock
+        WaitingProcess snapshot = waitingProcess(ProcessStatus.SUSPENDED);
+
+        int servers = 2;
+        CyclicBarrier barrier = new CyclicBarrier(servers);
+        ExecutorService executor = Executors.newFixedThreadPool(servers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < servers; i++) {
+                ProcessWaitWatchdog watchdog = newWatchdog(snapshot);
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    watchdog.process(Collections.singleton(instanceId));
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(processManager, times(1)).resume(any());
+        assertNull(currentWaits);
+        assertEquals(ProcessStatus.RESUMING, currentStatus);
+    }
+
+    @Test
+    public void testStatusChanged() {
+        WaitingProcess snapshot = waitingProcess(ProcessStatus.SUSPENDED);
+
+        // e.g. the process was cancelled after the wait conditions were read
+        currentStatus = ProcessStatus.CANCELLED;
+
+        newWatchdog(snapshot).process(Collections.singleton(instanceId));
+
+        verify(processManager, never()).resume(any());
+        assertEquals(ProcessStatus.CANCELLED, currentStatus);
+    }
+
+    @Test
+    public void testResumeFailure() {
+        WaitingProcess snapshot = waitingProcess(ProcessStatus.SUSPENDED);
+        doThrow(new RuntimeException("boom")).when(processManager).resume(any());
+
+        newWatchdog(snapshot).process(Collections.singleton(instanceId));
+
+        // the process is returned to its original state, the next pass tries again
+        assertEquals(lockWait, currentWaits);
+        assertEquals(ProcessStatus.SUSPENDED, currentStatus);
+    }
+
+    /**
+     * Creates a watchdog of a separate "server" which reads the specified state of the process.
+     */
+    @SuppressWarnings("unchecked")
+    private ProcessWaitWatchdog newWatchdog(WaitingProcess snapshot) {
+        ProcessWaitWatchdog.WatchdogDao dao = mock(ProcessWaitWatchdog.WatchdogDao.class);
+        when(dao.getWaitItems(any())).thenReturn(Collections.singletonList(snapshot));
+
+        WaitProcessLockHandler handler = new WaitProcessLockHandler(locksDao, queueDao, processManager, mock(PayloadManager.class));
+        return new ProcessWaitWatchdog(dao, queueDao, new ProcessWaitIndex(Collections.emptyList()), Collections.singleton(handler));
+    }
+
+    private WaitingProcess waitingProcess(ProcessStatus status) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        return WaitingProcess.builder()
+                .instanceId(instanceId)
+                .status(status)
+                .instanceCreatedAt(now)
+                .lastUpdatedAt(now)
+                .waits(lockWait)
+                .build();
+    }
+}
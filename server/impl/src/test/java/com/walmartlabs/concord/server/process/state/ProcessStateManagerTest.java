@@ -35,12 +35,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.sql.Timestamp;
-import java.util.Arrays;
-import java.util.UUID;
+import java.util.*;
 
 import static com.walmartlabs.concord.server.process.state.ProcessStateManager.copyTo;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
 
 @Ignore("requires a local DB instance")
@@ -79,6 +77,39 @@ public class ProcessStateManagerTest extends AbstractDaoTest {
         assertFileContent("456", tmpDir.resolve("file-2"));
     }
 
+    @Test
+    public void testManifest() throws Exception {
+        ProcessKey processKey = new ProcessKey(UUID.randomUUID(), new Timestamp(System.currentTimeMillis()));
+
+        Path baseDir = Files.createTempDirectory("testManifest");
+
+        writeTempFile(baseDir.resolve("file-1"), "123".getBytes());
+        writeTempFile(baseDir.resolve("file-2"), "123".getBytes());
+        writeTempFile(baseDir.resolve("file-3"), "456".getBytes());
+
+        ProcessStateConfiguration stateCfg = new ProcessStateConfiguration(24 * 60 * 60 * 1000, Arrays.asList(Constants.Files.REQUEST_DATA_FILE_NAME));
+        ProcessStateManager stateManager = new ProcessStateManager(getConfiguration(), mock(SecretStoreConfiguration.class), stateCfg);
+        stateManager.importPath(processKey, null, baseDir);
+
+        Map<String, String> hashes = new HashMap<>();
+        for (ProcessStateItem i : stateManager.manifest(processKey)) {
+            hashes.put(i.getPath(), i.getHash());
+        }
+
+        assertEquals(3, hashes.size());
+        assertEquals(hashes.get("file-1"), hashes.get("file-2"));
+        assertNotEquals(hashes.get("file-1"), hashes.get("file-3"));
+
+        // ---
+
+        Path tmpDir = Files.createTempDirectory("testExportItems");
+
+        boolean result = stateManager.exportItems(processKey, Collections.singletonList("file-3"), copyTo(tmpDir));
+        assertTrue(result);
+        assertFileContent("456", tmpDir.resolve("file-3"));
+        assertFalse(Files.exists(tmpDir.resolve("file-1")));
+    }
+
     @Ignore
     @Test
     public void testLargeImport() throws Exception {
@@ -81,10 +81,19 @@ public class QueueClient {
 
         synchronized (requests) {
             ignoreRequests.add(MessageType.PROCESS_REQUEST);
+            ignoreRequests.add(MessageType.PROCESS_BATCH_REQUEST);
             worker.disconnect();
         }
     }
 
+    /**
+     * Returns {@code true} if the currently connected server accepts
+     * {@link MessageType#PROCESS_BATCH_REQUEST} messages.
+     */
+    public boolean isBatchSupported() {
+        return worker.batchSupported;
+    }
+
     @SuppressWarnings("unchecked")
     public <E extends Message> Future<E> request(Message request) {
         SettableFuture<Message> f = SettableFuture.create();
@@ -123,6 +132,7 @@ public class QueueClient {
         private final long connectTimeout;
 
         private volatile State state;
+        private volatile boolean batchSupported;
 
         public Worker(QueueClientConfiguration cfg, List<RequestEntry> requests) throws URISyntaxException {
             this.userAgent = cfg.getUserAgent();
@@ -144,6 +154,7 @@ public class QueueClient {
                     switch (state) {
                         case CONNECTING: {
                             session = connect();
+                            batchSupported = Boolean.parseBoolean(session.getUpgradeResponse().getHeader(InternalConstants.Headers.BATCH_REQUESTS));
                             state = State.CONNECTED;
                             lastActivity = System.currentTimeMillis();
                             log.info("connect ['{}'] -> done", destUri);
@@ -156,6 +167,7 @@ public class QueueClient {
                             break;
                         }
                         case DISCONNECTING: {
+                            batchSupported = false;
                             close(session);
                             session = null;
                             state = State.CONNECTING;
@@ -25,7 +25,9 @@ public enum MessageType {
     COMMAND_REQUEST(CommandRequest.class),
     COMMAND_RESPONSE(CommandResponse.class),
     PROCESS_REQUEST(ProcessRequest.class),
-    PROCESS_RESPONSE(ProcessResponse.class);
+    PROCESS_RESPONSE(ProcessResponse.class),
+    PROCESS_BATCH_REQUEST(ProcessBatchRequest.class),
+    PROCESS_BATCH_RESPONSE(ProcessBatchResponse.class);
 
     private final Class<? extends Message> clazz;
 
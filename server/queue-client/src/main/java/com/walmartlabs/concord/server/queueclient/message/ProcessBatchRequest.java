@@ -0,0 +1,62 @@
+package com.walmartlabs.concord.server.queueclient.message;
+
+/*-
+ * *****
+ * Concord
+ * -----
+ * Copyright (C) 2017 - 2019 Walmart Inc.
+ * -----
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * =====
+ */
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Map;
+
+/**
+ * Requests up to {@code slots} processes at once. The server responds with
+ * a {@link ProcessBatchResponse}.
+ */
+public class ProcessBatchRequest extends Message {
+
+    private final Map<String, Object> capabilities;
+    private final int slots;
+
+    @JsonCreator
+    public ProcessBatchRequest(
+            @JsonProperty("capabilities") Map<String, Object> capabilities,
+            @JsonProperty("slots") int slots) {
+        super(MessageType.PROCESS_BATCH_REQUEST);
+        this.capabilities = capabilities;
+        this.slots = slots;
+    }
+
+    public Map<String, Object> getCapabilities() {
+        return capabilities;
+    }
+
+    public int getSlots() {
+        return slots;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcessBatchRequest{" +
+                "correlationId='" + getCorrelationId() + "', " +
+                "capabilities='" + capabilities + "', " +
+                "slots=" + slots +
+                '}';
+    }
+}
@@ -23,6 +23,7 @@ package com.walmartlabs.concord.server.queueclient;
 import com.walmartlabs.concord.server.queueclient.message.*;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 
@@ -89,4 +90,39 @@ public class MessageSerializerTest {
         assertEquals(r.getProcessId(), rDeserialized.getProcessId());
         assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
     }
+
+    @Test
+    public void testProcessBatchRequest() {
+        ProcessBatchRequest r = new ProcessBatchRequest(Collections.singletonMap("k", "v"), 5);
+        r.setCorrelationId(123);
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessBatchRequest rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(r.getMessageType(), MessageType.PROCESS_BATCH_REQUEST);
+        assertEquals(r.getCapabilities(), rDeserialized.getCapabilities());
+        assertEquals(r.getSlots(), rDeserialized.getSlots());
+        assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+    }
+
+    @Test
+    public void testProcessBatchResponse() {
+        ProcessResponse a = new ProcessResponse(123, UUID.randomUUID(), "org-name", "repo-url", "repo-path", "commit-id", "secret-name");
+        ProcessResponse b = new ProcessResponse(123, UUID.randomUUID(), null, null, null, null, null);
+        ProcessBatchResponse r = new ProcessBatchResponse(123, Arrays.asList(a, b));
+
+        // ---
+        String rSerialized = MessageSerializer.serialize(r);
+        assertNotNull(rSerialized);
+
+        ProcessBatchResponse rDeserialized = MessageSerializer.deserialize(rSerialized);
+        assertEquals(r.getMessageType(), MessageType.PROCESS_BATCH_RESPONSE);
+        assertEquals(r.getCorrelationId(), rDeserialized.getCorrelationId());
+        assertEquals(2, rDeserialized.getProcesses().size());
+        assertEquals(a.getProcessId(), rDeserialized.getProcesses().get(0).getProcessId());
+        assertEquals(a.getOrgName(), rDeserialized.getProcesses().get(0).getOrgName());
+        assertEquals(b.getProcessId(), rDeserialized.getProcesses().get(1).getProcessId());
+    }
 }